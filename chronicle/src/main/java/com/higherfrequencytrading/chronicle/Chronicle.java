@@ -68,6 +68,18 @@ public interface Chronicle extends Closeable {
      */
     void multiThreaded(boolean multiThreaded);
 
+    /**
+     * @param waitStrategy used by Excerpt.nextIndex(long, TimeUnit) while there is nothing to read and signalled when
+     *                     an excerpt is finished.
+     */
+    void waitStrategy(@NotNull WaitStrategy waitStrategy);
+
+    /**
+     * @return how readers wait for the next excerpt.
+     */
+    @NotNull
+    WaitStrategy waitStrategy();
+
     /**
      * Add an enumerated type or override the default implementation for a class.
      *
@@ -25,6 +25,7 @@ import java.nio.ByteOrder;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * An extracted record within a Chronicle.  This record refers to one entry.
@@ -57,6 +58,15 @@ public interface Excerpt extends RandomDataInput, RandomDataOutput, ByteStringAp
      */
     boolean nextIndex();
 
+    /**
+     * Wait for the next index, using the chronicle's WaitStrategy while there is nothing to read.
+     *
+     * @param timeout the maximum time to wait.
+     * @param unit    of the timeout.
+     * @return true if the index was set to a valid entry, false if it timed out or the thread was interrupted.
+     */
+    boolean nextIndex(long timeout, @NotNull TimeUnit unit);
+
     /**
      * Attempt to set the index to this number.  The method is re-tryable as another thread or process could be writing
      * to this Chronicle.
@@ -109,6 +119,13 @@ public interface Excerpt extends RandomDataInput, RandomDataOutput, ByteStringAp
      */
     void startExcerpt(int capacity);
 
+    /**
+     * Start a new excerpt in the Chronicle without a capacity.  The excerpt can use the rest of the current data
+     * segment, and any overlap, and if it outgrows that, what has been written so far is moved to the start of the next
+     * segment.  The size of the excerpt is taken on finish().
+     */
+    void startExcerpt();
+
     /**
      * Finish a record.  The record is not available until this is called.
      * <p/>
@@ -117,6 +134,26 @@ public interface Excerpt extends RandomDataInput, RandomDataOutput, ByteStringAp
      */
     void finish();
 
+    /**
+     * Start a batch of excerpts.  Each excerpt finished in the batch is written but readers can't see it until
+     * commitBatch() publishes all of them together, with one memory barrier.  Readers still see each excerpt on its own.
+     */
+    void startBatch();
+
+    /**
+     * Publish the excerpts finished since startBatch().
+     */
+    void commitBatch();
+
+    /**
+     * Move to the last excerpt sampled in the time index at or before a time, or to the start if there isn't one.  The
+     * excerpts from there can be read to find the first at the time wanted.
+     *
+     * @param timeNS since the epoch.
+     * @return whether the excerpt could be read.
+     */
+    boolean seekToTime(long timeNS);
+
     /**
      * @return a wrapper for this excerpt as an InputStream
      * @deprecated This will be dropped in Chronicle 2.0
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.higherfrequencytrading.chronicle;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generate a writer and a reader for this listener interface at compile time, named after the interface with a
+ * Writer and Reader suffix in the same package, e.g. Gw2PeEvents gets Gw2PeEventsWriter and Gw2PeEventsReader.  The
+ * generator is com.higherfrequencytrading.chronicle.tools.EventsProcessor, which javac runs when chronicle is on the
+ * class path.
+ * <p/>
+ * The writer implements the interface and writes each call as an excerpt, starting with the method's id, its position
+ * in the interface, as a stop bit number.  The reader reads an excerpt and switches on the id to call the same method
+ * on a listener.  A new message is a new method, added at the end so existing ids don't change.
+ * <p/>
+ * Primitives, Strings and enums are encoded as a generated marshaller would.  A parameter which is annotated with
+ * @GenerateMarshaller, or is an ExcerptMarshallable class with a constructor without arguments, is read into an object
+ * the reader reuses, so it is only valid for the duration of the call and a listener must not keep it.  It must not be
+ * null when written, and the writer throws a NullPointerException before starting an excerpt if it is.  Any other
+ * parameter is written with writeObject().
+ *
+ * @author peter.lawrey
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface GenerateEvents {
+    /**
+     * @return the capacity of each excerpt written, or 0 for an open ended excerpt.
+     */
+    int capacity() default 256;
+}
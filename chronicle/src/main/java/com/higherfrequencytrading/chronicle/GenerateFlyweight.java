@@ -0,0 +1,48 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.higherfrequencytrading.chronicle;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generate a flyweight for this interface at compile time, named after the interface with a Flyweight suffix in the
+ * same package, e.g. Quote gets QuoteFlyweight.  The generator is
+ * com.higherfrequencytrading.chronicle.tools.FlyweightProcessor, which javac runs when chronicle is on the class path.
+ * <p/>
+ * The interface has getters and setters for primitive properties, e.g. <code>long getId()</code>,
+ * <code>boolean isBuy()</code> and <code>void setId(long id)</code>.  Each property has a fixed offset, largest first
+ * and then in the order first declared so each is aligned to its size, and SIZE is padded to the largest.  A getter is
+ * a readXxx(offset) and a setter a writeXxx(offset, value) on the bound Excerpt, without copying the message or
+ * creating any objects.
+ * <pre>
+ * QuoteFlyweight quote = new QuoteFlyweight();
+ * quote.startExcerpt(excerpt); // excerpt.startExcerpt(QuoteFlyweight.SIZE) and bind it.
+ * quote.setId(id);
+ * excerpt.finish();
+ *
+ * if (reader.index(n) &amp;&amp; quote.bind(reader).getId() == id)
+ * </pre>
+ *
+ * @author peter.lawrey
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface GenerateFlyweight {
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.higherfrequencytrading.chronicle;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generate an EnumeratedMarshaller for this class at compile time, named after the class with a Marshaller suffix in
+ * the same package, e.g. Order gets OrderMarshaller and Outer.Inner gets Outer_InnerMarshaller.  The generator is
+ * com.higherfrequencytrading.chronicle.tools.MarshallerProcessor, which javac runs when chronicle is on the class
+ * path.
+ * <p/>
+ * Each field which isn't static or transient is written in the order declared, using a stop bit encoding for char,
+ * int and long, a compact encoding for short and double and writeEnum() or writeObject() for other types.  The
+ * fields must either be accessible in the package or have a getter and setter.  The class needs a constructor without
+ * arguments.
+ * <p/>
+ * A chronicle finds the generated marshaller the first time it is asked for one for this class, so writeObject()
+ * and writeEnum() use it without it being registered with setEnumeratedMarshaller().
+ *
+ * @author peter.lawrey
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface GenerateMarshaller {
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.higherfrequencytrading.chronicle;
+
+/**
+ * How a reader waits when there is nothing new to read, and how writers wake it.
+ *
+ * @author peter.lawrey
+ */
+public interface WaitStrategy {
+    /**
+     * Called each time a reader finds nothing new.
+     *
+     * @param attempts   the number of times in a row nothing was found, starting at 0.
+     * @param deadlineNS the System.nanoTime() at which the reader will give up.
+     */
+    void idle(int attempts, long deadlineNS);
+
+    /**
+     * Called by a writer each time an excerpt is finished to wake any readers idling in this process.  This should be
+     * cheap when no reader is waiting.
+     */
+    void signalAll();
+}
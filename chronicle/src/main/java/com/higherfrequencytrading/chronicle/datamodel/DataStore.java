@@ -34,6 +34,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 /**
@@ -41,6 +42,7 @@ import java.util.logging.Logger;
  */
 public class DataStore implements Closeable {
     private static final Logger LOGGER = Logger.getLogger(DataStore.class.getName());
+    private static final long CLOSED_CHECK_MS = 100;
     protected final Map<String, Wrapper> wrappers = new ConcurrentHashMap<String, Wrapper>();
     @NotNull
     private final Chronicle chronicle;
@@ -179,6 +181,9 @@ public class DataStore implements Closeable {
                                         wrapper.notifyOff(false);
                                         wrapper.inSync();
                                     }
+                                    // wait rather than spin, with a timeout to check closed.
+                                    if (excerpt.nextIndex(CLOSED_CHECK_MS, TimeUnit.MILLISECONDS))
+                                        processNextEvent(excerpt.index() <= lastEvent);
                                 }
                             }
                         }
@@ -18,6 +18,9 @@ package com.higherfrequencytrading.chronicle.impl;
 
 import com.higherfrequencytrading.chronicle.EnumeratedMarshaller;
 import com.higherfrequencytrading.chronicle.ExcerptMarshallable;
+import com.higherfrequencytrading.chronicle.GenerateMarshaller;
+import com.higherfrequencytrading.chronicle.WaitStrategy;
+import com.higherfrequencytrading.chronicle.tools.ChronicleTools;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -32,9 +35,12 @@ import java.util.Map;
 public abstract class AbstractChronicle implements DirectChronicle {
     private final String name;
     private final Map<Class, EnumeratedMarshaller> marshallerMap = new LinkedHashMap<Class, EnumeratedMarshaller>();
+    private final Map<Class, ReflectiveMarshaller> reflectiveMap = new LinkedHashMap<Class, ReflectiveMarshaller>();
     // shouldn't need to be volatile, unless you have a bug in the calling code ;)
     protected volatile long size = 0;
     private boolean multiThreaded = false;
+    @NotNull
+    private WaitStrategy waitStrategy = new SpinParkWaitStrategy();
 
     protected AbstractChronicle(String name) {
         this.name = name;
@@ -56,6 +62,17 @@ public abstract class AbstractChronicle implements DirectChronicle {
         this.multiThreaded = multiThreaded;
     }
 
+    @Override
+    public void waitStrategy(@NotNull WaitStrategy waitStrategy) {
+        this.waitStrategy = waitStrategy;
+    }
+
+    @NotNull
+    @Override
+    public WaitStrategy waitStrategy() {
+        return waitStrategy;
+    }
+
     @NotNull
     public String name() {
         return name;
@@ -82,6 +99,8 @@ public abstract class AbstractChronicle implements DirectChronicle {
                 marshallerMap.put(aClass, em = new VanillaEnumMarshaller(aClass, null));
             else if (ExcerptMarshallable.class.isAssignableFrom(aClass))
                 marshallerMap.put(aClass, em = new ExcerptMarshaller((Class) aClass));
+            else if (aClass.isAnnotationPresent(GenerateMarshaller.class))
+                marshallerMap.put(aClass, em = generatedMarshaller(aClass));
             else if (Externalizable.class.isAssignableFrom(aClass))
                 marshallerMap.put(aClass, em = new ExternalizableMarshaller((Class) aClass));
             else
@@ -89,6 +108,30 @@ public abstract class AbstractChronicle implements DirectChronicle {
         return em;
     }
 
+    /**
+     * @return the marshaller generated at compile time for a class annotated with @GenerateMarshaller.
+     */
+    @NotNull
+    @SuppressWarnings("unchecked")
+    static <E> EnumeratedMarshaller<E> generatedMarshaller(@NotNull Class<E> aClass) {
+        String className = ChronicleTools.generatedClassName(aClass.getName(), "Marshaller");
+        try {
+            return (EnumeratedMarshaller<E>) Class.forName(className, true, aClass.getClassLoader()).newInstance();
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to load " + className + ", was the annotation processor run?", e);
+        }
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    @Override
+    public <E> ReflectiveMarshaller<E> acquireReflectiveMarshaller(@NotNull Class<E> aClass) {
+        ReflectiveMarshaller<E> rm = reflectiveMap.get(aClass);
+        if (rm == null && !reflectiveMap.containsKey(aClass))
+            reflectiveMap.put(aClass, rm = ReflectiveMarshaller.canMarshal(aClass) ? new ReflectiveMarshaller<E>(aClass) : null);
+        return rm;
+    }
+
     @Nullable
     @SuppressWarnings("unchecked")
     @Override
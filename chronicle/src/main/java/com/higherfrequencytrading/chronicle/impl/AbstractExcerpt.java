@@ -19,7 +19,9 @@ package com.higherfrequencytrading.chronicle.impl;
 import com.higherfrequencytrading.chronicle.ByteStringAppender;
 import com.higherfrequencytrading.chronicle.EnumeratedMarshaller;
 import com.higherfrequencytrading.chronicle.Excerpt;
+import com.higherfrequencytrading.chronicle.GenerateMarshaller;
 import com.higherfrequencytrading.chronicle.StopCharTester;
+import com.higherfrequencytrading.chronicle.WaitStrategy;
 import com.higherfrequencytrading.chronicle.math.MutableDecimal;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -31,6 +33,7 @@ import java.nio.MappedByteBuffer;
 import java.nio.charset.Charset;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -40,7 +43,9 @@ public abstract class AbstractExcerpt implements Excerpt {
     public static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
     // extra 1 for decimal place.
     static final int MAX_NUMBER_LENGTH = 1 + (int) Math.ceil(Math.log10(Long.MAX_VALUE));
-    private static final int MIN_SIZE = 8;
+    static final int MIN_SIZE = 8;
+    // set in an index entry while the excerpt is still being written by one of many writers.
+    static final long RESERVED = Long.MIN_VALUE;
     private static final byte[] MIN_VALUE_TEXT = ("" + Long.MIN_VALUE).getBytes();
     private static final byte[] Infinity = "Infinity".getBytes();
     private static final byte[] NaN = "NaN".getBytes();
@@ -68,7 +73,15 @@ public abstract class AbstractExcerpt implements Excerpt {
     private static final byte NULL = 'N';
     private static final byte ENUMED = 'E';
     private static final byte SERIALIZED = 'S';
+    private static final byte REFLECTED = 'R';
     protected final DirectChronicle chronicle;
+    // the objects reached from one written field by field, to check it is a tree.
+    private final Map<Object, Object> reflected = new IdentityHashMap<Object, Object>();
+    // writing the fields of an object already checked to be a tree.
+    private boolean reflecting = false;
+    // positions are computed rather than read from an index.
+    @Nullable
+    private final FixedRecordChronicle fixedRecords;
     private final byte[] numberBuffer = new byte[MAX_NUMBER_LENGTH];
     private final AtomicBoolean barrier = new AtomicBoolean();
     protected long index = -1;
@@ -78,9 +91,11 @@ public abstract class AbstractExcerpt implements Excerpt {
     protected long startPosition;
     protected long size = 0;
     @Nullable
-    protected MappedByteBuffer buffer;
+    protected ByteBuffer buffer;
     private int capacity = 0;
     private boolean forWrite = false;
+    private boolean openEnded = false;
+    private boolean batch = false;
     @Nullable
     private ExcerptInputStream inputStream = null;
     @Nullable
@@ -98,6 +113,7 @@ public abstract class AbstractExcerpt implements Excerpt {
 
     protected AbstractExcerpt(DirectChronicle chronicle) {
         this.chronicle = chronicle;
+        fixedRecords = chronicle instanceof FixedRecordChronicle ? (FixedRecordChronicle) chronicle : null;
     }
 
     private static double asDouble(long value, int exp, boolean negative, int decimalPlaces) {
@@ -158,6 +174,28 @@ public abstract class AbstractExcerpt implements Excerpt {
         return index(index() + 1);
     }
 
+    @Override
+    public boolean nextIndex(long timeout, @NotNull TimeUnit unit) {
+        return nextIndex(this, timeout, unit);
+    }
+
+    static boolean nextIndex(@NotNull Excerpt excerpt, long timeout, @NotNull TimeUnit unit) {
+        if (excerpt.nextIndex())
+            return true;
+        WaitStrategy waitStrategy = excerpt.chronicle().waitStrategy();
+        long deadlineNS = System.nanoTime() + unit.toNanos(timeout);
+        for (int attempts = 0; System.nanoTime() - deadlineNS < 0; ) {
+            if (Thread.currentThread().isInterrupted())
+                return false;
+            waitStrategy.idle(attempts, deadlineNS);
+            if (excerpt.nextIndex())
+                return true;
+            if (attempts < Integer.MAX_VALUE)
+                attempts++;
+        }
+        return false;
+    }
+
     @Override
     public long index() {
         return index;
@@ -165,13 +203,25 @@ public abstract class AbstractExcerpt implements Excerpt {
 
     @Override
     public boolean index(long index) throws IndexOutOfBoundsException {
-        forWrite = false;
+        forWrite = openEnded = false;
 
         readMemoryBarrier();
+        if (fixedRecords != null && index >= 0)
+            return fixedRecordIndex(index);
+        long startIndex = chronicle.startIndex();
+        if (index < startIndex) {
+            // dropped by a retention policy, so move to just before the first excerpt available.
+            capacity = 0;
+            holdBuffer(null);
+            this.index = startIndex - 1;
+            limit = startPosition = position = 0;
+            return index == -1 || index == startIndex - 1;
+        }
         long endPosition = chronicle.getIndexData(index + 1);
-        if (endPosition == 0) {
+        // zero if not written yet, negative if reserved but not committed.
+        if (endPosition <= 0) {
             capacity = 0;
-            buffer = null;
+            holdBuffer(null);
             // System.out.println("ep");
             // rewind?
             if (index == -1) {
@@ -181,18 +231,44 @@ public abstract class AbstractExcerpt implements Excerpt {
             }
             return false;
         }
-        long startPosition = chronicle.getIndexData(index);
+        long startPosition = chronicle.getIndexData(index) & ~RESERVED;
         capacity = (int) (endPosition - startPosition);
         assert capacity >= MIN_SIZE : "end=" + endPosition + ", start=" + startPosition;
+        // the end position is the commit marker, written last, so the data is complete.
         index0(index, startPosition, endPosition);
-        // TODO Assumes the start of the record won't be all 0's
-        // TODO Need to determine whether this is required as a safety check or not.
-        long l = readLong(0);
-        return l != 0L;
+        return true;
+    }
+
+    /**
+     * The header word of a fixed size record holds its length once it is committed.
+     */
+    private boolean fixedRecordIndex(long index) {
+        assert fixedRecords != null;
+        int length = fixedRecords.committedLength(index);
+        if (length <= 0) {
+            capacity = 0;
+            holdBuffer(null);
+            return false;
+        }
+        long startPosition = fixedRecords.position(index);
+        capacity = length;
+        index0(index, startPosition, startPosition + length);
+        return true;
     }
 
     protected abstract void index0(long index, long startPosition, long endPosition);
 
+    /**
+     * Hold the data buffer acquired for an excerpt and release the one held before, so a chronicle caching its
+     * mappings knows which are in use.
+     */
+    protected void holdBuffer(@Nullable ByteBuffer buffer) {
+        ByteBuffer previous = this.buffer;
+        this.buffer = buffer;
+        if (previous != null)
+            chronicle.releaseDataBuffer(previous);
+    }
+
     private void readMemoryBarrier() {
         barrier.get();
     }
@@ -202,17 +278,66 @@ public abstract class AbstractExcerpt implements Excerpt {
         readMemoryBarrier();
         long nextIndex = index + 1;
         long endPosition = chronicle.getIndexData(nextIndex + 1);
-        return endPosition != 0;
+        return endPosition > 0;
     }
 
     @Override
     public void startExcerpt(int capacity) {
         this.capacity = capacity < MIN_SIZE ? MIN_SIZE : capacity;
-        long startPosition = chronicle.startExcerpt(this, capacity);
-        long endPosition = startPosition + capacity;
-        index0(chronicle.size(), startPosition, endPosition);
+        // a multi writer chronicle sets the index it reserved.
+        index = chronicle.size();
+        long startPosition = chronicle.startExcerpt(this, this.capacity);
+        long endPosition = startPosition + this.capacity;
+        index0(index, startPosition, endPosition);
         forWrite = true;
+        openEnded = false;
+    }
+
+    @Override
+    public void startExcerpt() {
         index = chronicle.size();
+        long startPosition = chronicle.startExcerpt(this, 0);
+        ByteBuffer mapped = chronicle.acquireDataBuffer(startPosition);
+        int mappedSize = mapped.capacity();
+        chronicle.releaseDataBuffer(mapped);
+        long endPosition = startPosition - chronicle.positionInBuffer(startPosition) + mappedSize;
+        this.capacity = (int) (endPosition - startPosition);
+        index0(index, startPosition, endPosition);
+        forWrite = true;
+        openEnded = true;
+    }
+
+    /**
+     * Called by a write which would pass the limit.  An open ended excerpt is moved to the start of the next data
+     * segment, leaving the space behind it as padding for the previous excerpt, otherwise the capacity is exceeded.
+     *
+     * @param length of the write which doesn't fit.
+     */
+    protected void overflow(int length) {
+        long written = position - start;
+        if (!openEnded)
+            throw new IllegalStateException("Capacity allowed: " + capacity + " data written: " + (written + length));
+        ByteBuffer from = buffer;
+        assert from != null;
+        int fromOffset = chronicle.positionInBuffer(startPosition);
+        if (fromOffset == 0)
+            throw new IllegalStateException("An excerpt of " + (written + length) + " bytes cannot fit in a data segment and overlap of " + from.capacity() + " bytes");
+        long newStart = startPosition - fromOffset + from.capacity() - chronicle.dataOverlap();
+        chronicle.setIndexData(index, newStart);
+        ByteBuffer to = chronicle.acquireDataBuffer(newStart);
+        capacity = to.capacity();
+
+        // copy before moving on as the excerpt's hold on the previous buffer is released.
+        ByteBuffer src = from.duplicate();
+        src.limit(fromOffset + (int) written).position(fromOffset);
+        ByteBuffer dst = to.duplicate();
+        dst.position(0);
+        dst.put(src);
+        index0(index, newStart, newStart + capacity);
+        chronicle.releaseDataBuffer(to);
+        position = start + written;
+        if (written + length > capacity)
+            throw new IllegalStateException("An excerpt of " + (written + length) + " bytes cannot fit in a data segment and overlap of " + capacity + " bytes");
     }
 
     @Override
@@ -832,13 +957,25 @@ public abstract class AbstractExcerpt implements Excerpt {
             writeStopBit(-1);
             return;
         }
-        long strlen = str.length();
-        int utflen = 0;
-        int c;
+        int strlen = str.length();
+        // checked before writing anything, as writeUTF1 does once the encoded length is known.
+        if (!openEnded && stopBitLength(strlen) + strlen > remaining())
+            throw new IllegalArgumentException(
+                    "encoded string too long: " + strlen + " bytes, remaining=" + remaining());
+
+        // assume the string is ASCII, so the encoded length is the string length, and correct it if it's not.
+        long lengthOffset = position - start;
+        writeStopBit(strlen);
+        int i = writeAscii(str, 0, strlen);
+        if (i < strlen)
+            writeUTF1(str, strlen, i, lengthOffset);
+    }
 
-		/* use charAt instead of copying String to char array */
-        for (int i = 0; i < strlen; i++) {
-            c = str.charAt(i);
+    private void writeUTF1(@NotNull CharSequence str, int strlen, int from, long lengthOffset) {
+        // only the characters after the ASCII prefix need to be measured.
+        long utflen = from;
+        for (int i = from; i < strlen; i++) {
+            int c = str.charAt(i);
             if ((c >= 0x0001) && (c <= 0x007F)) {
                 utflen++;
             } else if (c > 0x07FF) {
@@ -848,22 +985,26 @@ public abstract class AbstractExcerpt implements Excerpt {
             }
         }
 
-        if (utflen > remaining())
+        long lengthPosition = start + lengthOffset;
+        if (!openEnded && stopBitLength(utflen) + utflen > limit - lengthPosition) {
+            position = lengthPosition;
             throw new IllegalArgumentException(
                     "encoded string too long: " + utflen + " bytes, remaining=" + remaining());
-
-        writeStopBit(utflen);
-
-        int i;
-        for (i = 0; i < strlen; i++) {
-            c = str.charAt(i);
-            if (!((c >= 0x0001) && (c <= 0x007F)))
-                break;
-            write(c);
+        }
+        if (stopBitLength(utflen) == stopBitLength(strlen)) {
+            long end = position;
+            position = lengthPosition;
+            writeStopBit(utflen);
+            position = end;
+        } else {
+            // the length needs more bytes than reserved, so write the ASCII prefix again after it.
+            position = lengthPosition;
+            writeStopBit(utflen);
+            writeAscii(str, 0, from);
         }
 
-        for (; i < strlen; i++) {
-            c = str.charAt(i);
+        for (int i = from; i < strlen; i++) {
+            int c = str.charAt(i);
             if ((c >= 0x0001) && (c <= 0x007F)) {
                 write(c);
 
@@ -878,6 +1019,28 @@ public abstract class AbstractExcerpt implements Excerpt {
         }
     }
 
+    /**
+     * Write characters from 0x01 to 0x7F as one byte each, stopping at the first which needs more.
+     *
+     * @return the index of the first character not written.
+     */
+    protected int writeAscii(@NotNull CharSequence str, int from, int to) {
+        for (int i = from; i < to; i++) {
+            int c = str.charAt(i);
+            if (c < 0x0001 || c > 0x007F)
+                return i;
+            write(c);
+        }
+        return to;
+    }
+
+    private static int stopBitLength(long n) {
+        int length = 1;
+        while ((n >>>= 7) != 0)
+            length++;
+        return length;
+    }
+
     @Override
     public void writeStopBit(long n) {
         boolean neg = false;
@@ -1721,11 +1884,32 @@ public abstract class AbstractExcerpt implements Excerpt {
         if (em != null) {
             writeByte(ENUMED);
             writeEnum(clazz);
-            em.write(this, obj);
+            // the objects this writes haven't been checked.
+            boolean wasReflecting = reflecting;
+            reflecting = false;
+            try {
+                em.write(this, obj);
+            } finally {
+                reflecting = wasReflecting;
+            }
+            return;
+        }
+        ReflectiveMarshaller rm = chronicle.acquireReflectiveMarshaller(clazz);
+        if (rm != null && (reflecting || isTree(rm, obj))) {
+            writeByte(REFLECTED);
+            writeEnum(clazz);
+            writeInt(rm.fingerprint());
+            boolean wasReflecting = reflecting;
+            reflecting = true;
+            try {
+                rm.write(this, obj);
+            } finally {
+                reflecting = wasReflecting;
+            }
             return;
         }
+        // for classes with their own serialization methods, and objects with a cycle or shared reference.
         writeByte(SERIALIZED);
-        // TODO this is the lame implementation, but it works.
         try {
             ObjectOutputStream oos = new ObjectOutputStream(this.outputStream());
             oos.writeObject(obj);
@@ -1749,13 +1933,20 @@ public abstract class AbstractExcerpt implements Excerpt {
             length = MIN_SIZE;
         if (position > limit)
             throw new IllegalStateException("Capacity allowed: " + capacity + " data read/written: " + length);
-        if (readLong(0) == 0)
-            throw new IllegalStateException("The first 8 bytes cannot be all zero");
         return length;
     }
 
-    private boolean autoGenerateMarshaller(Object obj) {
-        return (obj instanceof Comparable && obj.getClass().getPackage().getName().startsWith("java")) || obj instanceof Externalizable;
+    private boolean isTree(@NotNull ReflectiveMarshaller rm, @NotNull Object obj) {
+        try {
+            return rm.isTree(chronicle, obj, reflected);
+        } finally {
+            reflected.clear();
+        }
+    }
+
+    static boolean autoGenerateMarshaller(Object obj) {
+        return (obj instanceof Comparable && obj.getClass().getPackage().getName().startsWith("java")) || obj instanceof Externalizable
+                || obj.getClass().isAnnotationPresent(GenerateMarshaller.class);
     }
 
     @Override
@@ -1807,6 +1998,15 @@ public abstract class AbstractExcerpt implements Excerpt {
                 assert clazz != null;
                 return readEnum(clazz);
             }
+            case REFLECTED: {
+                Class clazz = readEnum(Class.class);
+                assert clazz != null;
+                ReflectiveMarshaller rm = chronicle.acquireReflectiveMarshaller(clazz);
+                int fingerprint = readInt();
+                if (rm == null || rm.fingerprint() != fingerprint)
+                    throw new IllegalStateException("The fields of " + clazz.getName() + " have changed since it was written");
+                return rm.read(this);
+            }
             case SERIALIZED: {
                 try {
                     return new ObjectInputStream(this.inputStream()).readObject();
@@ -1902,16 +2102,42 @@ public abstract class AbstractExcerpt implements Excerpt {
         if (forWrite) {
             if (chronicle.synchronousMode()) {
                 assert buffer != null;
-                buffer.force();
+                ((MappedByteBuffer) buffer).force();
             }
-            final long endPosition = startPosition + length;
-            chronicle.setIndexData(index + 1, endPosition);
-            chronicle.incrementSize(index + 1);
-            capacity = (int) length;
+            final long endPosition = chronicle.finishExcerpt(index, startPosition + length);
+            capacity = (int) (endPosition - startPosition);
             assert capacity >= MIN_SIZE : "len=" + length;
+            if (openEnded) {
+                limit = start + capacity;
+                openEnded = false;
+            }
+            if (!batch) {
+                writeMemoryBarrier();
+                chronicle.waitStrategy().signalAll();
+            }
+        }
+        holdBuffer(null);
+    }
+
+    @Override
+    public boolean seekToTime(long timeNS) {
+        // -1 is the start.
+        return index(chronicle.indexForTime(timeNS));
+    }
+
+    @Override
+    public void startBatch() {
+        chronicle.startBatch();
+        batch = true;
+    }
+
+    @Override
+    public void commitBatch() {
+        batch = false;
+        if (chronicle.commitBatch() > 0) {
             writeMemoryBarrier();
+            chronicle.waitStrategy().signalAll();
         }
-        buffer = null;
     }
 
     private void writeMemoryBarrier() {
@@ -1953,7 +2179,7 @@ public abstract class AbstractExcerpt implements Excerpt {
         long size = this.size - 1;
         do {
             size++;
-        } while (chronicle.getIndexData(size + 1) != 0);
+        } while (chronicle.getIndexData(size + 1) > 0);
         return this.size = size;
     }
 
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.higherfrequencytrading.chronicle.impl;
+
+import com.higherfrequencytrading.chronicle.WaitStrategy;
+
+/**
+ * Never gives up the CPU, for the lowest latency when a core can be dedicated to the reader.
+ *
+ * @author peter.lawrey
+ */
+public class BusySpinWaitStrategy implements WaitStrategy {
+    @Override
+    public void idle(int attempts, long deadlineNS) {
+        // busy wait
+    }
+
+    @Override
+    public void signalAll() {
+    }
+}
@@ -30,10 +30,11 @@ public class ByteBufferExcerpt extends AbstractExcerpt {
         this.index = index;
         this.startPosition = startPosition;
 
-        buffer = chronicle.acquireDataBuffer(startPosition);
+        holdBuffer(chronicle.acquireDataBuffer(startPosition));
 
         start = position = chronicle.positionInBuffer(startPosition);
-        limit = chronicle.positionInBuffer(endPosition - 1) + 1;
+        // the excerpt can run past the end of the segment into the overlap.
+        limit = start + (endPosition - startPosition);
 
         assert limit > start && position < limit && endPosition > startPosition;
     }
@@ -138,6 +139,8 @@ public class ByteBufferExcerpt extends AbstractExcerpt {
 
     @Override
     public void write(int b) {
+        if (position + 1 > limit)
+            overflow(1);
         assert buffer != null;
         buffer.put((int) position++, (byte) b);
     }
@@ -150,6 +153,8 @@ public class ByteBufferExcerpt extends AbstractExcerpt {
 
     @Override
     public void writeShort(int v) {
+        if (position + 2 > limit)
+            overflow(2);
         assert buffer != null;
         buffer.putShort((int) position, (short) v);
         position += 2;
@@ -163,6 +168,8 @@ public class ByteBufferExcerpt extends AbstractExcerpt {
 
     @Override
     public void writeChar(int v) {
+        if (position + 2 > limit)
+            overflow(2);
         assert buffer != null;
         buffer.putChar((int) position, (char) v);
         position += 2;
@@ -176,6 +183,8 @@ public class ByteBufferExcerpt extends AbstractExcerpt {
 
     @Override
     public void writeInt(int v) {
+        if (position + 4 > limit)
+            overflow(4);
         assert buffer != null;
         buffer.putInt((int) position, v);
         position += 4;
@@ -189,6 +198,8 @@ public class ByteBufferExcerpt extends AbstractExcerpt {
 
     @Override
     public void writeLong(long v) {
+        if (position + 8 > limit)
+            overflow(8);
         assert buffer != null;
         buffer.putLong((int) position, v);
         position += 8;
@@ -202,6 +213,8 @@ public class ByteBufferExcerpt extends AbstractExcerpt {
 
     @Override
     public void writeFloat(float v) {
+        if (position + 4 > limit)
+            overflow(4);
         assert buffer != null;
         buffer.putFloat((int) position, v);
         position += 4;
@@ -215,6 +228,8 @@ public class ByteBufferExcerpt extends AbstractExcerpt {
 
     @Override
     public void writeDouble(double v) {
+        if (position + 8 > limit)
+            overflow(8);
         assert buffer != null;
         buffer.putDouble((int) position, v);
         position += 8;
@@ -5,6 +5,7 @@ import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
 import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author jkubrynski@gmail.com
@@ -22,6 +23,26 @@ public class ChronicleBuilder {
         return new IntIndexedChronicleBuilder(basePath);
     }
 
+    @NotNull
+    public static CompactIndexedChronicleBuilder newCompactIndexedChronicleBuilder(String basePath) {
+        return new CompactIndexedChronicleBuilder(basePath);
+    }
+
+    @NotNull
+    public static CycledIndexedChronicleBuilder newCycledIndexedChronicleBuilder(String basePath) {
+        return new CycledIndexedChronicleBuilder(basePath);
+    }
+
+    @NotNull
+    public static FixedRecordChronicleBuilder newFixedRecordChronicleBuilder(String basePath, int recordSize) {
+        return new FixedRecordChronicleBuilder(basePath, recordSize);
+    }
+
+    @NotNull
+    public static RingBufferChronicleBuilder newRingBufferChronicleBuilder(String basePath) {
+        return new RingBufferChronicleBuilder(basePath);
+    }
+
     public static class IndexedChronicleBuilder {
 
         protected String basePath;
@@ -31,6 +52,15 @@ public class ChronicleBuilder {
         protected boolean minimiseByteBuffers = !ChronicleTools.is64Bit();
         protected boolean synchronousMode = false;
         protected boolean useUnsafe = false;
+        protected boolean backgroundMapping = false;
+        protected int dataOverlap = 0;
+        protected boolean multiWriter = false;
+        protected long groupCommitIntervalNS = 0;
+        protected int groupCommitBatchSize = 0;
+        protected int timeIndexExcerpts = 0;
+        protected long timeIndexNS = 0;
+        protected int mappingCache = 0;
+        protected boolean sharedMappings = false;
 
         public IndexedChronicleBuilder(String basePath) {
             this.basePath = basePath;
@@ -66,11 +96,69 @@ public class ChronicleBuilder {
             return this;
         }
 
+        @NotNull
+        public IndexedChronicleBuilder backgroundMapping(boolean backgroundMapping) {
+            this.backgroundMapping = backgroundMapping;
+            return this;
+        }
+
+        @NotNull
+        public IndexedChronicleBuilder dataOverlap(int dataOverlap) {
+            this.dataOverlap = dataOverlap;
+            return this;
+        }
+
+        @NotNull
+        public IndexedChronicleBuilder multiWriter(boolean multiWriter) {
+            this.multiWriter = multiWriter;
+            return this;
+        }
+
+        @NotNull
+        public IndexedChronicleBuilder groupCommit(long interval, @NotNull TimeUnit unit, int batchSize) {
+            this.groupCommitIntervalNS = unit.toNanos(interval);
+            this.groupCommitBatchSize = batchSize;
+            return this;
+        }
+
+        @NotNull
+        public IndexedChronicleBuilder timeIndex(int everyExcerpts, long every, @NotNull TimeUnit unit) {
+            this.timeIndexExcerpts = everyExcerpts;
+            this.timeIndexNS = unit.toNanos(every);
+            return this;
+        }
+
+        @NotNull
+        public IndexedChronicleBuilder mappingCache(int segments) {
+            this.mappingCache = segments;
+            return this;
+        }
+
+        @NotNull
+        public IndexedChronicleBuilder sharedMappings(boolean sharedMappings) {
+            this.sharedMappings = sharedMappings;
+            return this;
+        }
+
+        protected void configure(@NotNull IndexedChronicle indexedChronicle) {
+            indexedChronicle.useUnsafe(useUnsafe);
+            indexedChronicle.sharedMappings(sharedMappings);
+            if (mappingCache > 0)
+                indexedChronicle.mappingCache(mappingCache);
+            indexedChronicle.dataOverlap(dataOverlap);
+            indexedChronicle.backgroundMapping(backgroundMapping);
+            indexedChronicle.multiWriter(multiWriter);
+            if (groupCommitIntervalNS > 0)
+                indexedChronicle.groupCommit(groupCommitIntervalNS, TimeUnit.NANOSECONDS, groupCommitBatchSize);
+            if (timeIndexExcerpts > 0 || timeIndexNS > 0)
+                indexedChronicle.timeIndex(timeIndexExcerpts, timeIndexNS, TimeUnit.NANOSECONDS);
+        }
+
         @NotNull
         public IndexedChronicle build() throws IOException {
             IndexedChronicle indexedChronicle =
                     new IndexedChronicle(basePath, dataBitSizeHint, byteOrder, minimiseByteBuffers, synchronousMode);
-            indexedChronicle.useUnsafe(useUnsafe);
+            configure(indexedChronicle);
             return indexedChronicle;
         }
     }
@@ -85,10 +173,219 @@ public class ChronicleBuilder {
         @Override
         public IntIndexedChronicle build() throws IOException {
             IntIndexedChronicle intIndexedChronicle = new IntIndexedChronicle(basePath, dataBitSizeHint, byteOrder);
-            intIndexedChronicle.useUnsafe(useUnsafe);
+            configure(intIndexedChronicle);
             return intIndexedChronicle;
         }
     }
 
+    public static class CompactIndexedChronicleBuilder extends IndexedChronicleBuilder {
+        protected boolean shortDeltas = false;
 
-}
\ No newline at end of file
+        public CompactIndexedChronicleBuilder(String basePath) {
+            super(basePath);
+        }
+
+        @NotNull
+        public CompactIndexedChronicleBuilder shortDeltas(boolean shortDeltas) {
+            this.shortDeltas = shortDeltas;
+            return this;
+        }
+
+        @NotNull
+        @Override
+        public CompactIndexedChronicle build() throws IOException {
+            CompactIndexedChronicle compactIndexedChronicle = shortDeltas
+                    ? new ShortCompactIndexedChronicle(basePath, dataBitSizeHint, byteOrder, minimiseByteBuffers, synchronousMode)
+                    : new CompactIndexedChronicle(basePath, dataBitSizeHint, byteOrder, minimiseByteBuffers, synchronousMode);
+            configure(compactIndexedChronicle);
+            return compactIndexedChronicle;
+        }
+    }
+
+    public static class CycledIndexedChronicleBuilder {
+
+        protected String basePath;
+        protected CycleLength cycleLength = CycleLength.DAILY;
+        protected long cycleSize = 0;
+        protected int dataBitSizeHint =
+                ChronicleTools.is64Bit() ? IndexedChronicle.DEFAULT_DATA_BITS_SIZE : IndexedChronicle.DEFAULT_DATA_BITS_SIZE32;
+        protected ByteOrder byteOrder = ByteOrder.nativeOrder();
+        protected boolean minimiseByteBuffers = !ChronicleTools.is64Bit();
+        protected boolean synchronousMode = false;
+        protected boolean useUnsafe = false;
+        protected boolean backgroundMapping = false;
+        protected int dataOverlap = 0;
+        protected int timeIndexExcerpts = 0;
+        protected long timeIndexNS = 0;
+        protected boolean compressSealedCycles = false;
+        protected int mappingCache = 0;
+        protected boolean sharedMappings = false;
+
+        public CycledIndexedChronicleBuilder(String basePath) {
+            this.basePath = basePath;
+        }
+
+        @NotNull
+        public CycledIndexedChronicleBuilder cycleLength(CycleLength cycleLength) {
+            this.cycleLength = cycleLength;
+            this.cycleSize = 0;
+            return this;
+        }
+
+        @NotNull
+        public CycledIndexedChronicleBuilder cycleSize(long cycleSize) {
+            this.cycleLength = null;
+            this.cycleSize = cycleSize;
+            return this;
+        }
+
+        @NotNull
+        public CycledIndexedChronicleBuilder dataBitSizeHint(int dataBitSizeHint) {
+            this.dataBitSizeHint = dataBitSizeHint;
+            return this;
+        }
+
+        @NotNull
+        public CycledIndexedChronicleBuilder byteOrder(ByteOrder byteOrder) {
+            this.byteOrder = byteOrder;
+            return this;
+        }
+
+        @NotNull
+        public CycledIndexedChronicleBuilder minimiseByteBuffers(boolean minimiseByteBuffers) {
+            this.minimiseByteBuffers = minimiseByteBuffers;
+            return this;
+        }
+
+        @NotNull
+        public CycledIndexedChronicleBuilder useSynchronousMode(boolean synchronousMode) {
+            this.synchronousMode = synchronousMode;
+            return this;
+        }
+
+        @NotNull
+        public CycledIndexedChronicleBuilder useUnsafe(boolean useUnsafe) {
+            this.useUnsafe = useUnsafe;
+            return this;
+        }
+
+        @NotNull
+        public CycledIndexedChronicleBuilder backgroundMapping(boolean backgroundMapping) {
+            this.backgroundMapping = backgroundMapping;
+            return this;
+        }
+
+        @NotNull
+        public CycledIndexedChronicleBuilder dataOverlap(int dataOverlap) {
+            this.dataOverlap = dataOverlap;
+            return this;
+        }
+
+        @NotNull
+        public CycledIndexedChronicleBuilder timeIndex(int everyExcerpts, long every, @NotNull TimeUnit unit) {
+            this.timeIndexExcerpts = everyExcerpts;
+            this.timeIndexNS = unit.toNanos(every);
+            return this;
+        }
+
+        @NotNull
+        public CycledIndexedChronicleBuilder mappingCache(int segments) {
+            this.mappingCache = segments;
+            return this;
+        }
+
+        @NotNull
+        public CycledIndexedChronicleBuilder sharedMappings(boolean sharedMappings) {
+            this.sharedMappings = sharedMappings;
+            return this;
+        }
+
+        @NotNull
+        public CycledIndexedChronicleBuilder compressSealedCycles(boolean compressSealedCycles) {
+            this.compressSealedCycles = compressSealedCycles;
+            return this;
+        }
+
+        @NotNull
+        public CycledIndexedChronicle build() throws IOException {
+            CycledIndexedChronicle chronicle = new CycledIndexedChronicle(basePath, cycleLength, cycleSize,
+                    dataBitSizeHint, byteOrder, minimiseByteBuffers, synchronousMode);
+            chronicle.useUnsafe(useUnsafe);
+            chronicle.backgroundMapping(backgroundMapping);
+            chronicle.dataOverlap(dataOverlap);
+            chronicle.timeIndex(timeIndexExcerpts, timeIndexNS, TimeUnit.NANOSECONDS);
+            chronicle.mappingCache(mappingCache);
+            chronicle.sharedMappings(sharedMappings);
+            chronicle.compressSealedCycles(compressSealedCycles);
+            return chronicle;
+        }
+    }
+
+    public static class RingBufferChronicleBuilder {
+        protected String basePath;
+        protected int dataBitSize = RingBufferChronicle.DEFAULT_DATA_BITS_SIZE;
+        protected int indexBitSize = RingBufferChronicle.DEFAULT_INDEX_BITS_SIZE;
+        protected boolean useUnsafe = false;
+
+        public RingBufferChronicleBuilder(String basePath) {
+            this.basePath = basePath;
+        }
+
+        @NotNull
+        public RingBufferChronicleBuilder dataBitSize(int dataBitSize) {
+            this.dataBitSize = dataBitSize;
+            return this;
+        }
+
+        @NotNull
+        public RingBufferChronicleBuilder indexBitSize(int indexBitSize) {
+            this.indexBitSize = indexBitSize;
+            return this;
+        }
+
+        @NotNull
+        public RingBufferChronicleBuilder useUnsafe(boolean useUnsafe) {
+            this.useUnsafe = useUnsafe;
+            return this;
+        }
+
+        @NotNull
+        public RingBufferChronicle build() throws IOException {
+            RingBufferChronicle chronicle = new RingBufferChronicle(basePath, dataBitSize, indexBitSize);
+            chronicle.useUnsafe(useUnsafe);
+            return chronicle;
+        }
+    }
+
+    public static class FixedRecordChronicleBuilder {
+        protected String basePath;
+        protected int recordSize;
+        protected int dataBitSizeHint =
+                ChronicleTools.is64Bit() ? IndexedChronicle.DEFAULT_DATA_BITS_SIZE : IndexedChronicle.DEFAULT_DATA_BITS_SIZE32;
+        protected boolean useUnsafe = false;
+
+        public FixedRecordChronicleBuilder(String basePath, int recordSize) {
+            this.basePath = basePath;
+            this.recordSize = recordSize;
+        }
+
+        @NotNull
+        public FixedRecordChronicleBuilder dataBitSizeHint(int dataBitSizeHint) {
+            this.dataBitSizeHint = dataBitSizeHint;
+            return this;
+        }
+
+        @NotNull
+        public FixedRecordChronicleBuilder useUnsafe(boolean useUnsafe) {
+            this.useUnsafe = useUnsafe;
+            return this;
+        }
+
+        @NotNull
+        public FixedRecordChronicle build() throws IOException {
+            FixedRecordChronicle chronicle = new FixedRecordChronicle(basePath, recordSize, dataBitSizeHint);
+            chronicle.useUnsafe(useUnsafe);
+            return chronicle;
+        }
+    }
+}
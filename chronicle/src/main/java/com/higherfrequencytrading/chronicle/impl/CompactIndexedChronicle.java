@@ -0,0 +1,157 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.higherfrequencytrading.chronicle.impl;
+
+import sun.nio.ch.DirectBuffer;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+
+import static com.higherfrequencytrading.chronicle.impl.UnsafeExcerpt.UNSAFE;
+
+/**
+ * Chronicle with a compact index for small excerpts.  The index is in blocks of one cache line, each with a 64-bit base
+ * position followed by 32-bit deltas from that base, so random access is still O(1) and there is no limit on the size
+ * of the data.  This uses 4.3 bytes per entry rather than 8, or 2.2 bytes with ShortCompactIndexedChronicle.
+ * <p/>
+ * The entries of a block, including any padding at the end of a data segment, must span less than the largest delta.
+ * This doesn't support many writers.
+ *
+ * @author peter.lawrey
+ */
+public class CompactIndexedChronicle extends IndexedChronicle {
+    static final int BLOCK_BIT_SIZE = 6;
+    static final int BLOCK_SIZE = 1 << BLOCK_BIT_SIZE;
+    static final int BASE_SIZE = 8;
+
+    public CompactIndexedChronicle(String basePath) throws IOException {
+        super(basePath);
+    }
+
+    public CompactIndexedChronicle(String basePath, int dataBitSizeHint) throws IOException {
+        super(basePath, dataBitSizeHint);
+    }
+
+    public CompactIndexedChronicle(String basePath, int dataBitSizeHint, ByteOrder byteOrder) throws IOException {
+        super(basePath, dataBitSizeHint, byteOrder);
+    }
+
+    public CompactIndexedChronicle(String basePath, int dataBitSizeHint, ByteOrder byteOrder, boolean minimiseByteBuffers, boolean synchronousMode) throws IOException {
+        super(basePath, dataBitSizeHint, byteOrder, minimiseByteBuffers, synchronousMode);
+    }
+
+    /**
+     * @return log2 of the size of a delta in bytes.
+     */
+    protected int deltaBitSize() {
+        return 2;
+    }
+
+    private int entriesPerBlock() {
+        return 1 + ((BLOCK_SIZE - BASE_SIZE) >> deltaBitSize());
+    }
+
+    private long maxDelta() {
+        return (1L << (8 << deltaBitSize())) - 1;
+    }
+
+    /**
+     * @return the offset of the block for the first entry, or of the delta for the rest.
+     */
+    @Override
+    protected long indexOffset(long indexId) {
+        int entriesPerBlock = entriesPerBlock();
+        long block = indexId / entriesPerBlock;
+        int entry = (int) (indexId - block * entriesPerBlock);
+        long blockOffset = block << BLOCK_BIT_SIZE;
+        return entry == 0 ? blockOffset : blockOffset + BASE_SIZE + ((entry - 1) << deltaBitSize());
+    }
+
+    @Override
+    protected boolean indexBase(long indexId) {
+        return indexId % entriesPerBlock() == 0;
+    }
+
+    @Override
+    protected long indexEntries(long indexFileSize) {
+        return (indexFileSize >>> BLOCK_BIT_SIZE) * entriesPerBlock();
+    }
+
+    @Override
+    public long getIndexData(long indexId) {
+        long indexOffset = indexOffset(indexId);
+        MappedByteBuffer indexBuffer = acquireIndexBuffer(indexOffset);
+        long address = ((DirectBuffer) indexBuffer).address();
+        int deltaOffset = (int) (indexOffset & indexLowMask);
+        int blockOffset = deltaOffset & -BLOCK_SIZE;
+        if (deltaOffset == blockOffset)
+            return readBase(address + blockOffset);
+        // the delta is read first as it is written after the base, so the base is up to date once it is set.
+        long delta;
+        if (deltaBitSize() == 1) {
+            short s = UNSAFE.getShortVolatile(null, address + deltaOffset);
+            delta = (nativeOrder ? s : Short.reverseBytes(s)) & 0xFFFF;
+        } else {
+            int i = UNSAFE.getIntVolatile(null, address + deltaOffset);
+            delta = (nativeOrder ? i : Integer.reverseBytes(i)) & 0xFFFFFFFFL;
+        }
+        // zero if not written yet.
+        return delta == 0 ? 0 : readBase(address + blockOffset) + delta;
+    }
+
+    private long readBase(long address) {
+        long base = UNSAFE.getLongVolatile(null, address);
+        return nativeOrder ? base : Long.reverseBytes(base);
+    }
+
+    @Override
+    public void setIndexData(long indexId, long indexData) {
+        if (heldBack(indexId, indexData))
+            return;
+        long indexOffset = indexOffset(indexId);
+        MappedByteBuffer indexBuffer = acquireIndexBuffer(indexOffset);
+        long address = ((DirectBuffer) indexBuffer).address();
+        int deltaOffset = (int) (indexOffset & indexLowMask);
+        int blockOffset = deltaOffset & -BLOCK_SIZE;
+        // written with release semantics, so the excerpt is visible only once its data is.
+        if (deltaOffset == blockOffset) {
+            UNSAFE.putOrderedLong(null, address + blockOffset, nativeOrder ? indexData : Long.reverseBytes(indexData));
+        } else {
+            // zero clears the entry.
+            long delta = indexData == 0 ? 0 : indexData - readBase(address + blockOffset);
+            if (delta < 0 || delta > maxDelta())
+                throw new IllegalStateException("Entry " + indexId + " is " + delta + " bytes from the start of its index block, the most is " + maxDelta() + ", use IndexedChronicle or a dataOverlap to avoid padding");
+            if (deltaBitSize() == 1) {
+                // there is no ordered put of a short, and a volatile one also orders the stores before it.
+                UNSAFE.putShortVolatile(null, address + deltaOffset, nativeOrder ? (short) delta : Short.reverseBytes((short) delta));
+            } else {
+                UNSAFE.putOrderedInt(null, address + deltaOffset, nativeOrder ? (int) delta : Integer.reverseBytes((int) delta));
+            }
+        }
+        if (synchronousMode())
+            indexBuffer.force();
+    }
+
+    @Override
+    public synchronized void multiWriter(boolean multiWriter) {
+        if (multiWriter)
+            throw new UnsupportedOperationException("Many writers needs 64-bit index entries, use IndexedChronicle");
+        super.multiWriter(false);
+    }
+}
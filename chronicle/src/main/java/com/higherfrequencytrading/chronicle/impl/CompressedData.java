@@ -0,0 +1,253 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.higherfrequencytrading.chronicle.impl;
+
+import org.jetbrains.annotations.NotNull;
+import sun.nio.ch.DirectBuffer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The data of a sealed chronicle compressed into a .cdata file in place of its .data file.  The data is split into 64
+ * KB chunks, each compressed with Lz4Codec, or stored as is if it doesn't compress, and a table of their offsets
+ * follows the header.
+ * <p/>
+ * A data segment is decompressed into a direct buffer when an excerpt first reads it.  Excerpts hold a reference to
+ * the segment they are on, and the last few segments, up to MAX_CACHED_BYTES, are kept once no longer in use.  A
+ * segment is freed as soon as it is neither in use nor cached, rather than waiting for the GC.
+ *
+ * @author peter.lawrey
+ */
+class CompressedData {
+    static final int HEADER_MAGIC = 0x43485a31; // "CHZ1"
+    static final int HEADER_SIZE = 16; // magic, chunk count, data size.
+    static final int CHUNK_SIZE = Lz4Codec.MAX_BLOCK_SIZE;
+    static final int CACHED_SEGMENTS = 4;
+    static final long MAX_CACHED_BYTES = 64L << 20;
+    private final String path;
+    private final ByteOrder byteOrder;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final long dataSize;
+    private final long[] chunkOffsets;
+    private final byte[] compressed = new byte[Lz4Codec.maxCompressedLength(CHUNK_SIZE)];
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+    // in access order so the first is the least recently used.
+    private final Map<Integer, Segment> segments = new LinkedHashMap<Integer, Segment>(16, 0.75f, true);
+    // every segment decompressed, including those evicted but still in use.
+    private final Map<ByteBuffer, Segment> byBuffer = new IdentityHashMap<ByteBuffer, Segment>();
+    private int lastChunk = -1;
+
+    CompressedData(@NotNull String path, @NotNull ByteOrder byteOrder) throws IOException {
+        this.path = path;
+        this.byteOrder = byteOrder;
+        raf = new RandomAccessFile(path, "r");
+        channel = raf.getChannel();
+        if (raf.length() < HEADER_SIZE || raf.readInt() != HEADER_MAGIC)
+            throw new IOException("Not a compressed chronicle " + path);
+        int chunks = raf.readInt();
+        dataSize = raf.readLong();
+        chunkOffsets = new long[chunks + 1];
+        for (int i = 0; i <= chunks; i++)
+            chunkOffsets[i] = raf.readLong();
+    }
+
+    /**
+     * Compress the data of a chronicle up to its end.  The file is written under a temporary name and renamed when
+     * complete, so a .cdata file is always whole.
+     *
+     * @param dataPath  the .data file.
+     * @param dataEnd   the end of the last excerpt.
+     * @param cdataPath the .cdata file to write.
+     * @return the size of the .cdata file.
+     */
+    static long compress(@NotNull String dataPath, long dataEnd, @NotNull String cdataPath) throws IOException {
+        int chunks = (int) ((dataEnd + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        File tmp = new File(cdataPath + ".tmp");
+        RandomAccessFile in = new RandomAccessFile(dataPath, "r");
+        RandomAccessFile out = new RandomAccessFile(tmp, "rw");
+        try {
+            out.setLength(0);
+            byte[] chunk = new byte[CHUNK_SIZE];
+            byte[] compressed = new byte[Lz4Codec.maxCompressedLength(CHUNK_SIZE)];
+            int[] table = new int[1 << Lz4Codec.HASH_BITS];
+            long[] offsets = new long[chunks + 1];
+            long offset = HEADER_SIZE + 8L * (chunks + 1);
+            out.seek(offset);
+            for (int i = 0; i < chunks; i++) {
+                int length = (int) Math.min(CHUNK_SIZE, dataEnd - (long) i * CHUNK_SIZE);
+                in.readFully(chunk, 0, length);
+                int clen = Lz4Codec.compress(chunk, 0, length, compressed, 0, table);
+                // a chunk which doesn't compress is stored as is.
+                if (clen < length)
+                    out.write(compressed, 0, clen);
+                else
+                    out.write(chunk, 0, clen = length);
+                offsets[i] = offset;
+                offset += clen;
+            }
+            offsets[chunks] = offset;
+            out.seek(0);
+            out.writeInt(HEADER_MAGIC);
+            out.writeInt(chunks);
+            out.writeLong(dataEnd);
+            for (long o : offsets)
+                out.writeLong(o);
+            out.getChannel().force(true);
+        } finally {
+            in.close();
+            out.close();
+        }
+        File file = new File(cdataPath);
+        if (!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file)))
+            throw new IOException("Unable to replace " + cdataPath);
+        return file.length();
+    }
+
+    /**
+     * @param segmentId   of the data segment.
+     * @param segmentBits the size of a segment as a power of 2.
+     * @param overlap     bytes of the next segment included.
+     * @return the data of the segment and its overlap, as a direct buffer to be released when no longer used.
+     */
+    @NotNull
+    synchronized ByteBuffer acquire(int segmentId, int segmentBits, int overlap) {
+        int capacity = (1 << segmentBits) + overlap;
+        Segment segment = segments.get(segmentId);
+        if (segment == null || segment.buffer.capacity() != capacity) {
+            segment = new Segment(decompress(segmentId, segmentBits, capacity));
+            segments.put(segmentId, segment);
+            byBuffer.put(segment.buffer, segment);
+            evict((int) Math.max(1, Math.min(CACHED_SEGMENTS, MAX_CACHED_BYTES / capacity)));
+        }
+        segment.references++;
+        return segment.buffer;
+    }
+
+    /**
+     * @param buffer acquired, it is ignored if it isn't from this chronicle.
+     */
+    synchronized void release(@NotNull ByteBuffer buffer) {
+        Segment segment = byBuffer.get(buffer);
+        if (segment == null)
+            return;
+        if (--segment.references <= 0 && segment.evicted)
+            free(segment);
+    }
+
+    private void evict(int capacity) {
+        for (Iterator<Segment> iter = segments.values().iterator(); segments.size() > capacity && iter.hasNext(); ) {
+            Segment segment = iter.next();
+            iter.remove();
+            segment.evicted = true;
+            if (segment.references <= 0)
+                free(segment);
+        }
+    }
+
+    private void free(@NotNull Segment segment) {
+        byBuffer.remove(segment.buffer);
+        ((DirectBuffer) segment.buffer).cleaner().clean();
+    }
+
+    /**
+     * @return the number of segments decompressed, including those evicted which are still in use.
+     */
+    synchronized int decompressed() {
+        return byBuffer.size();
+    }
+
+    @NotNull
+    private ByteBuffer decompress(int segmentId, int segmentBits, int capacity) {
+        ByteBuffer segment = ByteBuffer.allocateDirect(capacity).order(byteOrder);
+        long start = (long) segmentId << segmentBits;
+        long end = Math.min(dataSize, start + capacity);
+        // past the end of the data is left as zeros.
+        for (long pos = start; pos < end; ) {
+            int chunkId = (int) (pos / CHUNK_SIZE);
+            int length = readChunk(chunkId);
+            int from = (int) (pos - (long) chunkId * CHUNK_SIZE);
+            int n = (int) Math.min(length - from, end - pos);
+            segment.position((int) (pos - start));
+            segment.put(chunk, from, n);
+            pos += n;
+        }
+        segment.clear();
+        return segment;
+    }
+
+    private int readChunk(int chunkId) {
+        int length = (int) Math.min(CHUNK_SIZE, dataSize - (long) chunkId * CHUNK_SIZE);
+        if (chunkId == lastChunk)
+            return length;
+        lastChunk = -1;
+        long offset = chunkOffsets[chunkId];
+        int clen = (int) (chunkOffsets[chunkId + 1] - offset);
+        try {
+            byte[] bytes = clen < length ? compressed : chunk;
+            ByteBuffer bb = ByteBuffer.wrap(bytes, 0, clen);
+            while (bb.remaining() > 0)
+                if (channel.read(bb, offset + bb.position()) < 0)
+                    throw new IOException("Unexpected end of " + path);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        if (clen < length)
+            Lz4Codec.decompress(compressed, 0, clen, chunk, 0, length);
+        lastChunk = chunkId;
+        return length;
+    }
+
+    long fileSize() {
+        try {
+            return channel.size();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    synchronized void close() {
+        // every segment cached is also in byBuffer.
+        for (Segment segment : byBuffer.values())
+            ((DirectBuffer) segment.buffer).cleaner().clean();
+        segments.clear();
+        byBuffer.clear();
+        try {
+            raf.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    static class Segment {
+        final ByteBuffer buffer;
+        int references = 0;
+        boolean evicted = false;
+
+        Segment(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.higherfrequencytrading.chronicle.impl;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.text.SimpleDateFormat;
+import java.util.TimeZone;
+
+/**
+ * How often a CycledIndexedChronicle rolls to a new file pair.  Cycles are numbered from the epoch in GMT.
+ *
+ * @author peter.lawrey
+ */
+public enum CycleLength {
+    HOURLY("yyyyMMdd-HH", 60 * 60 * 1000L),
+    DAILY("yyyyMMdd", 24 * 60 * 60 * 1000L);
+
+    private final String format;
+    private final long lengthMS;
+
+    CycleLength(String format, long lengthMS) {
+        this.format = format;
+        this.lengthMS = lengthMS;
+    }
+
+    public int cycleFor(long timeMS) {
+        return (int) (timeMS / lengthMS);
+    }
+
+    public long startOf(int cycle) {
+        return cycle * lengthMS;
+    }
+
+    public long lengthMS() {
+        return lengthMS;
+    }
+
+    /**
+     * @return a new, not thread safe, format for the file name of each cycle.
+     */
+    @NotNull
+    public SimpleDateFormat newDateFormat() {
+        SimpleDateFormat sdf = new SimpleDateFormat(format);
+        sdf.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return sdf;
+    }
+}
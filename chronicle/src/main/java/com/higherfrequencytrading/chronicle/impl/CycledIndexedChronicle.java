@@ -0,0 +1,753 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.higherfrequencytrading.chronicle.impl;
+
+import com.higherfrequencytrading.chronicle.Chronicle;
+import com.higherfrequencytrading.chronicle.EnumeratedMarshaller;
+import com.higherfrequencytrading.chronicle.Excerpt;
+import com.higherfrequencytrading.chronicle.WaitStrategy;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * A Chronicle which rolls to a new IndexedChronicle, i.e. a new .index/.data pair, every cycle.  A cycle is either a
+ * period of time, hourly or daily, or a maximum number of bytes of data.
+ * <p/>
+ * The basePath is a directory with one file pair per cycle.  The index of an excerpt has the cycle in the top bits and
+ * the sequence within that cycle in the bottom CYCLE_INDEX_BITS so Excerpt.index(long) works across cycles.  Only the
+ * latest cycle is opened on start up and a cycle which is no longer appended to is closed when the last excerpt using
+ * it moves on, so its files can be archived.
+ *
+ * @author peter.lawrey
+ */
+public class CycledIndexedChronicle implements Chronicle {
+    public static final int CYCLE_INDEX_BITS = 40;
+    public static final long SEQUENCE_MASK = (1L << CYCLE_INDEX_BITS) - 1;
+    static final long RESCAN_INTERVAL_MS = 100;
+    private static final Logger logger = Logger.getLogger(CycledIndexedChronicle.class.getName());
+    private final String basePath;
+    private final String name;
+    @Nullable
+    private final CycleLength cycleLength;
+    @Nullable
+    private final SimpleDateFormat dateFormat;
+    private final long cycleSize;
+    private final int dataBitSizeHint;
+    private final ByteOrder byteOrder;
+    private final boolean minimiseByteBuffers;
+    private final boolean synchronousMode;
+    private final Map<Class, EnumeratedMarshaller> marshallerMap = new LinkedHashMap<Class, EnumeratedMarshaller>();
+    private final Map<Integer, CycleRef> openCycles = new LinkedHashMap<Integer, CycleRef>();
+    private volatile int lastCycle;
+    private boolean useUnsafe = false;
+    private boolean backgroundMapping = false;
+    private int dataOverlap = 0;
+    private int timeIndexExcerpts = 0;
+    private long timeIndexNS = 0;
+    private int mappingCache = 0;
+    private boolean sharedMappings = false;
+    private boolean multiThreaded = false;
+    // used if sealed cycles are compressed in the background.
+    @Nullable
+    private ExecutorService compressionService = null;
+    @NotNull
+    private WaitStrategy waitStrategy = new SpinParkWaitStrategy();
+
+    public CycledIndexedChronicle(String basePath, @NotNull CycleLength cycleLength) throws IOException {
+        this(basePath, cycleLength, 0, IndexedChronicle.DEFAULT_DATA_BITS_SIZE, ByteOrder.nativeOrder(), false, false);
+    }
+
+    public CycledIndexedChronicle(String basePath, long cycleSize) throws IOException {
+        this(basePath, null, cycleSize, IndexedChronicle.DEFAULT_DATA_BITS_SIZE, ByteOrder.nativeOrder(), false, false);
+    }
+
+    /**
+     * @param basePath            directory for the file pair of each cycle.
+     * @param cycleLength         the period for each cycle or null if cycles are by size.
+     * @param cycleSize           the number of data bytes after which to roll, if cycleLength is null.
+     * @param dataBitSizeHint     as for IndexedChronicle
+     * @param byteOrder           as for IndexedChronicle
+     * @param minimiseByteBuffers as for IndexedChronicle
+     * @param synchronousMode     as for IndexedChronicle
+     * @throws IOException if the directory could not be created or listed.
+     */
+    public CycledIndexedChronicle(String basePath, @Nullable CycleLength cycleLength, long cycleSize, int dataBitSizeHint,
+                                  ByteOrder byteOrder, boolean minimiseByteBuffers, boolean synchronousMode) throws IOException {
+        if (cycleLength == null && cycleSize <= 0)
+            throw new IllegalArgumentException("Either a cycleLength or a cycleSize > 0 is required");
+        this.basePath = basePath;
+        this.cycleLength = cycleLength;
+        this.dateFormat = cycleLength == null ? null : cycleLength.newDateFormat();
+        this.cycleSize = cycleSize;
+        this.dataBitSizeHint = dataBitSizeHint;
+        this.byteOrder = byteOrder;
+        this.minimiseByteBuffers = minimiseByteBuffers;
+        this.synchronousMode = synchronousMode;
+
+        File dir = new File(basePath);
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Unable to create directory " + basePath);
+        name = dir.getName();
+
+        // only the last cycle matters on start up.
+        int[] cycles = listCycles();
+        lastCycle = cycles.length == 0 ? -1 : cycles[cycles.length - 1];
+        logger.info(basePath + ", cycles=" + cycles.length + ", lastCycle=" + lastCycle);
+    }
+
+    public static int cycleOf(long index) {
+        return (int) (index >>> CYCLE_INDEX_BITS);
+    }
+
+    public static long sequenceOf(long index) {
+        return index & SEQUENCE_MASK;
+    }
+
+    public static long indexFor(int cycle, long sequence) {
+        return ((long) cycle << CYCLE_INDEX_BITS) + sequence;
+    }
+
+    public void useUnsafe(boolean useUnsafe) {
+        this.useUnsafe = useUnsafe;
+    }
+
+    /**
+     * @param backgroundMapping whether each cycle maps its next segments in a background thread.
+     */
+    public void backgroundMapping(boolean backgroundMapping) {
+        this.backgroundMapping = backgroundMapping;
+    }
+
+    /**
+     * @param dataOverlap of the data segments of each cycle opened from now on.
+     * @see IndexedChronicle#dataOverlap(int)
+     */
+    public void dataOverlap(int dataOverlap) {
+        this.dataOverlap = dataOverlap;
+    }
+
+    /**
+     * @param everyExcerpts sample every this many excerpts of each cycle opened from now on, or 0 for none.
+     * @param every         sample when this much time has passed, or 0 for none.
+     * @param unit          of every.
+     * @see IndexedChronicle#timeIndex(int, long, TimeUnit)
+     */
+    public void timeIndex(int everyExcerpts, long every, @NotNull TimeUnit unit) {
+        this.timeIndexExcerpts = everyExcerpts;
+        this.timeIndexNS = unit.toNanos(every);
+    }
+
+    /**
+     * @param segments of each file to keep mapped for each cycle opened from now on, or 0 for the default.
+     * @see IndexedChronicle#mappingCache(int)
+     */
+    public void mappingCache(int segments) {
+        this.mappingCache = segments;
+    }
+
+    /**
+     * @param sharedMappings whether each cycle opened from now on shares its mappings within this JVM.
+     * @see IndexedChronicle#sharedMappings(boolean)
+     */
+    public void sharedMappings(boolean sharedMappings) {
+        this.sharedMappings = sharedMappings;
+    }
+
+    /**
+     * Compress the data of each cycle in a background thread once appending has moved on to the next.  A compressed
+     * cycle is read by decompressing a data segment at a time.
+     *
+     * @param compress whether to compress sealed cycles.
+     * @see #compressCycle(int)
+     */
+    public synchronized void compressSealedCycles(boolean compress) {
+        if (compress == (compressionService != null))
+            return;
+        if (compress) {
+            final String threadName = name + "-compressor";
+            compressionService = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @NotNull
+                @Override
+                public Thread newThread(@NotNull Runnable r) {
+                    Thread t = new Thread(r, threadName);
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            scheduleCompression();
+        } else {
+            compressionService.shutdown();
+            compressionService = null;
+        }
+    }
+
+    private void scheduleCompression() {
+        if (compressionService == null)
+            return;
+        compressionService.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (int cycle : listCycles())
+                    if (cycle < lastCycle)
+                        compressCycle(cycle);
+            }
+        });
+    }
+
+    /**
+     * Replace the .data file of a sealed cycle with a compressed .cdata file.  The last cycle, and cycles an excerpt
+     * is using, are not compressed.  This relies on the .data file being deleted while any other process could still
+     * have it mapped, so it is for a single process, and a POSIX file system.
+     *
+     * @param cycle to compress.
+     * @return whether the cycle was compressed.
+     */
+    public boolean compressCycle(int cycle) {
+        String cyclePath = cyclePath(cycle);
+        File data = new File(cyclePath + ".data");
+        File cdata = new File(cyclePath + ".cdata");
+        long dataEnd;
+        synchronized (this) {
+            if (cycle >= lastCycle || openCycles.containsKey(cycle) || !data.exists())
+                return false;
+            if (cdata.exists())
+                // compressed but the .data couldn't be deleted last time.
+                return data.delete();
+            IndexedChronicle ic = acquireCycle(cycle, false);
+            if (ic == null)
+                return false;
+            try {
+                dataEnd = ic.getIndexData(ic.size());
+            } finally {
+                releaseCycle(cycle);
+            }
+        }
+        try {
+            long size = CompressedData.compress(data.getPath(), dataEnd, cdata.getPath());
+            logger.info("Compressed " + data + " from " + dataEnd + " to " + size + " bytes");
+        } catch (IOException e) {
+            logger.warning("Unable to compress " + data + " " + e);
+            return false;
+        }
+        synchronized (this) {
+            // an excerpt opening the cycle now uses the compressed data, one which has it open already keeps its mapping.
+            if (!data.delete())
+                logger.warning("Unable to delete " + data);
+        }
+        return true;
+    }
+
+    @NotNull
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @NotNull
+    @Override
+    public Excerpt createExcerpt() {
+        int cycle = lastCycle;
+        if (cycle < 0)
+            cycle = appendCycle(0);
+        return new CycledExcerpt(cycle, acquireCycle(cycle, true));
+    }
+
+    /**
+     * @return the index after the last excerpt of the last cycle.
+     */
+    @Override
+    public long size() {
+        int cycle = lastCycle;
+        if (cycle < 0)
+            return 0;
+        IndexedChronicle ic = acquireCycle(cycle, true);
+        try {
+            return indexFor(cycle, ic.size());
+        } finally {
+            releaseCycle(cycle);
+        }
+    }
+
+    @Override
+    public long sizeInBytes() {
+        long total = 0;
+        File[] files = new File(basePath).listFiles();
+        if (files != null)
+            for (File file : files)
+                if (file.getName().endsWith(".index") || file.getName().endsWith(".data") || file.getName().endsWith(".cdata"))
+                    total += file.length();
+        return total;
+    }
+
+    @Override
+    public ByteOrder byteOrder() {
+        return byteOrder;
+    }
+
+    @Override
+    public synchronized void close() {
+        compressSealedCycles(false);
+        for (CycleRef ref : openCycles.values())
+            ref.chronicle.close();
+        openCycles.clear();
+    }
+
+    @Override
+    public synchronized void multiThreaded(boolean multiThreaded) {
+        this.multiThreaded = multiThreaded;
+        for (CycleRef ref : openCycles.values())
+            ref.chronicle.multiThreaded(multiThreaded);
+    }
+
+    /**
+     * The wait strategy is shared by every cycle so a writer to one wakes the readers of this chronicle.
+     */
+    @Override
+    public synchronized void waitStrategy(@NotNull WaitStrategy waitStrategy) {
+        this.waitStrategy = waitStrategy;
+        for (CycleRef ref : openCycles.values())
+            ref.chronicle.waitStrategy(waitStrategy);
+    }
+
+    @NotNull
+    @Override
+    public WaitStrategy waitStrategy() {
+        return waitStrategy;
+    }
+
+    @Override
+    public synchronized <E> void setEnumeratedMarshaller(@NotNull EnumeratedMarshaller<E> marshaller) {
+        marshallerMap.put(marshaller.classMarshaled(), marshaller);
+        for (CycleRef ref : openCycles.values())
+            ref.chronicle.setEnumeratedMarshaller(marshaller);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Nullable
+    @Override
+    public synchronized <E> EnumeratedMarshaller<E> getMarshaller(@NotNull Class<E> eClass) {
+        return marshallerMap.get(eClass);
+    }
+
+    /**
+     * @return the cycles on disk in ascending order.
+     */
+    @NotNull
+    synchronized int[] listCycles() {
+        String[] names = new File(basePath).list();
+        if (names == null)
+            return new int[0];
+        int[] cycles = new int[names.length];
+        int count = 0;
+        for (String fileName : names) {
+            if (!fileName.endsWith(".index"))
+                continue;
+            int cycle = parseCycle(fileName.substring(0, fileName.length() - ".index".length()));
+            if (cycle >= 0)
+                cycles[count++] = cycle;
+        }
+        cycles = Arrays.copyOf(cycles, count);
+        Arrays.sort(cycles);
+        return cycles;
+    }
+
+    private int parseCycle(String cycleName) {
+        try {
+            if (cycleLength == null)
+                return Integer.parseInt(cycleName);
+            assert dateFormat != null;
+            return cycleLength.cycleFor(dateFormat.parse(cycleName).getTime());
+        } catch (NumberFormatException ignored) {
+            return -1;
+        } catch (ParseException ignored) {
+            return -1;
+        }
+    }
+
+    /**
+     * Keep at most this many of the latest cycles, deleting the files of earlier ones.
+     *
+     * @return the number of cycles deleted.
+     */
+    public synchronized int retainCycles(int cycles) {
+        int[] all = listCycles();
+        int deleted = 0;
+        for (int i = 0; i < all.length - cycles; i++)
+            if (deleteCycle(all[i]))
+                deleted++;
+        return deleted;
+    }
+
+    /**
+     * Keep the latest cycles which fit in this many bytes of index and data, deleting the files of earlier ones.  The
+     * last cycle is always kept.
+     *
+     * @return the number of cycles deleted.
+     */
+    public synchronized int retainBytes(long bytes) {
+        int[] all = listCycles();
+        int deleted = 0;
+        long total = 0;
+        for (int i = all.length - 1; i >= 0; i--) {
+            total += cycleBytes(all[i]);
+            if (total > bytes && deleteCycle(all[i]))
+                deleted++;
+        }
+        return deleted;
+    }
+
+    /**
+     * Delete the cycles which ended before this time.  For cycles by size this is when its index was last written.
+     *
+     * @param timeNS since the epoch.
+     * @return the number of cycles deleted.
+     */
+    public synchronized int retainSince(long timeNS) {
+        long timeMS = timeNS / 1000000;
+        int deleted = 0;
+        for (int cycle : listCycles()) {
+            long endMS = cycleLength == null
+                    ? new File(cyclePath(cycle) + ".index").lastModified()
+                    : cycleLength.startOf(cycle + 1);
+            if (endMS < timeMS && deleteCycle(cycle))
+                deleted++;
+        }
+        return deleted;
+    }
+
+    private long cycleBytes(int cycle) {
+        String cyclePath = cyclePath(cycle);
+        return new File(cyclePath + ".index").length() + new File(cyclePath + ".data").length()
+                + new File(cyclePath + ".cdata").length();
+    }
+
+    /**
+     * The last cycle and cycles an excerpt is using are not deleted.
+     *
+     * @return whether the cycle was deleted.
+     */
+    private boolean deleteCycle(int cycle) {
+        if (cycle >= lastCycle)
+            return false;
+        CycleRef ref = openCycles.get(cycle);
+        if (ref != null) {
+            if (ref.users > 0)
+                return false;
+            openCycles.remove(cycle);
+            ref.chronicle.close();
+        }
+        String cyclePath = cyclePath(cycle);
+        // the .index first so the cycle is no longer listed even if the rest can't be deleted.
+        for (String ext : new String[]{".index", ".data", ".cdata", ".header", ".time"}) {
+            File file = new File(cyclePath + ext);
+            if (file.exists() && !file.delete())
+                logger.warning("Unable to delete " + file);
+        }
+        logger.info("Deleted cycle " + cyclePath);
+        return true;
+    }
+
+    @NotNull
+    private String cyclePath(int cycle) {
+        return basePath + File.separator + cycleName(cycle);
+    }
+
+    @NotNull
+    private String cycleName(int cycle) {
+        if (cycleLength == null)
+            return String.format("%06d", cycle);
+        assert dateFormat != null;
+        return dateFormat.format(new Date(cycleLength.startOf(cycle)));
+    }
+
+    /**
+     * @param capacity of the excerpt about to be written.
+     * @return the cycle the next excerpt should be appended to.
+     */
+    synchronized int appendCycle(int capacity) {
+        int cycle = lastCycle;
+        if (cycleLength != null) {
+            int now = cycleLength.cycleFor(System.currentTimeMillis());
+            // don't go backwards if the clock does.
+            return Math.max(now, cycle);
+        }
+        if (cycle < 0)
+            return 0;
+        IndexedChronicle ic = acquireCycle(cycle, true);
+        try {
+            long size = ic.size();
+            if (size > 0 && ic.getIndexData(size) + capacity > cycleSize)
+                return cycle + 1;
+            return cycle;
+        } finally {
+            releaseCycle(cycle);
+        }
+    }
+
+    /**
+     * @param afterCycle the cycle being read.
+     * @return the first cycle after this one or -1 if there isn't one yet.
+     */
+    synchronized int nextCycle(int afterCycle) {
+        // another process might have rolled to a new cycle.
+        int[] cycles = listCycles();
+        for (int cycle : cycles) {
+            if (cycle > afterCycle) {
+                lastCycle = Math.max(lastCycle, cycles[cycles.length - 1]);
+                return cycle;
+            }
+        }
+        return -1;
+    }
+
+    synchronized int firstCycle() {
+        int[] cycles = listCycles();
+        return cycles.length == 0 ? lastCycle : cycles[0];
+    }
+
+    @Nullable
+    synchronized IndexedChronicle acquireCycle(int cycle, boolean create) {
+        CycleRef ref = openCycles.get(cycle);
+        if (ref == null) {
+            String cyclePath = cyclePath(cycle);
+            if (!create && !new File(cyclePath + ".index").exists())
+                return null;
+            try {
+                IndexedChronicle ic = new IndexedChronicle(cyclePath, dataBitSizeHint, byteOrder, minimiseByteBuffers, synchronousMode);
+                ic.useUnsafe(useUnsafe);
+                ic.sharedMappings(sharedMappings);
+                if (mappingCache > 0)
+                    ic.mappingCache(mappingCache);
+                ic.dataOverlap(dataOverlap);
+                ic.backgroundMapping(backgroundMapping);
+                if (timeIndexExcerpts > 0 || timeIndexNS > 0)
+                    ic.timeIndex(timeIndexExcerpts, timeIndexNS, TimeUnit.NANOSECONDS);
+                ic.multiThreaded(multiThreaded);
+                ic.waitStrategy(waitStrategy);
+                for (EnumeratedMarshaller marshaller : marshallerMap.values())
+                    ic.setEnumeratedMarshaller(marshaller);
+                ref = new CycleRef(ic);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            openCycles.put(cycle, ref);
+            if (cycle > lastCycle) {
+                lastCycle = cycle;
+                // the previous cycle is sealed.
+                scheduleCompression();
+            }
+        }
+        ref.users++;
+        return ref.chronicle;
+    }
+
+    synchronized void releaseCycle(int cycle) {
+        CycleRef ref = openCycles.get(cycle);
+        if (ref == null || --ref.users > 0)
+            return;
+        // the last cycle is still being appended to, earlier cycles are sealed.
+        if (cycle < lastCycle) {
+            openCycles.remove(cycle);
+            ref.chronicle.close();
+        }
+    }
+
+    static class CycleRef {
+        final IndexedChronicle chronicle;
+        int users = 0;
+
+        CycleRef(IndexedChronicle chronicle) {
+            this.chronicle = chronicle;
+        }
+    }
+
+    class CycledExcerpt extends WrappedExcerpt {
+        private int cycle;
+        private long nextRescanMS = 0;
+        private boolean batch = false;
+
+        CycledExcerpt(int cycle, IndexedChronicle chronicle) {
+            super(chronicle.createExcerpt());
+            this.cycle = cycle;
+        }
+
+        @NotNull
+        @Override
+        public Chronicle chronicle() {
+            return CycledIndexedChronicle.this;
+        }
+
+        /**
+         * @return the index, or before the start of a cycle, one less than its first index which has the previous
+         * cycle with a sequence of SEQUENCE_MASK.
+         */
+        @Override
+        public long index() {
+            long index = super.index();
+            return index < 0 ? indexFor(cycle, 0) - 1 : indexFor(cycle, index);
+        }
+
+        @Override
+        public boolean index(long index) throws IndexOutOfBoundsException {
+            if (index < 0) {
+                toStart();
+                return true;
+            }
+            long sequence = sequenceOf(index);
+            // no cycle is that long, so this is before the start of the next one.
+            if (sequence == SEQUENCE_MASK) {
+                int cycle = cycleOf(index) + 1;
+                return (cycle == this.cycle || switchCycle(cycle, false)) && super.index(-1);
+            }
+            int cycle = cycleOf(index);
+            return (cycle == this.cycle || switchCycle(cycle, false)) && super.index(sequence);
+        }
+
+        @Override
+        public boolean nextIndex() {
+            if (super.nextIndex())
+                return true;
+            int next = nextCycleThrottled();
+            if (next < 0)
+                return false;
+            // the appender only starts a new cycle once it has finished with the previous one.
+            if (super.nextIndex())
+                return true;
+            switchCycle(next, false);
+            super.toStart();
+            return super.nextIndex();
+        }
+
+        @Override
+        public boolean hasNextIndex() {
+            return super.hasNextIndex() || nextCycleThrottled() >= 0;
+        }
+
+        private int nextCycleThrottled() {
+            if (cycle < lastCycle)
+                return nextCycle(cycle);
+            long now = System.currentTimeMillis();
+            if (now < nextRescanMS)
+                return -1;
+            nextRescanMS = now + RESCAN_INTERVAL_MS;
+            return nextCycle(cycle);
+        }
+
+        @Override
+        public void startExcerpt(int capacity) {
+            appendTo(appendCycle(capacity));
+            super.startExcerpt(capacity);
+        }
+
+        @Override
+        public void startExcerpt() {
+            appendTo(appendCycle(0));
+            super.startExcerpt();
+        }
+
+        private void appendTo(int cycle) {
+            if (cycle == this.cycle)
+                return;
+            // a batch can't span cycles so publish what is in the previous one.
+            if (batch)
+                super.commitBatch();
+            switchCycle(cycle, true);
+            if (batch)
+                super.startBatch();
+        }
+
+        @Override
+        public void startBatch() {
+            super.startBatch();
+            batch = true;
+        }
+
+        @Override
+        public void commitBatch() {
+            batch = false;
+            super.commitBatch();
+        }
+
+        /**
+         * Search the cycles from the latest back for the last sample at or before this time.
+         */
+        @Override
+        public boolean seekToTime(long timeNS) {
+            int[] cycles = listCycles();
+            long timeMS = timeNS / 1000000;
+            for (int i = cycles.length - 1; i >= 0; i--) {
+                int cycle = cycles[i];
+                // a timed cycle can't have anything written before it started.
+                if (cycleLength != null && cycleLength.startOf(cycle) > timeMS)
+                    continue;
+                if ((cycle == this.cycle || switchCycle(cycle, false))
+                        && super.seekToTime(timeNS) && super.index() >= 0)
+                    return true;
+            }
+            toStart();
+            return true;
+        }
+
+        @Override
+        public long size() {
+            return indexFor(cycle, super.size());
+        }
+
+        @NotNull
+        @Override
+        public Excerpt toStart() {
+            int first = firstCycle();
+            if (first != cycle)
+                switchCycle(first, false);
+            super.toStart();
+            return this;
+        }
+
+        @NotNull
+        @Override
+        public Excerpt toEnd() {
+            int last = lastCycle;
+            if (last != cycle)
+                switchCycle(last, false);
+            super.toEnd();
+            return this;
+        }
+
+        private boolean switchCycle(int cycle, boolean create) {
+            IndexedChronicle ic = acquireCycle(cycle, create);
+            if (ic == null)
+                return false;
+            int previous = this.cycle;
+            this.cycle = cycle;
+            wrap(ic.createExcerpt());
+            releaseCycle(previous);
+            return true;
+        }
+    }
+}
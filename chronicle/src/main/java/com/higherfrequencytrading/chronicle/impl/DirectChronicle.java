@@ -19,7 +19,7 @@ package com.higherfrequencytrading.chronicle.impl;
 import com.higherfrequencytrading.chronicle.Chronicle;
 import com.higherfrequencytrading.chronicle.EnumeratedMarshaller;
 
-import java.nio.MappedByteBuffer;
+import java.nio.ByteBuffer;
 
 /**
  * All Chronicle must actually implement this interface, however these method are intended for internal use only.
@@ -30,18 +30,74 @@ public interface DirectChronicle extends Chronicle {
 
     public long getIndexData(long indexId);
 
-    MappedByteBuffer acquireDataBuffer(long startPosition);
+    /**
+     * @param startPosition in the data.
+     * @return the data segment with this position, which must be released when finished with.
+     */
+    ByteBuffer acquireDataBuffer(long startPosition);
+
+    /**
+     * @param buffer acquired and no longer used.
+     */
+    void releaseDataBuffer(ByteBuffer buffer);
 
     int positionInBuffer(long startPosition);
 
+    /**
+     * @return how many bytes of the next data segment are mapped after each one, so an excerpt can span the boundary.
+     */
+    int dataOverlap();
+
+    /**
+     * @return the first excerpt still available, excerpts before it have been dropped by a retention policy.
+     */
+    long startIndex();
+
     void setIndexData(long indexId, long indexData);
 
+    /**
+     * @param capacity of the excerpt, or 0 for an open ended excerpt which can grow to the end of the data segment.
+     * @return the start position of the excerpt.  It also sets the index of the appender, as this can be more than
+     *         size() if the chronicle allows many writers or a batch has been started.
+     */
     long startExcerpt(AbstractExcerpt appender, int capacity);
 
     void incrementSize(long l);
 
+    /**
+     * Publish an excerpt so readers can see it.
+     *
+     * @param index       of the excerpt
+     * @param endPosition of the data written
+     * @return the end position used which can be more than endPosition if the space was reserved up front.
+     */
+    long finishExcerpt(long index, long endPosition);
+
+    /**
+     * Hold back the index entries of excerpts finished from now on, until commitBatch().
+     */
+    void startBatch();
+
+    /**
+     * Publish the excerpts finished since startBatch() together.
+     *
+     * @return the number of excerpts published.
+     */
+    int commitBatch();
+
+    /**
+     * @param timeNS since the epoch.
+     * @return the index of the last excerpt sampled in the time index at or before this time, or -1 if there isn't one.
+     */
+    long indexForTime(long timeNS);
+
     <E> EnumeratedMarshaller<E> acquireMarshaller(Class<E> aClass);
 
+    /**
+     * @return the field by field marshaller for a Serializable class, or null if it needs Java Serialization.
+     */
+    <E> ReflectiveMarshaller<E> acquireReflectiveMarshaller(Class<E> aClass);
+
     boolean synchronousMode();
 
     boolean multiThreaded();
@@ -0,0 +1,311 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.higherfrequencytrading.chronicle.impl;
+
+import com.higherfrequencytrading.chronicle.Excerpt;
+import com.higherfrequencytrading.chronicle.tools.ChronicleTools;
+import org.jetbrains.annotations.NotNull;
+import sun.nio.ch.DirectBuffer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static com.higherfrequencytrading.chronicle.impl.UnsafeExcerpt.UNSAFE;
+
+/**
+ * A Chronicle of records with the same maximum size, which needs no index file.  Each record has a slot of an 8 byte
+ * header word and the record, so its position is index * slotSize, and the header word holds the length written
+ * once it has been committed, or 0 before.  Reading an excerpt touches the header word and the record rather than two
+ * index entries as well.
+ * <p/>
+ * Each data segment is mapped with an overlap of one slot, so a record which runs past the end of a segment can be
+ * accessed in one buffer.
+ *
+ * @author peter.lawrey
+ */
+public class FixedRecordChronicle extends AbstractChronicle {
+    private static final Logger logger = Logger.getLogger(FixedRecordChronicle.class.getName());
+    static final int HEADER_WORD_SIZE = 8;
+    private final int recordSize;
+    private final int slotSize;
+    private final int dataBitSize;
+    private final int dataLowMask;
+    private final FileChannel dataChannel;
+    private final List<MappedByteBuffer> dataBuffers = new ArrayList<MappedByteBuffer>();
+    private boolean useUnsafe = false;
+    private AbstractExcerpt lastAppender;
+    // the lengths of records finished in a batch, which are committed together.
+    private boolean batch = false;
+    @NotNull
+    private int[] batchLengths = new int[16];
+    private int batchCount = 0;
+
+    public FixedRecordChronicle(String basePath, int recordSize) throws IOException {
+        this(basePath, recordSize, ChronicleTools.is64Bit() ? IndexedChronicle.DEFAULT_DATA_BITS_SIZE : IndexedChronicle.DEFAULT_DATA_BITS_SIZE32);
+    }
+
+    /**
+     * @param basePath        of the .data file.
+     * @param recordSize      the largest record which can be written.
+     * @param dataBitSizeHint the size of each data segment as a power of 2.
+     */
+    public FixedRecordChronicle(String basePath, int recordSize, int dataBitSizeHint) throws IOException {
+        super(new File(basePath).getName());
+        if (recordSize < AbstractExcerpt.MIN_SIZE)
+            throw new IllegalArgumentException("recordSize must be at least " + AbstractExcerpt.MIN_SIZE);
+        this.recordSize = recordSize;
+        // keep the header words aligned.
+        slotSize = HEADER_WORD_SIZE + ((recordSize + 7) & ~7);
+        dataBitSize = Math.min(30, Math.max(12, dataBitSizeHint));
+        dataLowMask = (1 << dataBitSize) - 1;
+        if (slotSize > dataLowMask + 1)
+            throw new IllegalArgumentException("recordSize " + recordSize + " is larger than a data segment of " + (dataLowMask + 1));
+
+        File parentFile = new File(basePath).getParentFile();
+        if (parentFile != null)
+            //noinspection ResultOfMethodCallIgnored
+            parentFile.mkdirs();
+        dataChannel = new RandomAccessFile(basePath + ".data", "rw").getChannel();
+        long records = dataChannel.size() / slotSize;
+        if (records > 0) {
+            size = findLastIndex(records);
+            logger.info(basePath + ", size=" + size);
+        } else {
+            logger.info(basePath + " created.");
+        }
+    }
+
+    /**
+     * The records committed are a prefix of the data, so the first which isn't can be found with a binary search.
+     */
+    private long findLastIndex(long records) {
+        long lo = 0, hi = records;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (committedLength(mid) > 0)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    public void useUnsafe(boolean useUnsafe) {
+        this.useUnsafe = useUnsafe;
+    }
+
+    public boolean useUnsafe() {
+        return useUnsafe;
+    }
+
+    public int recordSize() {
+        return recordSize;
+    }
+
+    /**
+     * @return the position of the record after its header word.
+     */
+    public long position(long index) {
+        return index * slotSize + HEADER_WORD_SIZE;
+    }
+
+    /**
+     * @return the length written if this record has been committed, otherwise 0.
+     */
+    public int committedLength(long index) {
+        long headerPosition = index * slotSize;
+        ByteBuffer buffer = acquireDataBuffer(headerPosition);
+        return (int) UNSAFE.getLongVolatile(null, ((DirectBuffer) buffer).address() + (headerPosition & dataLowMask));
+    }
+
+    private void commit(long index, int length) {
+        long headerPosition = index * slotSize;
+        ByteBuffer buffer = acquireDataBuffer(headerPosition);
+        UNSAFE.putOrderedLong(null, ((DirectBuffer) buffer).address() + (headerPosition & dataLowMask), length);
+    }
+
+    @NotNull
+    @Override
+    public Excerpt createExcerpt() {
+        return useUnsafe ? new UnsafeExcerpt(this) : new ByteBufferExcerpt(this);
+    }
+
+    @Override
+    public long sizeInBytes() {
+        try {
+            return dataChannel.size();
+        } catch (IOException ignored) {
+            return -1;
+        }
+    }
+
+    @Override
+    public ByteOrder byteOrder() {
+        return ByteOrder.nativeOrder();
+    }
+
+    /**
+     * There is no index, so this is the end of the previous record if it has been committed, otherwise 0.
+     */
+    @Override
+    public long getIndexData(long indexId) {
+        if (indexId <= 0)
+            return 0;
+        int length = committedLength(indexId - 1);
+        return length > 0 ? position(indexId - 1) + length : 0;
+    }
+
+    @Override
+    public void setIndexData(long indexId, long indexData) {
+        throw new UnsupportedOperationException("The position of a fixed size record cannot be changed");
+    }
+
+    @NotNull
+    @Override
+    public ByteBuffer acquireDataBuffer(long startPosition) {
+        int dataBufferId = (int) (startPosition >> dataBitSize);
+        while (dataBuffers.size() <= dataBufferId) dataBuffers.add(null);
+        MappedByteBuffer buffer = dataBuffers.get(dataBufferId);
+        if (buffer == null) {
+            try {
+                buffer = dataChannel.map(FileChannel.MapMode.READ_WRITE, startPosition & ~dataLowMask, dataLowMask + 1 + slotSize);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            buffer.order(ByteOrder.nativeOrder());
+            dataBuffers.set(dataBufferId, buffer);
+        }
+        return buffer;
+    }
+
+    @Override
+    public void releaseDataBuffer(ByteBuffer buffer) {
+        // mapped until closed.
+    }
+
+    @Override
+    public int positionInBuffer(long startPosition) {
+        return (int) (startPosition & dataLowMask);
+    }
+
+    @Override
+    public int dataOverlap() {
+        return slotSize;
+    }
+
+    @Override
+    public long startIndex() {
+        return 0;
+    }
+
+    @Override
+    public long startExcerpt(@NotNull AbstractExcerpt appender, int capacity) {
+        if (capacity == 0)
+            throw new IllegalStateException("An open ended excerpt is not supported, use startExcerpt(" + recordSize + ")");
+        if (capacity > recordSize)
+            throw new IllegalArgumentException("Capacity " + capacity + " is larger than the record size " + recordSize);
+        assert lastAppender == null || lastAppender == appender : "Chronicle cannot safely have more than one appender ";
+        lastAppender = appender;
+        long index = size + batchCount;
+        appender.index = index;
+        return position(index);
+    }
+
+    @Override
+    public long finishExcerpt(long index, long endPosition) {
+        if (index != size + batchCount)
+            throw new ConcurrentModificationException("index: " + index + ", expected: " + (size + batchCount) + ", Have you updated the chronicle without thread safety?");
+        int length = (int) (endPosition - position(index));
+        if (batch) {
+            if (batchCount == batchLengths.length)
+                batchLengths = Arrays.copyOf(batchLengths, batchCount * 2);
+            batchLengths[batchCount++] = length;
+            return endPosition;
+        }
+        commit(index, length);
+        incrementSize(index + 1);
+        return endPosition;
+    }
+
+    @Override
+    public void incrementSize(long expected) {
+        if (size + 1 != expected)
+            throw new ConcurrentModificationException("size: " + (size + 1) + ", expected: " + expected + ", Have you updated the chronicle without thread safety?");
+        size++;
+    }
+
+    @Override
+    public void startBatch() {
+        if (batch)
+            throw new IllegalStateException("A batch has already been started");
+        batch = true;
+    }
+
+    @Override
+    public int commitBatch() {
+        if (!batch)
+            throw new IllegalStateException("No batch has been started");
+        int count = batchCount;
+        batch = false;
+        batchCount = 0;
+        for (int i = 0; i < count; i++)
+            commit(size + i, batchLengths[i]);
+        size += count;
+        return count;
+    }
+
+    /**
+     * There is no time index, so a search goes to the start.
+     */
+    @Override
+    public long indexForTime(long timeNS) {
+        return -1;
+    }
+
+    @Override
+    public boolean synchronousMode() {
+        return false;
+    }
+
+    @Override
+    public void close() {
+        try {
+            for (MappedByteBuffer buffer : dataBuffers)
+                if (buffer != null)
+                    buffer.force();
+        } finally {
+            try {
+                dataChannel.close();
+            } catch (IOException ignored) {
+            }
+            for (MappedByteBuffer buffer : dataBuffers)
+                if (buffer != null)
+                    ((DirectBuffer) buffer).cleaner().clean();
+            dataBuffers.clear();
+        }
+    }
+}
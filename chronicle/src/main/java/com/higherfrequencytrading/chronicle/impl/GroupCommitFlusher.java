@@ -0,0 +1,164 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.higherfrequencytrading.chronicle.impl;
+
+import org.jetbrains.annotations.NotNull;
+import sun.nio.ch.DirectBuffer;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.higherfrequencytrading.chronicle.impl.UnsafeExcerpt.UNSAFE;
+
+/**
+ * Forces the excerpts finished since the last flush to disk, every interval or batch of excerpts, and keeps a
+ * watermark of the excerpts known to be durable.
+ * <p/>
+ * Only the pages written to are forced.  MappedByteBuffer.force() can't force part of a buffer, so the dirty range is
+ * mapped on its own, forced and unmapped.  This also means the flusher never touches the buffers of the appender.
+ *
+ * @author peter.lawrey
+ */
+class GroupCommitFlusher implements Runnable {
+    private static final Logger logger = Logger.getLogger(GroupCommitFlusher.class.getName());
+    private static final long MAX_MAP_SIZE = 1 << 30;
+    private final IndexedChronicle chronicle;
+    private final FileChannel indexChannel;
+    private final FileChannel dataChannel;
+    private final MappedByteBuffer header;
+    private final long intervalNS;
+    private final int batchSize;
+    private final Object durableLock = new Object();
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile boolean flushRequested = false;
+    private volatile long durableSize;
+    // only used by the flusher thread.
+    private long flushedDataEnd;
+
+    GroupCommitFlusher(@NotNull IndexedChronicle chronicle, FileChannel indexChannel, FileChannel dataChannel,
+                       MappedByteBuffer header, long intervalNS, int batchSize) {
+        this.chronicle = chronicle;
+        this.indexChannel = indexChannel;
+        this.dataChannel = dataChannel;
+        this.header = header;
+        this.intervalNS = intervalNS;
+        this.batchSize = batchSize;
+        durableSize = chronicle.size();
+        flushedDataEnd = chronicle.committedDataEnd();
+        thread = new Thread(this, chronicle.name() + "-flusher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    long durableSize() {
+        return durableSize;
+    }
+
+    /**
+     * Called by the appender, flush early if a batch is waiting.
+     */
+    void excerptFinished(long size) {
+        if (size - durableSize >= batchSize && !flushRequested)
+            requestFlush();
+    }
+
+    private void requestFlush() {
+        flushRequested = true;
+        LockSupport.unpark(thread);
+    }
+
+    boolean awaitDurable(long index, long timeout, @NotNull TimeUnit unit) throws InterruptedException {
+        if (index < durableSize)
+            return true;
+        requestFlush();
+        long deadlineNS = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (durableLock) {
+            while (index >= durableSize) {
+                long remainingNS = deadlineNS - System.nanoTime();
+                if (remainingNS <= 0 || !running)
+                    return false;
+                TimeUnit.NANOSECONDS.timedWait(durableLock, remainingNS);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            if (!flushRequested)
+                LockSupport.parkNanos(this, intervalNS);
+            flushRequested = false;
+            flush();
+        }
+        flush();
+    }
+
+    private void flush() {
+        long size = chronicle.size();
+        long from = durableSize;
+        if (size <= from)
+            return;
+        // as size is read first, this is the end of excerpt size - 1 or later.
+        long dataEnd = chronicle.committedDataEnd();
+        try {
+            force(dataChannel, flushedDataEnd, dataEnd);
+            force(indexChannel, chronicle.indexOffset(from + 1), chronicle.indexOffset(size + 1));
+            header.force();
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Failed to flush " + chronicle.name() + ", will retry", e);
+            return;
+        }
+        flushedDataEnd = dataEnd;
+        durableSize = size;
+        synchronized (durableLock) {
+            durableLock.notifyAll();
+        }
+    }
+
+    private static void force(@NotNull FileChannel channel, long start, long end) throws IOException {
+        long position = start & ~(UNSAFE.pageSize() - 1);
+        while (position < end) {
+            long length = Math.min(end - position, MAX_MAP_SIZE);
+            MappedByteBuffer mbb = channel.map(FileChannel.MapMode.READ_WRITE, position, length);
+            try {
+                mbb.force();
+            } finally {
+                ((DirectBuffer) mbb).cleaner().clean();
+            }
+            position += length;
+        }
+    }
+
+    void close() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (durableLock) {
+            durableLock.notifyAll();
+        }
+    }
+}
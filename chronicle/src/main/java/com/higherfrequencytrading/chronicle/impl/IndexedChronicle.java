@@ -30,10 +30,21 @@ import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.ConcurrentModificationException;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 import java.util.logging.Logger;
 
+import static com.higherfrequencytrading.chronicle.impl.AbstractExcerpt.RESERVED;
+import static com.higherfrequencytrading.chronicle.impl.UnsafeExcerpt.UNSAFE;
+
 /**
  * The fastest and most extensible Chronicle.
  *
@@ -44,6 +55,19 @@ public class IndexedChronicle extends AbstractChronicle {
     public static final int DEFAULT_DATA_BITS_SIZE = 27; // 1 << 27 or 128 MB.
     public static final int DEFAULT_DATA_BITS_SIZE32 = 22; // 1 << 22 or 4 MB.
     private static final Logger logger = Logger.getLogger(IndexedChronicle.class.getName());
+    // the .header file holds the last committed size so opening doesn't have to search the index.
+    static final int HEADER_SIZE = 64;
+    static final int HEADER_MAGIC = 0x43484831; // "CHH1"
+    static final int HEADER_MAGIC_OFFSET = 0;
+    static final int HEADER_SIZE_OFFSET = 8;
+    static final int HEADER_TAIL_OFFSET = 16; // entries reserved by many writers.
+    static final int HEADER_OVERLAP_OFFSET = 24; // the largest data overlap used.
+    static final int HEADER_START_OFFSET = 32; // the first excerpt retained.
+    static final int HEADER_DATA_ORDER_OFFSET = 40; // the byte order of the data, 0 if written in the native order.
+    static final int DATA_BIG_ENDIAN = 1, DATA_LITTLE_ENDIAN = 2;
+    private static final MappedByteBuffer[] NO_BUFFERS = {};
+    private static final AtomicLongFieldUpdater<AbstractChronicle> SIZE_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(AbstractChronicle.class, "size");
     protected final int indexLowMask;
     // used if minimiseByteBuffers is false.  This is faster but uses much more virtual memory.
     private final List<MappedByteBuffer> indexBuffers = new ArrayList<MappedByteBuffer>();
@@ -52,11 +76,26 @@ public class IndexedChronicle extends AbstractChronicle {
     private final int indexBitSize;
     private final int dataBitSize;
     private final int dataLowMask;
+    private int dataOverlap = 0;
     private final FileChannel indexChannel;
+    @Nullable
     private final FileChannel dataChannel;
+    // used if the data has been compressed, in which case there is no dataChannel.
+    @Nullable
+    private final CompressedData compressedData;
     private final ByteOrder byteOrder;
+    protected final boolean nativeOrder;
+    // the data of chronicles created before the header recorded it is in the native order, whatever byteOrder is.
+    private final ByteOrder dataByteOrder;
     private final boolean minimiseByteBuffers;
     private final boolean synchronousMode;
+    @NotNull
+    private final MappedByteBuffer header;
+    // the canonical path of the header, which is locked while this chronicle is open.
+    private final String ownerPath;
+    private final String timeIndexPath;
+    private final File indexFile;
+    private final File dataFile;
     // used if minimiseByteBuffers is true;
     private int lastIndexId = -1;
     @Nullable
@@ -64,9 +103,45 @@ public class IndexedChronicle extends AbstractChronicle {
     private int lastDataId = -1;
     @Nullable
     private MappedByteBuffer lastDataBuffer = null;
+    // used if mappingCache is set, the most recently used segments are kept mapped.
+    @Nullable
+    private MappedSegmentCache indexCache = null;
+    @Nullable
+    private MappedSegmentCache dataCache = null;
+    // used if sharedMappings is on, by offset, released to the MappedFileRegistry on close.
+    private boolean sharedMappings = false;
+    private final Map<Long, MappedByteBuffer> sharedIndexMappings = new LinkedHashMap<Long, MappedByteBuffer>();
+    private final Map<Long, MappedByteBuffer> sharedDataMappings = new LinkedHashMap<Long, MappedByteBuffer>();
     private boolean useUnsafe = false;
     private AbstractExcerpt lastAppender;
     private Thread appendingThread;
+    // used if backgroundMapping is on.
+    @Nullable
+    private ExecutorService mapperService = null;
+    @Nullable
+    private SegmentMapper indexMapper = null;
+    @Nullable
+    private SegmentMapper dataMapper = null;
+    // used if multiWriter is true. Copied on write so they can be read without a lock.
+    private boolean multiWriter = false;
+    @NotNull
+    private volatile MappedByteBuffer[] sharedIndexBuffers = NO_BUFFERS;
+    @NotNull
+    private volatile MappedByteBuffer[] sharedDataBuffers = NO_BUFFERS;
+    // used if groupCommit is on.
+    @Nullable
+    private GroupCommitFlusher flusher = null;
+    private long committedDataEnd = 0;
+    // the end positions of excerpts finished in a batch, held back until the batch is committed.
+    private boolean batch = false;
+    @NotNull
+    private long[] batchEnds = new long[16];
+    private int batchCount = 0;
+    // the .time file, opened when sampling starts or on the first search.
+    @Nullable
+    private volatile TimeIndex timeIndex = null;
+    // excerpts before this have been dropped.
+    private volatile long startIndex = 0;
 
     public IndexedChronicle(String basePath) throws IOException {
         this(basePath, ChronicleTools.is64Bit() ? DEFAULT_DATA_BITS_SIZE : DEFAULT_DATA_BITS_SIZE32);
@@ -86,8 +161,12 @@ public class IndexedChronicle extends AbstractChronicle {
 
     public IndexedChronicle(String basePath, int dataBitSizeHint, ByteOrder byteOrder, boolean minimiseByteBuffers, boolean synchronousMode) throws IOException {
         super(extractName(basePath));
+        timeIndexPath = basePath + ".time";
+        indexFile = new File(basePath + ".index");
+        dataFile = new File(basePath + ".data");
 
         this.byteOrder = byteOrder;
+        nativeOrder = byteOrder == ByteOrder.nativeOrder();
         this.minimiseByteBuffers = minimiseByteBuffers;
         this.synchronousMode = synchronousMode;
         indexBitSize = Math.min(30, Math.max(12, dataBitSizeHint - 3));
@@ -99,20 +178,160 @@ public class IndexedChronicle extends AbstractChronicle {
         if (parentFile != null)
             //noinspection ResultOfMethodCallIgnored
             parentFile.mkdirs();
-        indexChannel = new RandomAccessFile(basePath + ".index", synchronousMode ? "rwd" : "rw").getChannel();
-        dataChannel = new RandomAccessFile(basePath + ".data", synchronousMode ? "rwd" : "rw").getChannel();
-
-        // find the last record.
-        long indexSize = indexChannel.size() >>> indexBitSize();
-        if (indexSize > 0) {
-            indexSize--;
-            while (indexSize > 0 && getIndexData(indexSize) == 0)
-                indexSize--;
-            logger.info(basePath + ", size=" + indexSize);
-            size = indexSize;
-        } else {
-            logger.info(basePath + " created.");
+        ownerPath = new File(basePath + ".header").getCanonicalPath();
+        // only the first to open the files can discard what another writer may still be writing.
+        boolean onlyOwner = OwnerLocks.acquire(ownerPath);
+        boolean opened = false;
+        try {
+            indexChannel = new RandomAccessFile(basePath + ".index", synchronousMode ? "rwd" : "rw").getChannel();
+            header = mapHeader(basePath + ".header", byteOrder);
+            boolean validHeader = header.getInt(HEADER_MAGIC_OFFSET) == HEADER_MAGIC;
+            dataByteOrder = dataByteOrder(validHeader || indexChannel.size() > 0);
+            if (!new File(basePath + ".data").exists() && new File(basePath + ".cdata").exists()) {
+                compressedData = new CompressedData(basePath + ".cdata", dataByteOrder);
+                dataChannel = null;
+            } else {
+                compressedData = null;
+                dataChannel = new RandomAccessFile(basePath + ".data", synchronousMode ? "rwd" : "rw").getChannel();
+            }
+            if (validHeader)
+                dataOverlap = header.getInt(HEADER_OVERLAP_OFFSET);
+
+            // find the last record.
+            long indexSize = indexEntries(indexChannel.size());
+            if (indexSize > 0) {
+                long lastSize = validHeader ? header.getLong(HEADER_SIZE_OFFSET) : -1;
+                size = committedSize(validHeader ? lastSize : -1, findLastIndex(lastSize, indexSize), onlyOwner);
+                logger.info(basePath + ", size=" + size + (size == lastSize ? "" : " recovered, header had " + lastSize));
+            } else {
+                logger.info(basePath + " created.");
+            }
+            if (validHeader)
+                startIndex = Math.min(size, Math.max(0, header.getLong(HEADER_START_OFFSET)));
+            if (onlyOwner || !validHeader) {
+                header.putLong(HEADER_SIZE_OFFSET, size);
+                header.putLong(HEADER_START_OFFSET, startIndex);
+                header.putInt(HEADER_DATA_ORDER_OFFSET, dataByteOrder == ByteOrder.BIG_ENDIAN ? DATA_BIG_ENDIAN : DATA_LITTLE_ENDIAN);
+                header.putInt(HEADER_MAGIC_OFFSET, HEADER_MAGIC);
+            }
+            OwnerLocks.shared(ownerPath);
+            opened = true;
+        } finally {
+            if (!opened)
+                closeOnFailure();
+        }
+    }
+
+    /**
+     * Release what a constructor which failed part way had opened, so the files can be opened again in this JVM.
+     */
+    private void closeOnFailure() {
+        try {
+            if (indexChannel != null)
+                clearAll(indexChannel, indexBuffers);
+            if (dataChannel != null)
+                dataChannel.close();
+            if (compressedData != null)
+                compressedData.close();
+            if (header != null)
+                ((DirectBuffer) header).cleaner().clean();
+        } catch (IOException ignored) {
+        } finally {
+            OwnerLocks.release(ownerPath);
+        }
+    }
+
+    @NotNull
+    private static MappedByteBuffer mapHeader(String headerPath, ByteOrder byteOrder) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(headerPath, "rw");
+        try {
+            MappedByteBuffer mbb = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            mbb.order(byteOrder);
+            return mbb;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * A new chronicle writes its data in its byte order and records it in the header.  The data of an existing chronicle
+     * without one was written in the native order, whatever the byte order of its index.
+     *
+     * @param existing whether the chronicle has been written before.
+     */
+    @NotNull
+    private ByteOrder dataByteOrder(boolean existing) {
+        switch (existing ? header.getInt(HEADER_DATA_ORDER_OFFSET) : 0) {
+            case DATA_BIG_ENDIAN:
+                return ByteOrder.BIG_ENDIAN;
+            case DATA_LITTLE_ENDIAN:
+                return ByteOrder.LITTLE_ENDIAN;
+            default:
+                return existing ? ByteOrder.nativeOrder() : byteOrder;
+        }
+    }
+
+    /**
+     * The entries in use are a prefix of the index, the rest are zero so the last entry can be found with a binary
+     * search.  If the header is up to date this takes two reads, if it is a little stale it searches forward from it.
+     *
+     * @param lastSize  the size in the header, or -1 if unknown.
+     * @param indexSize the number of entries the index file has room for.
+     * @return the index of the last entry used.
+     */
+    private long findLastIndex(long lastSize, long indexSize) {
+        // entry lo is in use, entry hi and after are not.
+        long lo = 0, hi = indexSize;
+        if (lastSize > 0 && lastSize < indexSize && getIndexData(lastSize) != 0) {
+            lo = lastSize;
+            for (long step = 1; lo + step < hi; step <<= 1) {
+                if (getIndexData(lo + step) == 0) {
+                    hi = lo + step;
+                    break;
+                }
+                lo += step;
+            }
+        }
+        while (hi - lo > 1) {
+            long mid = (lo + hi) >>> 1;
+            if (getIndexData(mid) != 0)
+                lo = mid;
+            else
+                hi = mid;
         }
+        return lo;
+    }
+
+    /**
+     * Each excerpt is committed by writing its end without the RESERVED bit once its data has been written.  An end
+     * which is still reserved, or before the previous one, is either being written or from a writer which died before
+     * committing it.  Only the entries after the size in the header need checking.
+     * <p/>
+     * If no other chronicle has the files open, it is from a writer which died, so it and any entries after it are
+     * cleared.  Otherwise they are left for their writers to commit, and readers wait for them.
+     *
+     * @param committedSize the size in the header, or -1 if unknown, in which case only the last entry is checked.
+     * @param size          the index of the last entry used.
+     * @param discard       whether entries not committed can be cleared.
+     * @return the number of excerpts committed.
+     */
+    private long committedSize(long committedSize, long size, boolean discard) {
+        long from = Math.max(1, committedSize < 0 ? size : Math.min(committedSize, size));
+        long prevEnd = getIndexData(from - 1) & ~RESERVED;
+        for (long i = from; i <= size; i++) {
+            long end = getIndexData(i);
+            if ((end & RESERVED) != 0 || end < prevEnd) {
+                if (discard) {
+                    for (long j = size; j >= i; j--)
+                        setIndexData(j, 0);
+                    logger.warning(name() + ": discarded " + (size - i + 1) + " excerpts which were not committed");
+                    header.putLong(HEADER_TAIL_OFFSET, i - 1);
+                }
+                return i - 1;
+            }
+            prevEnd = end;
+        }
+        return size;
     }
 
     private static String extractName(String basePath) {
@@ -130,9 +349,11 @@ public class IndexedChronicle extends AbstractChronicle {
 
     @Override
     public long getIndexData(long indexId) {
-        long indexOffset = indexId << indexBitSize();
+        long indexOffset = indexOffset(indexId);
         ByteBuffer indexBuffer = acquireIndexBuffer(indexOffset);
-        return indexBuffer.getLong((int) (indexOffset & indexLowMask));
+        // the end of an excerpt is its commit marker, so it is read with acquire semantics.
+        long indexData = UNSAFE.getLongVolatile(null, ((DirectBuffer) indexBuffer).address() + (indexOffset & indexLowMask));
+        return nativeOrder ? indexData : Long.reverseBytes(indexData);
     }
 
     @NotNull
@@ -140,6 +361,15 @@ public class IndexedChronicle extends AbstractChronicle {
         if (startPosition >= MAX_VIRTUAL_ADDRESS)
             throwByteOrderIsIncorrect();
         int indexBufferId = (int) (startPosition >> indexBitSize);
+        if (multiWriter) {
+            MappedByteBuffer[] buffers = sharedIndexBuffers;
+            MappedByteBuffer buffer;
+            if (indexBufferId < buffers.length && (buffer = buffers[indexBufferId]) != null)
+                return buffer;
+            return acquireSharedBuffer(true, startPosition, indexBufferId);
+        }
+        if (indexCache != null)
+            return indexCache.acquire(indexBufferId, false);
         if (minimiseByteBuffers) {
             if (lastIndexId == indexBufferId) {
                 assert lastIndexBuffer != null;
@@ -162,23 +392,34 @@ public class IndexedChronicle extends AbstractChronicle {
     }
 
     private MappedByteBuffer createIndexBuffer(long startPosition, int indexBufferId) {
+        MappedByteBuffer mbb = mapIndexBuffer(startPosition, indexBufferId);
+        if (minimiseByteBuffers) {
+            lastIndexBuffer = mbb;
+            lastIndexId = indexBufferId;
+        } else {
+            indexBuffers.set(indexBufferId, mbb);
+        }
+        return mbb;
+    }
+
+    @NotNull
+    private MappedByteBuffer mapIndexBuffer(long startPosition, int indexBufferId) {
         try {
-//            long start = System.nanoTime();
-            MappedByteBuffer mbb;
-            try {
-                mbb = indexChannel.map(FileChannel.MapMode.READ_WRITE, startPosition & ~indexLowMask, 1 << indexBitSize);
-            } catch (OutOfMemoryError e) {
-                System.gc();
-                mbb = indexChannel.map(FileChannel.MapMode.READ_WRITE, startPosition & ~indexLowMask, 1 << indexBitSize);
+            if (sharedMappings)
+                return acquireSharedMapping(indexFile, sharedIndexMappings, startPosition & ~indexLowMask, 1 << indexBitSize, byteOrder);
+            MappedByteBuffer mbb = indexMapper == null ? null : indexMapper.take(indexBufferId);
+            if (mbb == null) {
+                try {
+                    mbb = indexChannel.map(FileChannel.MapMode.READ_WRITE, startPosition & ~indexLowMask, 1 << indexBitSize);
+                } catch (OutOfMemoryError e) {
+                    System.gc();
+                    mbb = indexChannel.map(FileChannel.MapMode.READ_WRITE, startPosition & ~indexLowMask, 1 << indexBitSize);
+                }
+                mbb.order(byteOrder);
             }
-//            long time = System.nanoTime() - start;
-//            System.out.println(Thread.currentThread().getName()+": map "+time);
-            mbb.order(byteOrder);
-            if (minimiseByteBuffers) {
-                lastIndexBuffer = mbb;
-                lastIndexId = indexBufferId;
-            } else {
-                indexBuffers.set(indexBufferId, mbb);
+            if (indexMapper != null) {
+                long nextStart = (long) (indexBufferId + 1) << indexBitSize;
+                indexMapper.prepare(indexBufferId + 1, nextStart >= indexOffset(size));
             }
             return mbb;
         } catch (IOException e) {
@@ -194,39 +435,159 @@ public class IndexedChronicle extends AbstractChronicle {
         return 3;
     }
 
+    /**
+     * @return the offset in the index file of an entry.
+     */
+    protected long indexOffset(long indexId) {
+        return indexId << indexBitSize();
+    }
+
+    /**
+     * @return how many entries an index file of this size can hold.
+     */
+    protected long indexEntries(long indexFileSize) {
+        return indexFileSize >>> indexBitSize();
+    }
+
     @Override
     public long sizeInBytes() {
         try {
-            return indexChannel.size() + dataChannel.size();
+            return indexChannel.size() + (dataChannel == null ? compressedData.fileSize() : dataChannel.size());
         } catch (IOException ignored) {
             return -1;
         }
     }
 
+    /**
+     * @param useUnsafe access the data directly, swapping the bytes of each field if the byte order isn't native.
+     */
     public void useUnsafe(boolean useUnsafe) {
-        this.useUnsafe = useUnsafe && byteOrder == ByteOrder.nativeOrder();
+        this.useUnsafe = useUnsafe;
     }
 
     public boolean useUnsafe() {
         return useUnsafe;
     }
 
+    /**
+     * Map, and touch, the next index and data segments in a background thread so appenders and readers crossing a
+     * segment boundary don't block on the map or the page faults which follow.
+     *
+     * @param backgroundMapping whether to use a background thread.
+     */
+    public void backgroundMapping(boolean backgroundMapping) {
+        if (backgroundMapping == (mapperService != null) || compressedData != null)
+            return;
+        if (sharedMappings)
+            throw new IllegalStateException("Background mapping can't be used with shared mappings");
+        if (backgroundMapping) {
+            final String threadName = name() + "-mapper";
+            mapperService = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @NotNull
+                @Override
+                public Thread newThread(@NotNull Runnable r) {
+                    Thread t = new Thread(r, threadName);
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            indexMapper = new SegmentMapper(indexChannel, indexBitSize, 0, byteOrder, mapperService);
+            dataMapper = new SegmentMapper(dataChannel, dataBitSize, dataOverlap, dataByteOrder, mapperService);
+        } else {
+            stopBackgroundMapping();
+        }
+    }
+
+    public boolean backgroundMapping() {
+        return mapperService != null;
+    }
+
+    /**
+     * Map this many bytes of the next data segment after each one, so an excerpt can span a segment boundary rather than
+     * leave the end of the segment as padding.  Excerpts up to the overlap in size can start anywhere, so large excerpts
+     * don't need large segments.
+     * <p/>
+     * The largest overlap used is kept in the header so this chronicle is always opened with enough.  This must be set
+     * before any data is mapped, and the overlap can't be reduced.
+     *
+     * @param dataOverlap in bytes.
+     */
+    public void dataOverlap(int dataOverlap) {
+        if (dataOverlap < 0 || (1L << dataBitSize) + dataOverlap > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Overlap " + dataOverlap + " must be positive and fit in a mapping with the data segment");
+        if (dataOverlap <= this.dataOverlap)
+            return;
+        if (lastDataBuffer != null || sharedDataBuffers.length > 0 || dataBuffersMapped() || (dataCache != null && dataCache.mapped() > 0))
+            throw new IllegalStateException("The overlap must be set before any data is mapped");
+        this.dataOverlap = dataOverlap;
+        header.putInt(HEADER_OVERLAP_OFFSET, dataOverlap);
+        if (compressedData != null)
+            return;
+        if (dataMapper != null) {
+            dataMapper.discard();
+            dataMapper = new SegmentMapper(dataChannel, dataBitSize, dataOverlap, dataByteOrder, mapperService);
+        }
+    }
+
+    @Override
+    public int dataOverlap() {
+        return dataOverlap;
+    }
+
+    private boolean dataBuffersMapped() {
+        for (MappedByteBuffer buffer : dataBuffers)
+            if (buffer != null)
+                return true;
+        return false;
+    }
+
+    private void stopBackgroundMapping() {
+        if (mapperService == null)
+            return;
+        assert indexMapper != null && dataMapper != null;
+        indexMapper.discard();
+        dataMapper.discard();
+        mapperService.shutdown();
+        mapperService = null;
+        indexMapper = dataMapper = null;
+    }
+
     public ByteOrder byteOrder() {
         return byteOrder;
     }
 
+    /**
+     * @return the byte order of the data, which is native for a chronicle written before it was recorded.
+     */
+    public ByteOrder dataByteOrder() {
+        return dataByteOrder;
+    }
+
     @NotNull
     @Override
     public Excerpt createExcerpt() {
-        return useUnsafe ? new UnsafeExcerpt(this) : new ByteBufferExcerpt(this);
+        if (!useUnsafe)
+            return new ByteBufferExcerpt(this);
+        return dataByteOrder == ByteOrder.nativeOrder() ? new UnsafeExcerpt(this) : new SwappedUnsafeExcerpt(this);
     }
 
     @Nullable
     @Override
-    public MappedByteBuffer acquireDataBuffer(long startPosition) {
+    public ByteBuffer acquireDataBuffer(long startPosition) {
         if (startPosition >= MAX_VIRTUAL_ADDRESS)
             return throwByteOrderIsIncorrect();
         int dataBufferId = (int) (startPosition >> dataBitSize);
+        if (compressedData != null)
+            return compressedData.acquire(dataBufferId, dataBitSize, dataOverlap);
+        if (multiWriter) {
+            MappedByteBuffer[] buffers = sharedDataBuffers;
+            MappedByteBuffer buffer;
+            if (dataBufferId < buffers.length && (buffer = buffers[dataBufferId]) != null)
+                return buffer;
+            return acquireSharedBuffer(false, startPosition, dataBufferId);
+        }
+        if (dataCache != null)
+            return dataCache.acquire(dataBufferId, true);
         if (minimiseByteBuffers) {
             if (lastDataId == dataBufferId) {
                 return lastDataBuffer;
@@ -241,21 +602,52 @@ public class IndexedChronicle extends AbstractChronicle {
         return createDataBuffer(startPosition, dataBufferId);
     }
 
+    /**
+     * @return the data segments mapped by the mapping cache, or decompressed, or -1 if there isn't either.
+     */
+    int mappedDataSegments() {
+        if (compressedData != null)
+            return compressedData.decompressed();
+        return dataCache == null ? -1 : dataCache.mapped();
+    }
+
+    @Override
+    public void releaseDataBuffer(@NotNull ByteBuffer buffer) {
+        if (compressedData != null)
+            compressedData.release(buffer);
+        else if (dataCache != null)
+            dataCache.release(buffer);
+    }
+
     private MappedByteBuffer createDataBuffer(long startPosition, int dataBufferId) {
+        MappedByteBuffer mbb = mapDataBuffer(startPosition, dataBufferId);
+        if (minimiseByteBuffers) {
+            lastDataBuffer = mbb;
+            lastDataId = dataBufferId;
+        } else {
+            dataBuffers.set(dataBufferId, mbb);
+        }
+        return mbb;
+    }
+
+    @NotNull
+    private MappedByteBuffer mapDataBuffer(long startPosition, int dataBufferId) {
         try {
-            MappedByteBuffer mbb;
-            try {
-                mbb = dataChannel.map(FileChannel.MapMode.READ_WRITE, startPosition & ~dataLowMask, 1 << dataBitSize);
-            } catch (OutOfMemoryError e) {
-                System.gc();
-                mbb = dataChannel.map(FileChannel.MapMode.READ_WRITE, startPosition & ~dataLowMask, 1 << dataBitSize);
+            if (sharedMappings)
+                return acquireSharedMapping(dataFile, sharedDataMappings, startPosition & ~dataLowMask, (1 << dataBitSize) + dataOverlap, dataByteOrder);
+            MappedByteBuffer mbb = dataMapper == null ? null : dataMapper.take(dataBufferId);
+            if (mbb == null) {
+                try {
+                    mbb = dataChannel.map(FileChannel.MapMode.READ_WRITE, startPosition & ~dataLowMask, (1 << dataBitSize) + dataOverlap);
+                } catch (OutOfMemoryError e) {
+                    System.gc();
+                    mbb = dataChannel.map(FileChannel.MapMode.READ_WRITE, startPosition & ~dataLowMask, (1 << dataBitSize) + dataOverlap);
+                }
+                mbb.order(dataByteOrder);
             }
-            mbb.order(ByteOrder.nativeOrder());
-            if (minimiseByteBuffers) {
-                lastDataBuffer = mbb;
-                lastDataId = dataBufferId;
-            } else {
-                dataBuffers.set(dataBufferId, mbb);
+            if (dataMapper != null) {
+                long nextStart = (long) (dataBufferId + 1) << dataBitSize;
+                dataMapper.prepare(dataBufferId + 1, nextStart >= getIndexData(size));
             }
             return mbb;
         } catch (IOException e) {
@@ -267,13 +659,387 @@ public class IndexedChronicle extends AbstractChronicle {
         while (dataBuffers.size() <= dataBufferId) dataBuffers.add(null);
     }
 
+    @NotNull
+    private synchronized MappedByteBuffer acquireSharedBuffer(boolean index, long startPosition, int bufferId) {
+        MappedByteBuffer[] buffers = index ? sharedIndexBuffers : sharedDataBuffers;
+        if (bufferId < buffers.length && buffers[bufferId] != null)
+            return buffers[bufferId];
+        MappedByteBuffer mbb = index ? mapIndexBuffer(startPosition, bufferId) : mapDataBuffer(startPosition, bufferId);
+        buffers = Arrays.copyOf(buffers, Math.max(buffers.length, bufferId + 1));
+        buffers[bufferId] = mbb;
+        if (index)
+            sharedIndexBuffers = buffers;
+        else
+            sharedDataBuffers = buffers;
+        return mbb;
+    }
+
+    /**
+     * Allow many threads, or processes, to append at the same time.  Each appender reserves the next index entry with
+     * a CAS in the mapped index, so there is no lock, and commits it in finish().  Readers don't see an excerpt until
+     * it is committed, but can read the committed excerpts after it.
+     * <p/>
+     * As the next excerpt can start before this one is finished, an excerpt keeps all the capacity it started with.
+     * This must be set before any excerpts are created and requires the native byte order.
+     *
+     * @param multiWriter whether many threads or processes will append.
+     */
+    public synchronized void multiWriter(boolean multiWriter) {
+        if (multiWriter == this.multiWriter)
+            return;
+        if (multiWriter) {
+            if (batch)
+                throw new IllegalStateException("A batch has been started");
+            if (timeIndex != null && timeIndex.sampling())
+                throw new IllegalStateException("A time index is not supported with many writers");
+            if (byteOrder != ByteOrder.nativeOrder())
+                throw new IllegalStateException("A multi writer chronicle must use the native byte order");
+            if (dataCache != null)
+                throw new IllegalStateException("A mapping cache is not supported with many writers");
+            sharedIndexBuffers = toArray(indexBuffers, lastIndexId, lastIndexBuffer);
+            sharedDataBuffers = toArray(dataBuffers, lastDataId, lastDataBuffer);
+            indexBuffers.clear();
+            dataBuffers.clear();
+            lastIndexId = lastDataId = -1;
+            lastIndexBuffer = lastDataBuffer = null;
+        } else {
+            moveSharedBuffers();
+        }
+        this.multiWriter = multiWriter;
+    }
+
+    public boolean multiWriter() {
+        return multiWriter;
+    }
+
+    /**
+     * Share the mappings of the files with every other chronicle in this JVM which has them open and shares its
+     * mappings, e.g. the writer and readers of a chronicle, so opening another reader doesn't map the files again.  Each
+     * segment mapped stays mapped until close(), and is unmapped when the last chronicle sharing it is closed.  This
+     * can't be turned off again, nor used with a mapping cache or background mapping.
+     *
+     * @param sharedMappings whether to share mappings.
+     */
+    public synchronized void sharedMappings(boolean sharedMappings) {
+        if (sharedMappings == this.sharedMappings)
+            return;
+        if (!sharedMappings)
+            throw new IllegalStateException("Shared mappings can't be turned off");
+        if (indexCache != null || mapperService != null)
+            throw new IllegalStateException("Shared mappings can't be used with a mapping cache or background mapping");
+        if (lastDataBuffer != null || sharedDataBuffers.length > 0 || dataBuffersMapped())
+            throw new IllegalStateException("Shared mappings must be set before any data is mapped");
+        // the index mapped on start up is left for the GC to unmap.
+        releaseBefore(indexBuffers, indexBuffers.size());
+        sharedIndexBuffers = releaseBefore(sharedIndexBuffers, sharedIndexBuffers.length);
+        lastIndexId = -1;
+        lastIndexBuffer = null;
+        this.sharedMappings = true;
+    }
+
+    public boolean sharedMappings() {
+        return sharedMappings;
+    }
+
+    @NotNull
+    private synchronized MappedByteBuffer acquireSharedMapping(@NotNull File file, @NotNull Map<Long, MappedByteBuffer> mappings,
+                                                               long offset, int size, ByteOrder byteOrder) throws IOException {
+        MappedByteBuffer mbb = mappings.get(offset);
+        if (mbb == null) {
+            mbb = MappedFileRegistry.acquire(file, offset, size, byteOrder);
+            mappings.put(offset, mbb);
+        }
+        return mbb;
+    }
+
+    private void releaseSharedMappings() {
+        for (Map.Entry<Long, MappedByteBuffer> entry : sharedIndexMappings.entrySet())
+            MappedFileRegistry.release(indexFile, entry.getKey(), entry.getValue().capacity());
+        for (Map.Entry<Long, MappedByteBuffer> entry : sharedDataMappings.entrySet())
+            MappedFileRegistry.release(dataFile, entry.getKey(), entry.getValue().capacity());
+        sharedIndexMappings.clear();
+        sharedDataMappings.clear();
+    }
+
+    /**
+     * Keep at most this many of the most recently used index and data segments mapped, rather than every segment used,
+     * or only the last one with minimiseByteBuffers.  A data segment an excerpt is on stays mapped until every excerpt
+     * has moved off it, so a segment is only unmapped when nothing uses it.  This doesn't support many writers.
+     *
+     * @param segments to keep mapped of each file, at least 2.
+     */
+    public synchronized void mappingCache(int segments) {
+        if (sharedMappings)
+            throw new IllegalStateException("A mapping cache can't be used with shared mappings");
+        if (multiWriter)
+            throw new IllegalStateException("A mapping cache is not supported with many writers");
+        if (indexCache != null)
+            throw new IllegalStateException("The mapping cache has been set already");
+        indexCache = new MappedSegmentCache(segments, false) {
+            @NotNull
+            @Override
+            protected MappedByteBuffer map(int id) {
+                return mapIndexBuffer((long) id << indexBitSize, id);
+            }
+        };
+        dataCache = new MappedSegmentCache(segments, true) {
+            @NotNull
+            @Override
+            protected MappedByteBuffer map(int id) {
+                return mapDataBuffer((long) id << dataBitSize, id);
+            }
+        };
+        // anything mapped so far is left for the GC to unmap as an excerpt could still be using it.
+        releaseBefore(indexBuffers, indexBuffers.size());
+        releaseBefore(dataBuffers, dataBuffers.size());
+        lastIndexId = lastDataId = -1;
+        lastIndexBuffer = lastDataBuffer = null;
+    }
+
+    /**
+     * Make excerpts durable in a background thread rather than forcing every one in synchronousMode.  Excerpts are
+     * forced at least every interval, or sooner once batchSize excerpts are waiting or a writer calls awaitDurable.
+     *
+     * @param interval  the longest an excerpt waits to be forced.
+     * @param unit      of the interval.
+     * @param batchSize the number of excerpts to force at once without waiting for the interval.
+     */
+    public synchronized void groupCommit(long interval, @NotNull TimeUnit unit, int batchSize) {
+        checkWritable();
+        if (synchronousMode)
+            throw new IllegalStateException("Group commit replaces synchronousMode, use one or the other");
+        stopGroupCommit();
+        committedDataEnd = getIndexData(size) & ~RESERVED;
+        flusher = new GroupCommitFlusher(this, indexChannel, dataChannel, header, unit.toNanos(interval), batchSize);
+    }
+
+    /**
+     * Sample the time and index of excerpts as they are finished in a .time file, so readers can seek to a time with
+     * Excerpt.seekToTime().  The next excerpt is always sampled.  This doesn't support many writers.
+     *
+     * @param everyExcerpts sample every this many excerpts, or 0 to only sample by time.
+     * @param every         sample when this much time has passed since the last sample, or 0 to only sample by count.
+     * @param unit          of every.
+     */
+    public synchronized void timeIndex(int everyExcerpts, long every, @NotNull TimeUnit unit) {
+        if (multiWriter)
+            throw new IllegalStateException("A time index is not supported with many writers");
+        acquireTimeIndex().sampling(everyExcerpts, unit.toNanos(every), size);
+    }
+
+    @NotNull
+    private synchronized TimeIndex acquireTimeIndex() {
+        TimeIndex timeIndex = this.timeIndex;
+        if (timeIndex == null) {
+            try {
+                this.timeIndex = timeIndex = new TimeIndex(timeIndexPath, byteOrder);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return timeIndex;
+    }
+
+    @Override
+    public long indexForTime(long timeNS) {
+        TimeIndex timeIndex = this.timeIndex;
+        if (timeIndex == null) {
+            if (!TimeIndex.exists(timeIndexPath))
+                return -1;
+            timeIndex = acquireTimeIndex();
+        }
+        return timeIndex.indexFor(timeNS);
+    }
+
+    @Override
+    public long startIndex() {
+        return startIndex;
+    }
+
+    /**
+     * Drop the excerpts before this index.  Readers can't move before the new start and the index and data segments
+     * wholly before it are released from the mappings, so they are unmapped once no excerpt refers to them and leave
+     * the page cache.  The space in the files is not freed as Java can't punch holes in a file, a CycledIndexedChronicle
+     * can delete whole cycles to free disk space.
+     * <p/>
+     * This should be called by the appending thread, or while nothing is appending.
+     *
+     * @param index the first excerpt to keep.
+     * @return the new start index.
+     */
+    public synchronized long truncateBefore(long index) {
+        index = Math.min(index, size);
+        if (index <= startIndex)
+            return startIndex;
+        startIndex = index;
+        header.putLong(HEADER_START_OFFSET, index);
+        int indexBufferId = (int) (indexOffset(index) >> indexBitSize);
+        int dataBufferId = (int) ((getIndexData(index) & ~RESERVED) >> dataBitSize);
+        releaseBefore(indexBuffers, indexBufferId);
+        releaseBefore(dataBuffers, dataBufferId);
+        if (lastIndexId < indexBufferId) {
+            lastIndexId = -1;
+            lastIndexBuffer = null;
+        }
+        if (lastDataId < dataBufferId) {
+            lastDataId = -1;
+            lastDataBuffer = null;
+        }
+        sharedIndexBuffers = releaseBefore(sharedIndexBuffers, indexBufferId);
+        sharedDataBuffers = releaseBefore(sharedDataBuffers, dataBufferId);
+        if (indexCache != null) {
+            assert dataCache != null;
+            indexCache.evict(indexBufferId);
+            dataCache.evict(dataBufferId);
+        }
+        logger.info(name() + " truncated before " + index);
+        return index;
+    }
+
+    /**
+     * Keep at most this many of the latest excerpts.
+     *
+     * @return the new start index.
+     */
+    public long retainExcerpts(long excerpts) {
+        return truncateBefore(size - excerpts);
+    }
+
+    /**
+     * Keep the latest excerpts which fit in this many bytes of data.
+     *
+     * @return the new start index.
+     */
+    public synchronized long retainBytes(long bytes) {
+        long from = (getIndexData(size) & ~RESERVED) - bytes;
+        // the first excerpt which starts at or after from.
+        long lo = startIndex, hi = size;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if ((getIndexData(mid) & ~RESERVED) < from)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return truncateBefore(lo);
+    }
+
+    /**
+     * Drop the excerpts written before this time.  This uses the time index so it keeps from the last sample at or
+     * before the time, and does nothing if there is no time index.
+     *
+     * @param timeNS since the epoch.
+     * @return the new start index.
+     */
+    public long retainSince(long timeNS) {
+        long index = indexForTime(timeNS);
+        return index < 0 ? startIndex : truncateBefore(index);
+    }
+
+    private static void releaseBefore(@NotNull List<MappedByteBuffer> buffers, int bufferId) {
+        // an excerpt may still be reading one, so they are left for the GC to unmap.
+        for (int i = 0, end = Math.min(bufferId, buffers.size()); i < end; i++)
+            buffers.set(i, null);
+    }
+
+    @NotNull
+    private static MappedByteBuffer[] releaseBefore(@NotNull MappedByteBuffer[] buffers, int bufferId) {
+        if (buffers.length == 0)
+            return buffers;
+        MappedByteBuffer[] copy = buffers.clone();
+        Arrays.fill(copy, 0, Math.min(bufferId, copy.length), null);
+        return copy;
+    }
+
+    private void stopGroupCommit() {
+        if (flusher == null)
+            return;
+        flusher.close();
+        flusher = null;
+    }
+
+    /**
+     * @return the index of the last excerpt known to be on disk, or -1 if none are or it is not known.
+     */
+    public long durableIndex() {
+        GroupCommitFlusher flusher = this.flusher;
+        if (flusher != null)
+            return flusher.durableSize() - 1;
+        return synchronousMode ? size - 1 : -1;
+    }
+
+    /**
+     * Wait for an excerpt to be on disk, in groupCommit mode.
+     *
+     * @param index   of the excerpt.
+     * @param timeout the maximum time to wait.
+     * @param unit    of the timeout.
+     * @return true if the excerpt is durable, false if it timed out.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean awaitDurable(long index, long timeout, @NotNull TimeUnit unit) throws InterruptedException {
+        GroupCommitFlusher flusher = this.flusher;
+        if (flusher != null)
+            return flusher.awaitDurable(index, timeout, unit);
+        if (synchronousMode)
+            return index < size;
+        throw new IllegalStateException("Neither groupCommit nor synchronousMode is used");
+    }
+
+    /**
+     * @return the end of the data of the excerpts committed.
+     */
+    long committedDataEnd() {
+        // the buffers can be read from another thread with many writers.
+        return multiWriter ? getIndexData(size) & ~RESERVED : committedDataEnd;
+    }
+
+    @NotNull
+    private static MappedByteBuffer[] toArray(@NotNull List<MappedByteBuffer> buffers, int lastId, @Nullable MappedByteBuffer last) {
+        MappedByteBuffer[] array = buffers.toArray(new MappedByteBuffer[Math.max(buffers.size(), lastId + 1)]);
+        if (last != null)
+            array[lastId] = last;
+        return array;
+    }
+
+    private void moveSharedBuffers() {
+        for (MappedByteBuffer buffer : sharedIndexBuffers)
+            if (buffer != null)
+                indexBuffers.add(buffer);
+        for (MappedByteBuffer buffer : sharedDataBuffers)
+            if (buffer != null)
+                dataBuffers.add(buffer);
+        sharedIndexBuffers = sharedDataBuffers = NO_BUFFERS;
+    }
+
+    /**
+     * @return whether the data has been compressed, in which case this chronicle can only be read.
+     */
+    public boolean compressed() {
+        return compressedData != null;
+    }
+
+    private void checkWritable() {
+        if (compressedData != null)
+            throw new IllegalStateException("The data of " + name() + " has been compressed and can only be read");
+    }
+
     @Override
     public int positionInBuffer(long startPosition) {
         return (int) (startPosition & dataLowMask);
     }
 
     @Override
-    public long startExcerpt(AbstractExcerpt appender, int capacity) {
+    public long startExcerpt(@NotNull AbstractExcerpt appender, int capacity) {
+        checkWritable();
+        if (capacity == 0) {
+            // the end of an open ended excerpt isn't known until it is finished, so it can't be reserved.
+            if (multiWriter)
+                throw new IllegalStateException("An open ended excerpt is not supported with many writers");
+            capacity = AbstractExcerpt.MIN_SIZE;
+        }
+        if (multiWriter)
+            return reserveExcerpt(appender, capacity);
         boolean debug = false;
         assert debug = true;
         if (debug) {
@@ -282,11 +1048,12 @@ public class IndexedChronicle extends AbstractChronicle {
             lastAppender = appender;
             appendingThread = Thread.currentThread();
         }
-        final long size = this.size;
-        long startPosition = getIndexData(size);
+        final long size = this.size + batchCount;
+        appender.index = size;
+        long startPosition = batchCount > 0 ? batchEnds[batchCount - 1] : getIndexData(size);
         assert size == 0 || startPosition != 0 : "size: " + size + " startPosition: " + startPosition + " is the chronicle corrupted?";
-        // does it overlap a ByteBuffer barrier.
-        if ((startPosition & ~dataLowMask) != ((startPosition + capacity) & ~dataLowMask)) {
+        // does it run past the segment and its overlap.
+        if (!fits(startPosition, capacity)) {
             // resize the previous entry.
             startPosition = (startPosition + dataLowMask) & ~dataLowMask;
             setIndexData(size, startPosition);
@@ -294,6 +1061,143 @@ public class IndexedChronicle extends AbstractChronicle {
         return startPosition;
     }
 
+    /**
+     * @return whether an excerpt starting here fits in the mapping of its data segment, including the overlap.
+     */
+    private boolean fits(long startPosition, int capacity) {
+        if (capacity > dataLowMask + dataOverlap)
+            throw new IllegalArgumentException("Capacity " + capacity + " is larger than a data segment of " + (dataLowMask + 1) + " with an overlap of " + dataOverlap);
+        return (startPosition & dataLowMask) + capacity <= dataLowMask + dataOverlap;
+    }
+
+    /**
+     * Reserve the first free index entry by a CAS from 0 to its end position with the RESERVED bit set. The excerpt
+     * starts at the end of the previous entry, whether that is committed or not.
+     */
+    private long reserveExcerpt(@NotNull AbstractExcerpt appender, int capacity) {
+        long tailAddress = ((DirectBuffer) header).address() + HEADER_TAIL_OFFSET;
+        long index = Math.max(size, UNSAFE.getLongVolatile(null, tailAddress));
+        for (; ; index++) {
+            long endAddress = indexAddress(index + 1);
+            if (UNSAFE.getLongVolatile(null, endAddress) != 0)
+                continue;
+            long startAddress = indexAddress(index);
+            long startPosition = UNSAFE.getLongVolatile(null, startAddress) & ~RESERVED;
+            assert index == 0 || startPosition != 0 : "index: " + index + " is the chronicle corrupted?";
+            // does it run past the segment and its overlap.
+            boolean pad = !fits(startPosition, capacity);
+            if (pad)
+                startPosition = (startPosition + dataLowMask) & ~dataLowMask;
+            if (!UNSAFE.compareAndSwapLong(null, endAddress, 0L, (startPosition + capacity) | RESERVED))
+                continue;
+            if (pad) {
+                // resize the previous entry, which may still be reserved.
+                long prev;
+                do {
+                    prev = UNSAFE.getLongVolatile(null, startAddress);
+                } while (!UNSAFE.compareAndSwapLong(null, startAddress, prev, startPosition | (prev & RESERVED)));
+            }
+            long tail;
+            while ((tail = UNSAFE.getLongVolatile(null, tailAddress)) <= index
+                    && !UNSAFE.compareAndSwapLong(null, tailAddress, tail, index + 1)) {
+                // retry
+            }
+            appender.index = index;
+            return startPosition;
+        }
+    }
+
+    private long indexAddress(long indexId) {
+        long indexOffset = indexOffset(indexId);
+        MappedByteBuffer indexBuffer = acquireIndexBuffer(indexOffset);
+        return ((DirectBuffer) indexBuffer).address() + (indexOffset & indexLowMask);
+    }
+
+    @Override
+    public long finishExcerpt(long index, long endPosition) {
+        if (batch) {
+            if (index != size + batchCount)
+                throw new ConcurrentModificationException("index: " + index + ", expected: " + (size + batchCount) + ", Have you updated the chronicle without thread safety?");
+            if (batchCount == batchEnds.length)
+                batchEnds = Arrays.copyOf(batchEnds, batchCount * 2);
+            batchEnds[batchCount++] = endPosition;
+            appendingThread = null;
+            return endPosition;
+        }
+        if (!multiWriter) {
+            setIndexData(index + 1, endPosition);
+            committedDataEnd = endPosition;
+            incrementSize(index + 1);
+            if (flusher != null)
+                flusher.excerptFinished(size);
+            TimeIndex timeIndex = this.timeIndex;
+            if (timeIndex != null && timeIndex.sampling())
+                timeIndex.excerptFinished(index);
+            return endPosition;
+        }
+        // the reserved end can't be reduced as the next excerpt may start there already.
+        long endAddress = indexAddress(index + 1);
+        long end;
+        do {
+            end = UNSAFE.getLongVolatile(null, endAddress);
+        } while (!UNSAFE.compareAndSwapLong(null, endAddress, end, end & ~RESERVED));
+        end &= ~RESERVED;
+        assert endPosition <= end : "endPosition: " + endPosition + " reserved: " + end;
+        if (synchronousMode())
+            acquireIndexBuffer(indexOffset(index + 1)).force();
+
+        // size is the number of excerpts committed without a gap.
+        long size;
+        while (UNSAFE.getLongVolatile(null, indexAddress((size = this.size) + 1)) > 0) {
+            if (SIZE_UPDATER.compareAndSet(this, size, size + 1))
+                header.putLong(HEADER_SIZE_OFFSET, size + 1);
+        }
+        if (flusher != null)
+            flusher.excerptFinished(this.size);
+        return end;
+    }
+
+    @Override
+    public void startBatch() {
+        if (multiWriter)
+            throw new IllegalStateException("A batch is not supported with many writers");
+        if (batch)
+            throw new IllegalStateException("A batch has already been started");
+        batch = true;
+    }
+
+    /**
+     * Write the index entries held back with the first written last, so a reader can't get past it until the whole
+     * batch is visible.  The base of an index block is written first, as its deltas are relative to it, so if the
+     * first is a base only the rest of the batch becomes visible at once.
+     */
+    @Override
+    public int commitBatch() {
+        if (!batch)
+            throw new IllegalStateException("No batch has been started");
+        int count = batchCount;
+        batch = false;
+        batchCount = 0;
+        if (count == 0)
+            return 0;
+        for (int i = 0; i < count; i++)
+            if (indexBase(size + 1 + i))
+                setIndexData(size + 1 + i, batchEnds[i]);
+        for (int i = count - 1; i >= 0; i--)
+            if (!indexBase(size + 1 + i))
+                setIndexData(size + 1 + i, batchEnds[i]);
+        TimeIndex timeIndex = this.timeIndex;
+        if (timeIndex != null && timeIndex.sampling())
+            for (int i = 0; i < count; i++)
+                timeIndex.excerptFinished(size + i);
+        committedDataEnd = batchEnds[count - 1];
+        size += count;
+        header.putLong(HEADER_SIZE_OFFSET, size);
+        if (flusher != null)
+            flusher.excerptFinished(size);
+        return count;
+    }
+
     @Override
     public void incrementSize(long expected) {
         if (size + 1 != expected)
@@ -301,6 +1205,7 @@ public class IndexedChronicle extends AbstractChronicle {
         assert size == 0 || getIndexData(size) > 0 : "Failed to set the index at " + size + " was 0.";
 
         size++;
+        header.putLong(HEADER_SIZE_OFFSET, size);
         appendingThread = null;
     }
 
@@ -311,28 +1216,76 @@ public class IndexedChronicle extends AbstractChronicle {
      */
     public void clear() {
         size = 0;
+        batchCount = 0;
         setIndexData(1, 0);
+        header.putLong(HEADER_SIZE_OFFSET, 0);
+        header.putLong(HEADER_TAIL_OFFSET, 0);
+        startIndex = 0;
+        header.putLong(HEADER_START_OFFSET, 0);
     }
 
     @Override
     public void setIndexData(long indexId, long indexData) {
-        long indexOffset = indexId << indexBitSize();
+        if (heldBack(indexId, indexData))
+            return;
+        long indexOffset = indexOffset(indexId);
         MappedByteBuffer indexBuffer = acquireIndexBuffer(indexOffset);
-        indexBuffer.putLong((int) (indexOffset & indexLowMask), indexData);
+        // written last with release semantics, so the excerpt is visible only once its data is.
+        UNSAFE.putOrderedLong(null, ((DirectBuffer) indexBuffer).address() + (indexOffset & indexLowMask),
+                nativeOrder ? indexData : Long.reverseBytes(indexData));
         if (synchronousMode())
             indexBuffer.force();
     }
 
+    /**
+     * @return whether other index entries are stored relative to this one, so it must be written before them.
+     */
+    protected boolean indexBase(long indexId) {
+        return false;
+    }
+
+    /**
+     * An excerpt moved or padded in a batch changes an entry which is still held back.
+     *
+     * @return true if the entry is held back and has been updated.
+     */
+    protected boolean heldBack(long indexId, long indexData) {
+        if (indexId <= size || indexId > size + batchCount)
+            return false;
+        batchEnds[(int) (indexId - size - 1)] = indexData;
+        return true;
+    }
+
     @Override
     public boolean synchronousMode() {
         return synchronousMode;
     }
 
     public void close() {
+        stopGroupCommit();
+        stopBackgroundMapping();
+        moveSharedBuffers();
+        if (timeIndex != null)
+            timeIndex.close();
+        if (indexCache != null) {
+            assert dataCache != null;
+            indexCache.close();
+            dataCache.close();
+        }
         try {
             clearAll(indexChannel, indexBuffers);
         } finally {
-            clearAll(dataChannel, dataBuffers);
+            try {
+                if (dataChannel != null)
+                    clearAll(dataChannel, dataBuffers);
+                else
+                    compressedData.close();
+            } finally {
+                releaseSharedMappings();
+                header.force();
+                ((DirectBuffer) header).cleaner().clean();
+                OwnerLocks.release(ownerPath);
+            }
         }
     }
 
@@ -348,10 +1301,12 @@ public class IndexedChronicle extends AbstractChronicle {
                 channel.close();
             } catch (IOException ignored) {
             }
-            for (MappedByteBuffer buffer : buffers) {
-                if (buffer instanceof DirectBuffer)
-                    ((DirectBuffer) buffer).cleaner().clean();
-            }
+            // shared mappings are unmapped by the registry once no chronicle is using them.
+            if (!sharedMappings)
+                for (MappedByteBuffer buffer : buffers) {
+                    if (buffer instanceof DirectBuffer)
+                        ((DirectBuffer) buffer).cleaner().clean();
+                }
         }
         buffers.clear();
     }
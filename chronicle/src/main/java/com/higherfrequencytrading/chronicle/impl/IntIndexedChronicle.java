@@ -16,10 +16,14 @@
 
 package com.higherfrequencytrading.chronicle.impl;
 
+import sun.nio.ch.DirectBuffer;
+
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
+import static com.higherfrequencytrading.chronicle.impl.UnsafeExcerpt.UNSAFE;
+
 /**
  * Fast Chronicle with a compact index when you don't need more the 4 GB of data.
  *
@@ -42,9 +46,10 @@ public class IntIndexedChronicle extends IndexedChronicle {
 
     @Override
     public long getIndexData(long indexId) {
-        long indexOffset = indexId << indexBitSize();
+        long indexOffset = indexOffset(indexId);
         ByteBuffer indexBuffer = acquireIndexBuffer(indexOffset);
-        return indexBuffer.getInt((int) (indexOffset & indexLowMask)) & LONG_MASK;
+        int indexData = UNSAFE.getIntVolatile(null, ((DirectBuffer) indexBuffer).address() + (indexOffset & indexLowMask));
+        return (nativeOrder ? indexData : Integer.reverseBytes(indexData)) & LONG_MASK;
     }
 
     @Override
@@ -52,13 +57,23 @@ public class IntIndexedChronicle extends IndexedChronicle {
         return 2;
     }
 
+    @Override
+    public synchronized void multiWriter(boolean multiWriter) {
+        if (multiWriter)
+            throw new UnsupportedOperationException("Many writers needs 64-bit index entries, use IndexedChronicle");
+        super.multiWriter(false);
+    }
+
     @Override
     public void setIndexData(long indexId, long indexData) {
         if (indexData >= (1L << 32))
             throw new IllegalStateException("Size of Chronicle too large > 4 GB");
-        long indexOffset = indexId << indexBitSize();
+        if (heldBack(indexId, indexData))
+            return;
+        long indexOffset = indexOffset(indexId);
         ByteBuffer indexBuffer = acquireIndexBuffer(indexOffset);
         assert indexData <= LONG_MASK;
-        indexBuffer.putInt((int) (indexOffset & indexLowMask), (int) indexData);
+        UNSAFE.putOrderedInt(null, ((DirectBuffer) indexBuffer).address() + (indexOffset & indexLowMask),
+                nativeOrder ? (int) indexData : Integer.reverseBytes((int) indexData));
     }
 }
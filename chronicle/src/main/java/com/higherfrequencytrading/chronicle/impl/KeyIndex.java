@@ -0,0 +1,259 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.higherfrequencytrading.chronicle.impl;
+
+import org.jetbrains.annotations.NotNull;
+import sun.nio.ch.DirectBuffer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.logging.Logger;
+
+/**
+ * A persisted hash index from a 64-bit key hash to the index of the latest excerpt for that key, in a memory mapped
+ * basePath.keys file beside a chronicle.  It is an open addressing table with linear probing and is updated as
+ * each keyed excerpt is written, so it doesn't need to be rebuilt by reading the chronicle on restart.  indexedTo()
+ * is how far through the chronicle it is up to date, so only excerpts written after it need to be replayed.
+ * <p/>
+ * A slot is the hash and index + 1, so an index of zero marks an empty slot and any hash can be used.  Lookups don't
+ * create any objects.  Two keys with the same 64-bit hash share an entry, so a caller which can't rule this out should
+ * check the key of the excerpt found.  The table doubles in size when it is three quarters full, which needs a
+ * new file, so only one process should have it open at a time.
+ *
+ * @author peter.lawrey
+ */
+public class KeyIndex {
+    static final int HEADER_SIZE = 64;
+    static final int HEADER_MAGIC = 0x43484b31; // "CHK1"
+    static final int HEADER_MAGIC_OFFSET = 0;
+    static final int HEADER_CAPACITY_BITS_OFFSET = 4;
+    static final int HEADER_COUNT_OFFSET = 8;
+    static final int HEADER_INDEXED_TO_OFFSET = 16;
+    static final int SLOT_SIZE = 16;
+    static final int MAX_CAPACITY_BITS = 26; // a single mapping of 1 GB.
+    private static final Logger logger = Logger.getLogger(KeyIndex.class.getName());
+    private final String path;
+    private final ByteOrder byteOrder;
+    @NotNull
+    private MappedByteBuffer buffer;
+    private int capacityBits;
+    private int mask;
+    private long count;
+    private long indexedTo;
+
+    public KeyIndex(String basePath) throws IOException {
+        this(basePath, 16, ByteOrder.nativeOrder());
+    }
+
+    /**
+     * @param basePath     of the chronicle indexed.
+     * @param capacityBits the initial number of slots as a power of 2, if the file doesn't exist already.
+     * @param byteOrder    of the file.
+     * @throws IOException if the file could not be mapped.
+     */
+    public KeyIndex(String basePath, int capacityBits, ByteOrder byteOrder) throws IOException {
+        if (capacityBits < 4 || capacityBits > MAX_CAPACITY_BITS)
+            throw new IllegalArgumentException("capacityBits must be between 4 and " + MAX_CAPACITY_BITS);
+        this.path = basePath + ".keys";
+        this.byteOrder = byteOrder;
+
+        File file = new File(path);
+        if (file.length() >= HEADER_SIZE) {
+            MappedByteBuffer header = map(file, HEADER_SIZE);
+            boolean valid = header.getInt(HEADER_MAGIC_OFFSET) == HEADER_MAGIC;
+            this.capacityBits = header.getInt(HEADER_CAPACITY_BITS_OFFSET);
+            ((DirectBuffer) header).cleaner().clean();
+            if (!valid)
+                throw new IOException("Not a key index " + path);
+            buffer = map(file, HEADER_SIZE + ((long) SLOT_SIZE << this.capacityBits));
+            count = buffer.getLong(HEADER_COUNT_OFFSET);
+            indexedTo = buffer.getLong(HEADER_INDEXED_TO_OFFSET);
+            logger.info(path + ", keys=" + count + ", indexedTo=" + indexedTo);
+        } else {
+            this.capacityBits = capacityBits;
+            buffer = map(file, HEADER_SIZE + ((long) SLOT_SIZE << capacityBits));
+            writeHeader(buffer);
+        }
+        mask = (1 << this.capacityBits) - 1;
+    }
+
+    /**
+     * @param key to hash
+     * @return a 64-bit hash of the characters of the key.
+     */
+    public static long hashOf(@NotNull CharSequence key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0, len = key.length(); i < len; i++)
+            h = (h ^ key.charAt(i)) * 0x100000001b3L;
+        return h;
+    }
+
+    // spread the bits of a hash which might only vary in its low bits, such as a counter.
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Record the excerpt as the latest for this key.
+     *
+     * @param hash  of the key.
+     * @param index of the excerpt.
+     */
+    public synchronized void put(long hash, long index) {
+        if (index < 0)
+            throw new IllegalArgumentException("index must be >= 0");
+        int slot = slotFor(hash);
+        int pos = HEADER_SIZE + slot * SLOT_SIZE;
+        if (buffer.getLong(pos + 8) == 0) {
+            if ((count + 1) << 2 > 3L << capacityBits) {
+                grow();
+                slot = slotFor(hash);
+                pos = HEADER_SIZE + slot * SLOT_SIZE;
+            }
+            buffer.putLong(pos, hash);
+            count++;
+            buffer.putLong(HEADER_COUNT_OFFSET, count);
+        }
+        // the index is written last as it marks the slot as used.
+        buffer.putLong(pos + 8, index + 1);
+        if (index >= indexedTo) {
+            indexedTo = index + 1;
+            buffer.putLong(HEADER_INDEXED_TO_OFFSET, indexedTo);
+        }
+    }
+
+    /**
+     * @param hash of the key.
+     * @return the index of the latest excerpt for this key, or -1 if there isn't one.
+     */
+    public synchronized long get(long hash) {
+        return buffer.getLong(HEADER_SIZE + slotFor(hash) * SLOT_SIZE + 8) - 1;
+    }
+
+    /**
+     * @return the slot with this hash, or the empty slot where it would go.
+     */
+    private int slotFor(long hash) {
+        for (int slot = (int) mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int pos = HEADER_SIZE + slot * SLOT_SIZE;
+            if (buffer.getLong(pos + 8) == 0 || buffer.getLong(pos) == hash)
+                return slot;
+        }
+    }
+
+    /**
+     * @return the number of keys.
+     */
+    public synchronized long size() {
+        return count;
+    }
+
+    /**
+     * @return the index after the last excerpt put, i.e. the first excerpt which might need to be replayed on restart.
+     */
+    public synchronized long indexedTo() {
+        return indexedTo;
+    }
+
+    /**
+     * Note excerpts up to this index have been seen, even if none of them had a key.
+     *
+     * @param indexedTo the index after the last excerpt seen.
+     */
+    public synchronized void indexedTo(long indexedTo) {
+        if (indexedTo <= this.indexedTo)
+            return;
+        this.indexedTo = indexedTo;
+        buffer.putLong(HEADER_INDEXED_TO_OFFSET, indexedTo);
+    }
+
+    private void grow() {
+        if (capacityBits >= MAX_CAPACITY_BITS)
+            throw new IllegalStateException("Key index " + path + " is full with " + count + " keys");
+        MappedByteBuffer from = buffer;
+        int fromCapacity = 1 << capacityBits;
+        File tmp = new File(path + ".tmp");
+        //noinspection ResultOfMethodCallIgnored
+        tmp.delete();
+        try {
+            buffer = map(tmp, HEADER_SIZE + ((long) SLOT_SIZE << (capacityBits + 1)));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        capacityBits++;
+        mask = (1 << capacityBits) - 1;
+        for (int i = 0; i < fromCapacity; i++) {
+            int fromPos = HEADER_SIZE + i * SLOT_SIZE;
+            long value = from.getLong(fromPos + 8);
+            if (value == 0)
+                continue;
+            long hash = from.getLong(fromPos);
+            int pos = HEADER_SIZE + slotFor(hash) * SLOT_SIZE;
+            buffer.putLong(pos, hash);
+            buffer.putLong(pos + 8, value);
+        }
+        writeHeader(buffer);
+        buffer.force();
+        ((DirectBuffer) from).cleaner().clean();
+
+        // replace the old file once the new one is complete.
+        File file = new File(path);
+        if (!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file)))
+            throw new IllegalStateException("Unable to replace " + path);
+        logger.info(path + " grown to " + (1 << capacityBits) + " slots for " + count + " keys");
+    }
+
+    private void writeHeader(@NotNull MappedByteBuffer buffer) {
+        buffer.putInt(HEADER_CAPACITY_BITS_OFFSET, capacityBits);
+        buffer.putLong(HEADER_COUNT_OFFSET, count);
+        buffer.putLong(HEADER_INDEXED_TO_OFFSET, indexedTo);
+        buffer.putInt(HEADER_MAGIC_OFFSET, HEADER_MAGIC);
+    }
+
+    @NotNull
+    private MappedByteBuffer map(@NotNull File file, long size) throws IOException {
+        if (size > Integer.MAX_VALUE)
+            throw new IOException("Key index too large " + size);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            MappedByteBuffer mbb = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            mbb.order(byteOrder);
+            return mbb;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Write the table to disk.
+     */
+    public synchronized void force() {
+        buffer.force();
+    }
+
+    public synchronized void close() {
+        buffer.force();
+        ((DirectBuffer) buffer).cleaner().clean();
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.higherfrequencytrading.chronicle.impl;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * A pure Java compressor for the LZ4 block format.  It is a simple greedy matcher which finds the repeated fields of
+ * similar excerpts, rather than a tuned one, and a block is at most 64 KB so every offset fits.
+ * <p/>
+ * A block is a sequence of a token, with the literal length in the high nibble and the match length - 4 in the low
+ * nibble, longer lengths as extra bytes of 255 and a remainder, the literals, and a two byte little endian offset back
+ * to the match.  The last sequence is only literals.
+ *
+ * @author peter.lawrey
+ */
+enum Lz4Codec {
+    ;
+    static final int MAX_BLOCK_SIZE = 1 << 16;
+    static final int HASH_BITS = 12;
+    private static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5;
+    private static final int MATCH_FIND_LIMIT = 12;
+    private static final int MAX_OFFSET = 65535;
+
+    static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * @param table of 1 << HASH_BITS entries, reused between calls.
+     * @return the length of the compressed block in dst.
+     */
+    static int compress(@NotNull byte[] src, int srcOff, int srcLen, @NotNull byte[] dst, int dstOff, @NotNull int[] table) {
+        if (srcLen > MAX_BLOCK_SIZE)
+            throw new IllegalArgumentException("Block of " + srcLen + " larger than " + MAX_BLOCK_SIZE);
+        Arrays.fill(table, -1);
+        int end = srcOff + srcLen;
+        int matchLimit = end - LAST_LITERALS;
+        int findLimit = end - MATCH_FIND_LIMIT;
+        int ip = srcOff, anchor = srcOff, op = dstOff;
+        while (ip < findLimit) {
+            int seq = readInt(src, ip);
+            int h = (seq * -1640531535) >>> (32 - HASH_BITS);
+            int ref = table[h];
+            table[h] = ip;
+            if (ref < 0 || ip - ref > MAX_OFFSET || readInt(src, ref) != seq) {
+                ip++;
+                continue;
+            }
+            // extend the match back into the literals.
+            while (ip > anchor && ref > srcOff && src[ip - 1] == src[ref - 1]) {
+                ip--;
+                ref--;
+            }
+            int matchLen = MIN_MATCH;
+            while (ip + matchLen < matchLimit && src[ip + matchLen] == src[ref + matchLen])
+                matchLen++;
+            op = writeSequence(src, anchor, ip - anchor, dst, op, ip - ref, matchLen);
+            ip += matchLen;
+            anchor = ip;
+        }
+        return writeSequence(src, anchor, end - anchor, dst, op, 0, 0) - dstOff;
+    }
+
+    private static int readInt(@NotNull byte[] b, int i) {
+        return (b[i] & 0xFF) | (b[i + 1] & 0xFF) << 8 | (b[i + 2] & 0xFF) << 16 | b[i + 3] << 24;
+    }
+
+    /**
+     * @param matchLen 0 for the last sequence which has no match.
+     */
+    private static int writeSequence(byte[] src, int litOff, int litLen, @NotNull byte[] dst, int op, int offset, int matchLen) {
+        int tokenPos = op++;
+        int token;
+        if (litLen >= 15) {
+            token = 15 << 4;
+            op = writeLength(dst, op, litLen - 15);
+        } else {
+            token = litLen << 4;
+        }
+        System.arraycopy(src, litOff, dst, op, litLen);
+        op += litLen;
+        if (matchLen > 0) {
+            dst[op++] = (byte) offset;
+            dst[op++] = (byte) (offset >>> 8);
+            int len = matchLen - MIN_MATCH;
+            if (len >= 15) {
+                token |= 15;
+                op = writeLength(dst, op, len - 15);
+            } else {
+                token |= len;
+            }
+        }
+        dst[tokenPos] = (byte) token;
+        return op;
+    }
+
+    private static int writeLength(@NotNull byte[] dst, int op, int len) {
+        for (; len >= 255; len -= 255)
+            dst[op++] = (byte) 255;
+        dst[op++] = (byte) len;
+        return op;
+    }
+
+    /**
+     * @param dstLen the uncompressed length expected.
+     * @throws IllegalStateException if the block is corrupt.
+     */
+    static void decompress(@NotNull byte[] src, int srcOff, int srcLen, @NotNull byte[] dst, int dstOff, int dstLen) {
+        int sp = srcOff, srcEnd = srcOff + srcLen;
+        int op = dstOff, dstEnd = dstOff + dstLen;
+        try {
+            while (true) {
+                int token = src[sp++] & 0xFF;
+                int litLen = token >>> 4;
+                if (litLen == 15)
+                    for (int b = 255; b == 255; litLen += b)
+                        b = src[sp++] & 0xFF;
+                if (op + litLen > dstEnd)
+                    throw new IllegalStateException("Corrupt block, literals past the end");
+                System.arraycopy(src, sp, dst, op, litLen);
+                sp += litLen;
+                op += litLen;
+                if (sp >= srcEnd)
+                    break;
+                int offset = (src[sp] & 0xFF) | (src[sp + 1] & 0xFF) << 8;
+                sp += 2;
+                int matchLen = token & 15;
+                if (matchLen == 15)
+                    for (int b = 255; b == 255; matchLen += b)
+                        b = src[sp++] & 0xFF;
+                matchLen += MIN_MATCH;
+                int ref = op - offset;
+                if (offset == 0 || ref < dstOff || op + matchLen > dstEnd)
+                    throw new IllegalStateException("Corrupt block, bad match");
+                // byte by byte as the match can overlap what it is copying.
+                for (int i = 0; i < matchLen; i++)
+                    dst[op + i] = dst[ref + i];
+                op += matchLen;
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalStateException("Corrupt block", e);
+        }
+        if (op != dstEnd)
+            throw new IllegalStateException("Corrupt block, length " + (op - dstOff) + " expected " + dstLen);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.higherfrequencytrading.chronicle.impl;
+
+import org.jetbrains.annotations.NotNull;
+import sun.nio.ch.DirectBuffer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Shares the mappings of a file between every chronicle in this JVM which has it open, e.g. a writer and a reader of
+ * the same chronicle, so each segment is mapped once.  Files are keyed by their canonical path and a mapping by its
+ * offset and size.  A mapping is unmapped when the last chronicle using it releases it, and the file is closed when it
+ * has no mappings left.
+ *
+ * @author peter.lawrey
+ */
+enum MappedFileRegistry {
+    ;
+    private static final Map<String, SharedFile> FILES = new HashMap<String, SharedFile>();
+
+    /**
+     * @param file      to map.
+     * @param offset    of the mapping.
+     * @param size      of the mapping.
+     * @param byteOrder which every user of the mapping must agree on.
+     * @return the mapping, shared with any other chronicle with the same file open.
+     */
+    @NotNull
+    static synchronized MappedByteBuffer acquire(@NotNull File file, long offset, int size, ByteOrder byteOrder) throws IOException {
+        String path = file.getCanonicalPath();
+        SharedFile sharedFile = FILES.get(path);
+        if (sharedFile == null) {
+            sharedFile = new SharedFile(new RandomAccessFile(path, "rw").getChannel());
+            FILES.put(path, sharedFile);
+        }
+        String key = offset + "/" + size;
+        SharedMapping mapping = sharedFile.mappings.get(key);
+        if (mapping == null) {
+            MappedByteBuffer mbb;
+            try {
+                mbb = sharedFile.channel.map(FileChannel.MapMode.READ_WRITE, offset, size);
+            } catch (IOException e) {
+                if (sharedFile.mappings.isEmpty())
+                    close(path, sharedFile);
+                throw e;
+            }
+            mbb.order(byteOrder);
+            mapping = new SharedMapping(mbb);
+            sharedFile.mappings.put(key, mapping);
+        } else if (mapping.buffer.order() != byteOrder) {
+            throw new IllegalStateException(path + " is mapped with a byte order of " + mapping.buffer.order());
+        }
+        mapping.users++;
+        return mapping.buffer;
+    }
+
+    static synchronized void release(@NotNull File file, long offset, int size) {
+        String path;
+        try {
+            path = file.getCanonicalPath();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        SharedFile sharedFile = FILES.get(path);
+        if (sharedFile == null)
+            return;
+        String key = offset + "/" + size;
+        SharedMapping mapping = sharedFile.mappings.get(key);
+        if (mapping == null || --mapping.users > 0)
+            return;
+        sharedFile.mappings.remove(key);
+        mapping.buffer.force();
+        ((DirectBuffer) mapping.buffer).cleaner().clean();
+        if (sharedFile.mappings.isEmpty())
+            close(path, sharedFile);
+    }
+
+    private static void close(String path, @NotNull SharedFile sharedFile) {
+        FILES.remove(path);
+        try {
+            sharedFile.channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * @return the number of mappings shared, for testing.
+     */
+    static synchronized int mappings() {
+        int count = 0;
+        for (SharedFile sharedFile : FILES.values())
+            count += sharedFile.mappings.size();
+        return count;
+    }
+
+    static class SharedFile {
+        final FileChannel channel;
+        final Map<String, SharedMapping> mappings = new HashMap<String, SharedMapping>();
+
+        SharedFile(FileChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    static class SharedMapping {
+        final MappedByteBuffer buffer;
+        int users = 0;
+
+        SharedMapping(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.higherfrequencytrading.chronicle.impl;
+
+import org.jetbrains.annotations.NotNull;
+import sun.nio.ch.DirectBuffer;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the most recently used segments of a file mapped, between keeping every segment and only the last one.
+ * <p/>
+ * Excerpts hold a reference to the segment they are on, so a segment evicted while in use stays mapped until it is
+ * released.  If unmapOnEvict is false, as for index segments which are only used briefly without a reference, an
+ * evicted segment is left for the GC to unmap instead.
+ *
+ * @author peter.lawrey
+ */
+abstract class MappedSegmentCache {
+    private final int capacity;
+    private final boolean unmapOnEvict;
+    // in access order so the first is the least recently used.
+    private final Map<Integer, Segment> segments = new LinkedHashMap<Integer, Segment>(16, 0.75f, true);
+    // every segment mapped, including those evicted but still in use.
+    private final Map<ByteBuffer, Segment> byBuffer = new IdentityHashMap<ByteBuffer, Segment>();
+
+    MappedSegmentCache(int capacity, boolean unmapOnEvict) {
+        if (capacity < 2)
+            throw new IllegalArgumentException("At least two segments are needed for an excerpt to cross a boundary");
+        this.capacity = capacity;
+        this.unmapOnEvict = unmapOnEvict;
+    }
+
+    @NotNull
+    protected abstract MappedByteBuffer map(int id);
+
+    /**
+     * @param id     of the segment.
+     * @param retain whether to hold a reference, to be released later.
+     * @return the segment mapped.
+     */
+    @NotNull
+    synchronized MappedByteBuffer acquire(int id, boolean retain) {
+        Segment segment = segments.get(id);
+        if (segment == null) {
+            segment = new Segment(map(id));
+            segments.put(id, segment);
+            byBuffer.put(segment.buffer, segment);
+            evict(Integer.MIN_VALUE);
+        }
+        if (retain)
+            segment.references++;
+        return segment.buffer;
+    }
+
+    /**
+     * @param buffer acquired with retain, it is ignored if it isn't from this cache.
+     */
+    synchronized void release(@NotNull ByteBuffer buffer) {
+        Segment segment = byBuffer.get(buffer);
+        if (segment == null)
+            return;
+        if (--segment.references <= 0 && segment.evicted)
+            unmap(segment);
+    }
+
+    /**
+     * Evict the least recently used segments over capacity, and any before an id.
+     */
+    synchronized void evict(int beforeId) {
+        for (Iterator<Map.Entry<Integer, Segment>> iter = segments.entrySet().iterator(); iter.hasNext(); ) {
+            Map.Entry<Integer, Segment> entry = iter.next();
+            if (segments.size() <= capacity && entry.getKey() >= beforeId)
+                continue;
+            iter.remove();
+            Segment segment = entry.getValue();
+            segment.evicted = true;
+            if (segment.references <= 0)
+                unmap(segment);
+        }
+    }
+
+    private void unmap(@NotNull Segment segment) {
+        byBuffer.remove(segment.buffer);
+        if (unmapOnEvict)
+            ((DirectBuffer) segment.buffer).cleaner().clean();
+    }
+
+    /**
+     * @return the number of segments mapped, including those evicted which are still in use.
+     */
+    synchronized int mapped() {
+        return byBuffer.size();
+    }
+
+    synchronized void close() {
+        // every segment cached is also in byBuffer.
+        for (Segment segment : byBuffer.values()) {
+            segment.buffer.force();
+            ((DirectBuffer) segment.buffer).cleaner().clean();
+        }
+        segments.clear();
+        byBuffer.clear();
+    }
+
+    static class Segment {
+        final MappedByteBuffer buffer;
+        int references = 0;
+        boolean evicted = false;
+
+        Segment(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.higherfrequencytrading.chronicle.impl;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tracks whether any other chronicle has the same files open, so excerpts left uncommitted are only discarded when no
+ * writer can still be committing them.  Every chronicle holds a shared lock on a byte of the header file, past the part
+ * mapped, and the first to open the files takes an exclusive lock while it checks them.  As a JVM can only hold one
+ * lock on a region of a file, chronicles in the same JVM share it and are counted.  Files are keyed by their canonical
+ * path.
+ *
+ * @author peter.lawrey
+ */
+enum OwnerLocks {
+    ;
+    private static final long LOCK_POSITION = IndexedChronicle.HEADER_SIZE;
+    private static final Map<String, Owner> OWNERS = new HashMap<String, Owner>();
+
+    /**
+     * @param path of the header file.
+     * @return true if no other chronicle has the files open, in which case the lock is exclusive until shared() is
+     *         called, otherwise the lock is shared.
+     */
+    static synchronized boolean acquire(@NotNull String path) throws IOException {
+        Owner owner;
+        // wait for the first chronicle in this JVM to finish checking the files, or to fail to open them.
+        while ((owner = OWNERS.get(path)) != null && owner.exclusive) {
+            try {
+                OwnerLocks.class.wait();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Interrupted waiting for " + path);
+            }
+        }
+        if (owner != null) {
+            owner.count++;
+            return false;
+        }
+        FileChannel channel = new RandomAccessFile(path, "rw").getChannel();
+        try {
+            FileLock lock = channel.tryLock(LOCK_POSITION, 1, false);
+            boolean exclusive = lock != null;
+            if (!exclusive)
+                // blocks while another process is checking the files.
+                lock = channel.lock(LOCK_POSITION, 1, true);
+            OWNERS.put(path, new Owner(channel, lock, exclusive));
+            return exclusive;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Let other chronicles open the files, once they have been checked.
+     */
+    static synchronized void shared(@NotNull String path) throws IOException {
+        Owner owner = OWNERS.get(path);
+        if (owner == null || !owner.exclusive)
+            return;
+        try {
+            // a lock can't be downgraded, so between these another process's tryLock can take it exclusively and
+            // think it is the only one with the files open.  That is safe as nothing has been written here yet, and
+            // taking the shared lock blocks until that process has finished its check.
+            owner.lock.release();
+            owner.lock = owner.channel.lock(LOCK_POSITION, 1, true);
+        } finally {
+            owner.exclusive = false;
+            OwnerLocks.class.notifyAll();
+        }
+    }
+
+    static synchronized void release(@NotNull String path) {
+        Owner owner = OWNERS.get(path);
+        if (owner == null || --owner.count > 0)
+            return;
+        OWNERS.remove(path);
+        if (owner.exclusive) {
+            owner.exclusive = false;
+            OwnerLocks.class.notifyAll();
+        }
+        try {
+            // releases the lock.
+            owner.channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    static class Owner {
+        final FileChannel channel;
+        FileLock lock;
+        boolean exclusive;
+        int count = 1;
+
+        Owner(FileChannel channel, FileLock lock, boolean exclusive) {
+            this.channel = channel;
+            this.lock = lock;
+            this.exclusive = exclusive;
+        }
+    }
+}
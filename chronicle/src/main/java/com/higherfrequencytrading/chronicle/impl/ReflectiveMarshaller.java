@@ -0,0 +1,303 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.higherfrequencytrading.chronicle.impl;
+
+import com.higherfrequencytrading.chronicle.EnumeratedMarshaller;
+import com.higherfrequencytrading.chronicle.Excerpt;
+import com.higherfrequencytrading.chronicle.StopCharTester;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Externalizable;
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import static com.higherfrequencytrading.chronicle.impl.UnsafeExcerpt.UNSAFE;
+
+/**
+ * Writes the non-transient fields of a Serializable class without the overhead of an ObjectOutputStream.
+ * <p/>
+ * The fields are found once per chronicle, superclass fields first and then by name, and accessed directly with
+ * Unsafe.  Primitives use the same compact encodings as a generated marshaller, Strings and enums are written with
+ * writeEnum and any other field with writeObject.  Only the class and a fingerprint of its fields are written with each
+ * object, so a reader can start from any excerpt and still detect a class which has changed.
+ * <p/>
+ * Objects are written as a tree, so an object with a cycle or a shared reference among the fields written this way is
+ * written with Java Serialization instead, see isTree.  An object written by an EnumeratedMarshaller is not looked into.
+ *
+ * @author peter.lawrey
+ */
+public class ReflectiveMarshaller<E> implements EnumeratedMarshaller<E> {
+    private static final int BOOLEAN = 0, BYTE = 1, SHORT = 2, CHAR = 3, INT = 4, LONG = 5, FLOAT = 6, DOUBLE = 7,
+            STRING = 8, ENUM = 9, OBJECT = 10;
+    private static final Comparator<Field> BY_NAME = new Comparator<Field>() {
+        @Override
+        public int compare(@NotNull Field f1, @NotNull Field f2) {
+            return f1.getName().compareTo(f2.getName());
+        }
+    };
+
+    @NotNull
+    private final Class<E> classMarshaled;
+    private final int[] types;
+    private final long[] offsets;
+    private final Class[] enumClasses;
+    private final int fingerprint;
+    private final boolean objectFields;
+
+    public ReflectiveMarshaller(@NotNull Class<E> classMarshaled) {
+        this.classMarshaled = classMarshaled;
+        List<Field> fields = new ArrayList<Field>();
+        addFields(classMarshaled, fields);
+        types = new int[fields.size()];
+        offsets = new long[fields.size()];
+        enumClasses = new Class[fields.size()];
+        int hash = classMarshaled.getName().hashCode();
+        boolean objectFields = false;
+        for (int i = 0; i < types.length; i++) {
+            Field field = fields.get(i);
+            types[i] = typeOf(field.getType());
+            offsets[i] = UNSAFE.objectFieldOffset(field);
+            if (types[i] == ENUM)
+                enumClasses[i] = field.getType();
+            objectFields |= types[i] == OBJECT;
+            hash = hash * 31 + field.getName().hashCode();
+            hash = hash * 31 + field.getType().getName().hashCode();
+        }
+        fingerprint = hash;
+        this.objectFields = objectFields;
+    }
+
+    /**
+     * @return whether this class can be written field by field, rather than needing Java Serialization.  Every
+     *         superclass must be Serializable too, as no constructor is called when it is read.
+     */
+    public static boolean canMarshal(@NotNull Class<?> aClass) {
+        if (!Serializable.class.isAssignableFrom(aClass) || Externalizable.class.isAssignableFrom(aClass)
+                || aClass.isArray() || aClass.isEnum() || aClass.isInterface() || Modifier.isAbstract(aClass.getModifiers()))
+            return false;
+        for (Class c = aClass; c != null && c != Object.class; c = c.getSuperclass()) {
+            // Java Serialization skips the fields of such a class and calls its constructor instead.
+            if (!Serializable.class.isAssignableFrom(c))
+                return false;
+            String name = c.getName();
+            // JDK classes are free to change their fields and often rely on their own serialization.
+            if (name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("sun."))
+                return false;
+            if (hasMethod(c, "writeObject") || hasMethod(c, "readObject") || hasMethod(c, "readObjectNoData")
+                    || hasMethod(c, "writeReplace") || hasMethod(c, "readResolve"))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean hasMethod(@NotNull Class c, String name) {
+        for (Method method : c.getDeclaredMethods())
+            if (method.getName().equals(name))
+                return true;
+        return false;
+    }
+
+    private static void addFields(@Nullable Class c, @NotNull List<Field> fields) {
+        if (c == null || c == Object.class)
+            return;
+        addFields(c.getSuperclass(), fields);
+        Field[] declared = c.getDeclaredFields();
+        Arrays.sort(declared, BY_NAME);
+        for (Field field : declared) {
+            int modifiers = field.getModifiers();
+            if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers))
+                fields.add(field);
+        }
+    }
+
+    private static int typeOf(Class<?> type) {
+        if (type == boolean.class) return BOOLEAN;
+        if (type == byte.class) return BYTE;
+        if (type == short.class) return SHORT;
+        if (type == char.class) return CHAR;
+        if (type == int.class) return INT;
+        if (type == long.class) return LONG;
+        if (type == float.class) return FLOAT;
+        if (type == double.class) return DOUBLE;
+        if (type == String.class) return STRING;
+        if (type.isEnum()) return ENUM;
+        return OBJECT;
+    }
+
+    /**
+     * @return a hash of the class name and its fields' names and types.
+     */
+    public int fingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Check the objects which would be written field by field below this one, as reading them back gives a new copy
+     * each time a reference appears, and a cycle would never end.
+     *
+     * @param chronicle to find the marshaller of each field's class.
+     * @param e         the object to write.
+     * @param visited   the objects seen so far, by identity.
+     * @return whether no object is reached twice.
+     */
+    public boolean isTree(@NotNull DirectChronicle chronicle, @NotNull Object e, @NotNull Map<Object, Object> visited) {
+        if (!objectFields)
+            return true;
+        if (visited.put(e, e) != null)
+            return false;
+        for (int i = 0; i < types.length; i++) {
+            if (types[i] != OBJECT)
+                continue;
+            Object o = UNSAFE.getObject(e, offsets[i]);
+            if (o == null)
+                continue;
+            Class<?> clazz = o.getClass();
+            if (chronicle.getMarshaller(clazz) != null || AbstractExcerpt.autoGenerateMarshaller(o))
+                continue;
+            ReflectiveMarshaller rm = chronicle.acquireReflectiveMarshaller(clazz);
+            if (rm == null) {
+                // written with Java Serialization, which keeps its own references, but only within each field.
+                if (visited.put(o, o) != null)
+                    return false;
+            } else if (visited.containsKey(o) || !rm.isTree(chronicle, o, visited)) {
+                return false;
+            } else {
+                visited.put(o, o);
+            }
+        }
+        return true;
+    }
+
+    @NotNull
+    @Override
+    public Class<E> classMarshaled() {
+        return classMarshaled;
+    }
+
+    @Override
+    public void write(@NotNull Excerpt excerpt, @NotNull E e) {
+        for (int i = 0; i < types.length; i++) {
+            long offset = offsets[i];
+            switch (types[i]) {
+                case BOOLEAN:
+                    excerpt.writeBoolean(UNSAFE.getBoolean(e, offset));
+                    break;
+                case BYTE:
+                    excerpt.writeByte(UNSAFE.getByte(e, offset));
+                    break;
+                case SHORT:
+                    excerpt.writeCompactShort(UNSAFE.getShort(e, offset));
+                    break;
+                case CHAR:
+                    excerpt.writeStopBit(UNSAFE.getChar(e, offset));
+                    break;
+                case INT:
+                    excerpt.writeStopBit(UNSAFE.getInt(e, offset));
+                    break;
+                case LONG:
+                    excerpt.writeStopBit(UNSAFE.getLong(e, offset));
+                    break;
+                case FLOAT:
+                    excerpt.writeFloat(UNSAFE.getFloat(e, offset));
+                    break;
+                case DOUBLE:
+                    excerpt.writeCompactDouble(UNSAFE.getDouble(e, offset));
+                    break;
+                case STRING:
+                    excerpt.writeEnum(UNSAFE.getObject(e, offset));
+                    break;
+                case ENUM:
+                    Object o = UNSAFE.getObject(e, offset);
+                    if (o == null)
+                        excerpt.writeUTF("");
+                    else
+                        excerpt.writeEnum(o);
+                    break;
+                default:
+                    excerpt.writeObject(UNSAFE.getObject(e, offset));
+                    break;
+            }
+        }
+    }
+
+    @Override
+    public E parse(@NotNull Excerpt excerpt, @NotNull StopCharTester tester) {
+        return read(excerpt);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public E read(@NotNull Excerpt excerpt) {
+        E e;
+        try {
+            e = (E) UNSAFE.allocateInstance(classMarshaled);
+        } catch (InstantiationException ie) {
+            throw new IllegalStateException(ie);
+        }
+        readInto(excerpt, e);
+        return e;
+    }
+
+    public void readInto(@NotNull Excerpt excerpt, @NotNull E e) {
+        for (int i = 0; i < types.length; i++) {
+            long offset = offsets[i];
+            switch (types[i]) {
+                case BOOLEAN:
+                    UNSAFE.putBoolean(e, offset, excerpt.readBoolean());
+                    break;
+                case BYTE:
+                    UNSAFE.putByte(e, offset, excerpt.readByte());
+                    break;
+                case SHORT:
+                    UNSAFE.putShort(e, offset, excerpt.readCompactShort());
+                    break;
+                case CHAR:
+                    UNSAFE.putChar(e, offset, (char) excerpt.readStopBit());
+                    break;
+                case INT:
+                    UNSAFE.putInt(e, offset, (int) excerpt.readStopBit());
+                    break;
+                case LONG:
+                    UNSAFE.putLong(e, offset, excerpt.readStopBit());
+                    break;
+                case FLOAT:
+                    UNSAFE.putFloat(e, offset, excerpt.readFloat());
+                    break;
+                case DOUBLE:
+                    UNSAFE.putDouble(e, offset, excerpt.readCompactDouble());
+                    break;
+                case STRING:
+                    UNSAFE.putObject(e, offset, excerpt.readEnum(String.class));
+                    break;
+                case ENUM:
+                    UNSAFE.putObject(e, offset, excerpt.readEnum(enumClasses[i]));
+                    break;
+                default:
+                    UNSAFE.putObject(e, offset, excerpt.readObject());
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.higherfrequencytrading.chronicle.impl;
+
+import com.higherfrequencytrading.chronicle.Excerpt;
+import org.jetbrains.annotations.NotNull;
+import sun.nio.ch.DirectBuffer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ConcurrentModificationException;
+import java.util.logging.Logger;
+
+import static com.higherfrequencytrading.chronicle.impl.UnsafeExcerpt.UNSAFE;
+
+/**
+ * A Chronicle of a fixed size for passing excerpts between processes, best placed on a tmpfs such as /dev/shm.  The
+ * index and data are rings in a single .ring file which is mapped once when opened, so the memory used is constant
+ * and no page faults come from the file growing.
+ * <p/>
+ * Once the writer wraps around, the oldest excerpts are overwritten and startIndex() moves on.  A consumer which has
+ * fallen behind by more than the ring holds is lapped: index() returns false and moves it to just before the oldest
+ * excerpt still available, like a retention policy.  As the writer doesn't wait for readers, a consumer can check
+ * lapped(index) after reading an excerpt to be sure it wasn't overwritten while being read.
+ * <p/>
+ * There can be one writer; excerpts must be started with a capacity as an open ended excerpt can't reserve its space.
+ *
+ * @author peter.lawrey
+ */
+public class RingBufferChronicle extends AbstractChronicle {
+    public static final int DEFAULT_DATA_BITS_SIZE = 24; // 1 << 24 or 16 MB.
+    public static final int DEFAULT_INDEX_BITS_SIZE = 16; // 64K excerpts.
+    private static final Logger logger = Logger.getLogger(RingBufferChronicle.class.getName());
+    // the header is at the start of the index mapping and is always in native order.
+    static final int HEADER_SIZE = 64;
+    static final int HEADER_MAGIC = 0x43485231; // "CHR1"
+    static final int HEADER_MAGIC_OFFSET = 0;
+    static final int HEADER_SIZE_OFFSET = 8; // the excerpts published.
+    static final int HEADER_START_OFFSET = 16; // the oldest excerpt not overwritten.
+    static final int HEADER_INDEX_BITS_OFFSET = 24;
+    static final int HEADER_DATA_BITS_OFFSET = 28;
+    private final int indexBitSize;
+    private final int dataBitSize;
+    private final long indexMask;
+    private final int dataMask;
+    private final FileChannel channel;
+    @NotNull
+    private final MappedByteBuffer indexBuffer;
+    @NotNull
+    private final MappedByteBuffer dataBuffer;
+    private final long headerAddress;
+    private final long indexAddress;
+    private boolean useUnsafe = false;
+    private AbstractExcerpt lastAppender;
+    // the excerpts finished in a batch are only published when it is committed.
+    private boolean batch = false;
+    private int batchCount = 0;
+
+    public RingBufferChronicle(String basePath) throws IOException {
+        this(basePath, DEFAULT_DATA_BITS_SIZE, DEFAULT_INDEX_BITS_SIZE);
+    }
+
+    /**
+     * @param basePath     of the .ring file.
+     * @param dataBitSize  the data ring is 1 << dataBitSize bytes, if the file is created.
+     * @param indexBitSize the index ring has 1 << indexBitSize entries, if the file is created.
+     */
+    public RingBufferChronicle(String basePath, int dataBitSize, int indexBitSize) throws IOException {
+        super(new File(basePath).getName());
+        File parentFile = new File(basePath).getParentFile();
+        if (parentFile != null)
+            //noinspection ResultOfMethodCallIgnored
+            parentFile.mkdirs();
+        channel = new RandomAccessFile(basePath + ".ring", "rw").getChannel();
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        header.order(ByteOrder.nativeOrder());
+        boolean validHeader = header.getInt(HEADER_MAGIC_OFFSET) == HEADER_MAGIC;
+        if (validHeader) {
+            // the geometry of an existing ring is used, whatever was asked for.
+            indexBitSize = header.getInt(HEADER_INDEX_BITS_OFFSET);
+            dataBitSize = header.getInt(HEADER_DATA_BITS_OFFSET);
+        } else {
+            indexBitSize = Math.min(27, Math.max(4, indexBitSize));
+            dataBitSize = Math.min(30, Math.max(12, dataBitSize));
+        }
+        ((DirectBuffer) header).cleaner().clean();
+        this.indexBitSize = indexBitSize;
+        this.dataBitSize = dataBitSize;
+        indexMask = (1L << indexBitSize) - 1;
+        dataMask = (1 << dataBitSize) - 1;
+
+        int indexBytes = HEADER_SIZE + (8 << indexBitSize);
+        indexBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, indexBytes);
+        indexBuffer.order(ByteOrder.nativeOrder());
+        dataBuffer = channel.map(FileChannel.MapMode.READ_WRITE, indexBytes, 1 << dataBitSize);
+        dataBuffer.order(ByteOrder.nativeOrder());
+        headerAddress = ((DirectBuffer) indexBuffer).address();
+        indexAddress = headerAddress + HEADER_SIZE;
+
+        if (validHeader) {
+            size = UNSAFE.getLongVolatile(null, headerAddress + HEADER_SIZE_OFFSET);
+            logger.info(basePath + ", size=" + size + ", startIndex=" + startIndex());
+        } else {
+            indexBuffer.putInt(HEADER_INDEX_BITS_OFFSET, indexBitSize);
+            indexBuffer.putInt(HEADER_DATA_BITS_OFFSET, dataBitSize);
+            UNSAFE.putOrderedInt(null, headerAddress + HEADER_MAGIC_OFFSET, HEADER_MAGIC);
+            logger.info(basePath + " created with " + (1 << indexBitSize) + " entries and " + (1 << dataBitSize) + " bytes of data.");
+        }
+    }
+
+    public void useUnsafe(boolean useUnsafe) {
+        this.useUnsafe = useUnsafe;
+    }
+
+    public boolean useUnsafe() {
+        return useUnsafe;
+    }
+
+    /**
+     * @return the number of excerpts the index ring can hold, fewer are held if the data ring is full first.
+     */
+    public long indexCapacity() {
+        return indexMask;
+    }
+
+    /**
+     * @return the size of the data ring in bytes.
+     */
+    public int dataCapacity() {
+        return dataMask + 1;
+    }
+
+    /**
+     * @param index of an excerpt read, or being read.
+     * @return whether this excerpt has been overwritten, in which case what was read cannot be trusted.
+     */
+    public boolean lapped(long index) {
+        return index < startIndex();
+    }
+
+    @NotNull
+    @Override
+    public Excerpt createExcerpt() {
+        return useUnsafe ? new UnsafeExcerpt(this) : new ByteBufferExcerpt(this);
+    }
+
+    /**
+     * @return the excerpts published, which can be by a writer in another process.
+     */
+    @Override
+    public long size() {
+        return UNSAFE.getLongVolatile(null, headerAddress + HEADER_SIZE_OFFSET);
+    }
+
+    /**
+     * @return the size of the .ring file, which doesn't change.
+     */
+    @Override
+    public long sizeInBytes() {
+        return indexBuffer.capacity() + dataBuffer.capacity();
+    }
+
+    @Override
+    public ByteOrder byteOrder() {
+        return ByteOrder.nativeOrder();
+    }
+
+    @Override
+    public long getIndexData(long indexId) {
+        // an entry for an excerpt which isn't published may still hold a position from the previous lap.
+        if (indexId > size())
+            return 0;
+        return readEntry(indexId);
+    }
+
+    private long readEntry(long indexId) {
+        return UNSAFE.getLongVolatile(null, indexAddress + ((indexId & indexMask) << 3));
+    }
+
+    @Override
+    public void setIndexData(long indexId, long indexData) {
+        UNSAFE.putOrderedLong(null, indexAddress + ((indexId & indexMask) << 3), indexData);
+    }
+
+    @NotNull
+    @Override
+    public ByteBuffer acquireDataBuffer(long startPosition) {
+        return dataBuffer;
+    }
+
+    @Override
+    public void releaseDataBuffer(ByteBuffer buffer) {
+        // mapped until closed.
+    }
+
+    @Override
+    public int positionInBuffer(long startPosition) {
+        return (int) (startPosition & dataMask);
+    }
+
+    @Override
+    public int dataOverlap() {
+        return 0;
+    }
+
+    @Override
+    public long startIndex() {
+        return UNSAFE.getLongVolatile(null, headerAddress + HEADER_START_OFFSET);
+    }
+
+    /**
+     * Positions only increase, an excerpt which doesn't fit before the end of the data ring starts at the beginning of
+     * the next lap.  Excerpts whose data or index entries are about to be overwritten are dropped first, so readers
+     * know they have been lapped before anything changes.
+     */
+    @Override
+    public long startExcerpt(@NotNull AbstractExcerpt appender, int capacity) {
+        if (capacity == 0)
+            throw new IllegalStateException("An open ended excerpt is not supported by a ring buffer");
+        if (capacity > dataMask + 1)
+            throw new IllegalArgumentException("Capacity " + capacity + " is larger than the ring buffer of " + (dataMask + 1));
+        assert lastAppender == null || lastAppender == appender : "Chronicle cannot safely have more than one appender ";
+        lastAppender = appender;
+
+        final long index = size + batchCount;
+        appender.index = index;
+        long startPosition = readEntry(index);
+        if ((startPosition & dataMask) + capacity > dataMask + 1) {
+            // pad the previous excerpt to the end of the lap.
+            startPosition = (startPosition + dataMask) & ~(long) dataMask;
+            setIndexData(index, startPosition);
+        }
+        dropOverwritten(index, startPosition + capacity);
+        return startPosition;
+    }
+
+    private void dropOverwritten(long index, long endPosition) {
+        long start = startIndex();
+        // the excerpt needs its own entry and the next one.
+        long from = Math.max(start, index + 2 - indexMask - 1);
+        while (from < index && readEntry(from) < endPosition - dataMask - 1)
+            from++;
+        if (from == start)
+            return;
+        if (from > size)
+            throw new IllegalStateException("A batch cannot be larger than the ring buffer");
+        // the new start must be visible before the data is overwritten.
+        UNSAFE.putLongVolatile(null, headerAddress + HEADER_START_OFFSET, from);
+    }
+
+    @Override
+    public long finishExcerpt(long index, long endPosition) {
+        if (index != size + batchCount)
+            throw new ConcurrentModificationException("index: " + index + ", expected: " + (size + batchCount) + ", Have you updated the chronicle without thread safety?");
+        setIndexData(index + 1, endPosition);
+        if (batch)
+            batchCount++;
+        else
+            incrementSize(index + 1);
+        return endPosition;
+    }
+
+    @Override
+    public void incrementSize(long expected) {
+        if (size + 1 != expected)
+            throw new ConcurrentModificationException("size: " + (size + 1) + ", expected: " + expected + ", Have you updated the chronicle without thread safety?");
+        size++;
+        UNSAFE.putOrderedLong(null, headerAddress + HEADER_SIZE_OFFSET, size);
+    }
+
+    @Override
+    public void startBatch() {
+        if (batch)
+            throw new IllegalStateException("A batch has already been started");
+        batch = true;
+    }
+
+    @Override
+    public int commitBatch() {
+        if (!batch)
+            throw new IllegalStateException("No batch has been started");
+        int count = batchCount;
+        batch = false;
+        batchCount = 0;
+        if (count > 0) {
+            size += count;
+            UNSAFE.putOrderedLong(null, headerAddress + HEADER_SIZE_OFFSET, size);
+        }
+        return count;
+    }
+
+    /**
+     * There is no time index, so a search goes to the oldest excerpt available.
+     */
+    @Override
+    public long indexForTime(long timeNS) {
+        return -1;
+    }
+
+    @Override
+    public boolean synchronousMode() {
+        return false;
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+        // the ring is shared memory so there is no need to force it to disk.
+        ((DirectBuffer) indexBuffer).cleaner().clean();
+        ((DirectBuffer) dataBuffer).cleaner().clean();
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.higherfrequencytrading.chronicle.impl;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import sun.nio.ch.DirectBuffer;
+
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.higherfrequencytrading.chronicle.impl.UnsafeExcerpt.UNSAFE;
+
+/**
+ * Maps and touches the next segment of a file in a background thread so the thread crossing a segment boundary doesn't
+ * wait for the map or take the page faults.
+ * <p/>
+ * This class is not thread safe, as for the buffer lists of IndexedChronicle.
+ *
+ * @author peter.lawrey
+ */
+class SegmentMapper {
+    private static final Logger logger = Logger.getLogger(SegmentMapper.class.getName());
+    private final FileChannel channel;
+    private final int bitSize;
+    private final int overlap;
+    private final ByteOrder byteOrder;
+    private final ExecutorService service;
+    private int nextId = -1;
+    @Nullable
+    private Future<MappedByteBuffer> next = null;
+
+    SegmentMapper(FileChannel channel, int bitSize, int overlap, ByteOrder byteOrder, ExecutorService service) {
+        this.channel = channel;
+        this.bitSize = bitSize;
+        this.overlap = overlap;
+        this.byteOrder = byteOrder;
+        this.service = service;
+    }
+
+    /**
+     * Write to every page so the file is extended and the page table populated before the appender gets there. A CAS
+     * of 0 to 0 doesn't change anything another thread or process has written.
+     */
+    static void touchForWrite(@NotNull MappedByteBuffer mbb) {
+        long address = ((DirectBuffer) mbb).address();
+        int pageSize = UNSAFE.pageSize();
+        for (long addr = address, end = address + mbb.capacity(); addr < end; addr += pageSize)
+            UNSAFE.compareAndSwapLong(null, addr, 0L, 0L);
+    }
+
+    /**
+     * @param id of the segment wanted.
+     * @return the segment if it was mapped in the background, or null if it must be mapped now.
+     */
+    @Nullable
+    MappedByteBuffer take(int id) {
+        Future<MappedByteBuffer> future = next;
+        if (future == null || nextId != id)
+            return null;
+        next = null;
+        nextId = -1;
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            logger.log(Level.WARNING, "Background map of segment " + id + " failed", e.getCause());
+        }
+        return null;
+    }
+
+    /**
+     * Start mapping a segment in the background.
+     *
+     * @param id       of the segment.
+     * @param forWrite whether the segment will be appended to, or just read.
+     */
+    void prepare(final int id, final boolean forWrite) {
+        if (next != null) {
+            if (nextId == id)
+                return;
+            discard();
+        }
+        nextId = id;
+        next = service.submit(new Callable<MappedByteBuffer>() {
+            @NotNull
+            @Override
+            public MappedByteBuffer call() throws Exception {
+                MappedByteBuffer mbb = channel.map(FileChannel.MapMode.READ_WRITE, (long) id << bitSize, (1 << bitSize) + overlap);
+                mbb.order(byteOrder);
+                if (forWrite)
+                    touchForWrite(mbb);
+                else
+                    mbb.load();
+                return mbb;
+            }
+        });
+    }
+
+    /**
+     * Drop any segment mapped but not used.
+     */
+    void discard() {
+        Future<MappedByteBuffer> future = next;
+        next = null;
+        nextId = -1;
+        if (future == null || future.cancel(false))
+            return;
+        try {
+            MappedByteBuffer mbb = future.get();
+            ((DirectBuffer) mbb).cleaner().clean();
+        } catch (Exception ignored) {
+            // not mapped so nothing to clean up.
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.higherfrequencytrading.chronicle.impl;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+
+/**
+ * A CompactIndexedChronicle with 16-bit deltas, 29 entries per 64 byte block.  As each block must span less than 64 KB,
+ * use this for small excerpts with a dataOverlap so excerpts aren't padded at the end of a data segment.
+ *
+ * @author peter.lawrey
+ */
+public class ShortCompactIndexedChronicle extends CompactIndexedChronicle {
+    public ShortCompactIndexedChronicle(String basePath) throws IOException {
+        super(basePath);
+    }
+
+    public ShortCompactIndexedChronicle(String basePath, int dataBitSizeHint) throws IOException {
+        super(basePath, dataBitSizeHint);
+    }
+
+    public ShortCompactIndexedChronicle(String basePath, int dataBitSizeHint, ByteOrder byteOrder) throws IOException {
+        super(basePath, dataBitSizeHint, byteOrder);
+    }
+
+    public ShortCompactIndexedChronicle(String basePath, int dataBitSizeHint, ByteOrder byteOrder, boolean minimiseByteBuffers, boolean synchronousMode) throws IOException {
+        super(basePath, dataBitSizeHint, byteOrder, minimiseByteBuffers, synchronousMode);
+    }
+
+    @Override
+    protected int deltaBitSize() {
+        return 1;
+    }
+}
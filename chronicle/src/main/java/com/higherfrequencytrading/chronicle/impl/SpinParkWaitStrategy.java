@@ -0,0 +1,84 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.higherfrequencytrading.chronicle.impl;
+
+import com.higherfrequencytrading.chronicle.WaitStrategy;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Busy waits, then yields, then parks for a time which doubles each attempt from minParkNS up to maxParkNS.  A writer
+ * using the same Chronicle unparks the readers when it finishes an excerpt.  A writer in another process, or using
+ * another Chronicle for the same files, can't, so a reader sees its excerpts within maxParkNS.
+ * <p/>
+ * This is the default for a Chronicle.
+ *
+ * @author peter.lawrey
+ */
+public class SpinParkWaitStrategy implements WaitStrategy {
+    private final int spins;
+    private final int yields;
+    private final long minParkNS;
+    private final long maxParkNS;
+    private final AtomicInteger parkedCount = new AtomicInteger();
+    private final Set<Thread> parked = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+
+    public SpinParkWaitStrategy() {
+        this(10000, 100, 1000, 1000 * 1000);
+    }
+
+    public SpinParkWaitStrategy(int spins, int yields, long minParkNS, long maxParkNS) {
+        if (minParkNS <= 0 || maxParkNS < minParkNS)
+            throw new IllegalArgumentException("Must have 0 < minParkNS: " + minParkNS + " <= maxParkNS: " + maxParkNS);
+        this.spins = spins;
+        this.yields = yields;
+        this.minParkNS = minParkNS;
+        this.maxParkNS = maxParkNS;
+    }
+
+    @Override
+    public void idle(int attempts, long deadlineNS) {
+        if (attempts < spins)
+            return;
+        if (attempts - spins < yields) {
+            Thread.yield();
+            return;
+        }
+        int shift = attempts - spins - yields;
+        long parkNS = shift < Long.numberOfLeadingZeros(minParkNS) - 1 ? Math.min(maxParkNS, minParkNS << shift) : maxParkNS;
+        parkNS = Math.min(parkNS, deadlineNS - System.nanoTime());
+        if (parkNS <= 0)
+            return;
+        Thread thread = Thread.currentThread();
+        parked.add(thread);
+        parkedCount.incrementAndGet();
+        LockSupport.parkNanos(this, parkNS);
+        parkedCount.decrementAndGet();
+        parked.remove(thread);
+    }
+
+    @Override
+    public void signalAll() {
+        if (parkedCount.get() == 0)
+            return;
+        for (Thread thread : parked)
+            LockSupport.unpark(thread);
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.higherfrequencytrading.chronicle.impl;
+
+import com.higherfrequencytrading.chronicle.WaitStrategy;
+
+/**
+ * Busy waits for a number of attempts and then yields between them so other threads can use the core.
+ *
+ * @author peter.lawrey
+ */
+public class SpinYieldWaitStrategy implements WaitStrategy {
+    private final int spins;
+
+    public SpinYieldWaitStrategy() {
+        this(1000);
+    }
+
+    public SpinYieldWaitStrategy(int spins) {
+        this.spins = spins;
+    }
+
+    @Override
+    public void idle(int attempts, long deadlineNS) {
+        if (attempts >= spins)
+            Thread.yield();
+    }
+
+    @Override
+    public void signalAll() {
+    }
+}
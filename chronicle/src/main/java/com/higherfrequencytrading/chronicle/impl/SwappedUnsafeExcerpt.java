@@ -0,0 +1,179 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.higherfrequencytrading.chronicle.impl;
+
+/**
+ * Raw memory access for a chronicle which isn't in the native byte order, swapping the bytes of each field rather than
+ * falling back to a ByteBuffer.
+ *
+ * @author peter.lawrey
+ */
+public class SwappedUnsafeExcerpt extends UnsafeExcerpt {
+    protected SwappedUnsafeExcerpt(DirectChronicle chronicle) {
+        super(chronicle);
+    }
+
+    @Override
+    public short readShort() {
+        short s = Short.reverseBytes(UNSAFE.getShort(position));
+        position += 2;
+        return s;
+    }
+
+    @Override
+    public short readShort(int offset) {
+        return Short.reverseBytes(UNSAFE.getShort(start + offset));
+    }
+
+    @Override
+    public char readChar() {
+        char ch = Character.reverseBytes(UNSAFE.getChar(position));
+        position += 2;
+        return ch;
+    }
+
+    @Override
+    public char readChar(int offset) {
+        return Character.reverseBytes(UNSAFE.getChar(start + offset));
+    }
+
+    @Override
+    public int readInt() {
+        int i = Integer.reverseBytes(UNSAFE.getInt(position));
+        position += 4;
+        return i;
+    }
+
+    @Override
+    public int readInt(int offset) {
+        return Integer.reverseBytes(UNSAFE.getInt(start + offset));
+    }
+
+    @Override
+    public long readLong() {
+        long l = Long.reverseBytes(UNSAFE.getLong(position));
+        position += 8;
+        return l;
+    }
+
+    @Override
+    public long readLong(int offset) {
+        return Long.reverseBytes(UNSAFE.getLong(start + offset));
+    }
+
+    @Override
+    public float readFloat() {
+        float f = Float.intBitsToFloat(Integer.reverseBytes(UNSAFE.getInt(position)));
+        position += 4;
+        return f;
+    }
+
+    @Override
+    public float readFloat(int offset) {
+        return Float.intBitsToFloat(Integer.reverseBytes(UNSAFE.getInt(start + offset)));
+    }
+
+    @Override
+    public double readDouble() {
+        double d = Double.longBitsToDouble(Long.reverseBytes(UNSAFE.getLong(position)));
+        position += 8;
+        return d;
+    }
+
+    @Override
+    public double readDouble(int offset) {
+        return Double.longBitsToDouble(Long.reverseBytes(UNSAFE.getLong(start + offset)));
+    }
+
+    @Override
+    public void writeShort(int v) {
+        if (position + 2 > limit)
+            overflow(2);
+        UNSAFE.putShort(position, Short.reverseBytes((short) v));
+        position += 2;
+    }
+
+    @Override
+    public void writeShort(int offset, int v) {
+        UNSAFE.putShort(start + offset, Short.reverseBytes((short) v));
+    }
+
+    @Override
+    public void writeChar(int v) {
+        if (position + 2 > limit)
+            overflow(2);
+        UNSAFE.putChar(position, Character.reverseBytes((char) v));
+        position += 2;
+    }
+
+    @Override
+    public void writeChar(int offset, int v) {
+        UNSAFE.putChar(start + offset, Character.reverseBytes((char) v));
+    }
+
+    @Override
+    public void writeInt(int v) {
+        if (position + 4 > limit)
+            overflow(4);
+        UNSAFE.putInt(position, Integer.reverseBytes(v));
+        position += 4;
+    }
+
+    @Override
+    public void writeInt(int offset, int v) {
+        UNSAFE.putInt(start + offset, Integer.reverseBytes(v));
+    }
+
+    @Override
+    public void writeLong(long v) {
+        if (position + 8 > limit)
+            overflow(8);
+        UNSAFE.putLong(position, Long.reverseBytes(v));
+        position += 8;
+    }
+
+    @Override
+    public void writeLong(int offset, long v) {
+        UNSAFE.putLong(start + offset, Long.reverseBytes(v));
+    }
+
+    @Override
+    public void writeFloat(float v) {
+        if (position + 4 > limit)
+            overflow(4);
+        UNSAFE.putInt(position, Integer.reverseBytes(Float.floatToRawIntBits(v)));
+        position += 4;
+    }
+
+    @Override
+    public void writeFloat(int offset, float v) {
+        UNSAFE.putInt(start + offset, Integer.reverseBytes(Float.floatToRawIntBits(v)));
+    }
+
+    @Override
+    public void writeDouble(double v) {
+        if (position + 8 > limit)
+            overflow(8);
+        UNSAFE.putLong(position, Long.reverseBytes(Double.doubleToRawLongBits(v)));
+        position += 8;
+    }
+
+    @Override
+    public void writeDouble(int offset, double v) {
+        UNSAFE.putLong(start + offset, Long.reverseBytes(Double.doubleToRawLongBits(v)));
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.higherfrequencytrading.chronicle.impl;
+
+import org.jetbrains.annotations.NotNull;
+import sun.nio.ch.DirectBuffer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A sparse index of excerpt index by time in a .time file beside the chronicle.  Each sample is the time in nanoseconds
+ * since the epoch and the index of the excerpt finished at that time, so both are in order and can be binary searched.
+ * A time of zero marks a sample not written yet.  Times are from System.nanoTime(), anchored to the wall clock to within
+ * a millisecond when the index is opened.
+ * <p/>
+ * Only the appender adds samples, but readers in other threads can search at the same time.
+ *
+ * @author peter.lawrey
+ */
+class TimeIndex {
+    static final int SAMPLE_SIZE = 16;
+    private static final int CHUNK_BIT_SIZE = 20; // 1 MB or 65536 samples.
+    private static final int CHUNK_LOW_MASK = (1 << CHUNK_BIT_SIZE) - 1;
+    private final FileChannel channel;
+    private final ByteOrder byteOrder;
+    private final List<MappedByteBuffer> chunks = new ArrayList<MappedByteBuffer>();
+    // used by the appender.
+    private int everyExcerpts = 0;
+    private long everyNS = 0;
+    private long count = -1;
+    private long nextIndex = 0;
+    private long nextTimeNS = 0;
+    // the wall clock can go backwards, so samples are never earlier than the last.
+    private long lastTimeNS = 0;
+    // nanoTime() anchored to the wall clock when opened, for a resolution finer than a millisecond.
+    private final long epochNS = System.currentTimeMillis() * 1000000L;
+    private final long startNanoTime = System.nanoTime();
+
+    TimeIndex(@NotNull String path, ByteOrder byteOrder) throws IOException {
+        this.channel = new RandomAccessFile(path, "rw").getChannel();
+        this.byteOrder = byteOrder;
+    }
+
+    static boolean exists(@NotNull String path) {
+        return new File(path).exists();
+    }
+
+    long nowNS() {
+        return epochNS + System.nanoTime() - startNanoTime;
+    }
+
+    /**
+     * @param everyExcerpts sample every this many excerpts, or 0 for none.
+     * @param everyNS       sample when this many nanoseconds has passed since the last sample, or 0 for none.
+     * @param nextIndex     the next excerpt to be appended, which is always sampled.
+     */
+    synchronized void sampling(int everyExcerpts, long everyNS, long nextIndex) {
+        this.everyExcerpts = everyExcerpts;
+        this.everyNS = everyNS;
+        this.nextIndex = nextIndex;
+        this.nextTimeNS = 0;
+        if (count < 0) {
+            count = count();
+            if (count > 0)
+                lastTimeNS = timeAt(count - 1);
+        }
+    }
+
+    boolean sampling() {
+        return everyExcerpts > 0 || everyNS > 0;
+    }
+
+    /**
+     * Called by the appender as each excerpt is published.
+     */
+    void excerptFinished(long index) {
+        if (index >= nextIndex) {
+            long timeNS = Math.max(lastTimeNS, nowNS());
+            add(timeNS, index);
+            nextIndex = everyExcerpts > 0 ? index + everyExcerpts : Long.MAX_VALUE;
+            nextTimeNS = everyNS > 0 ? timeNS + everyNS : Long.MAX_VALUE;
+
+        } else if (everyNS > 0) {
+            long timeNS = Math.max(lastTimeNS, nowNS());
+            if (timeNS >= nextTimeNS) {
+                add(timeNS, index);
+                nextIndex = everyExcerpts > 0 ? index + everyExcerpts : Long.MAX_VALUE;
+                nextTimeNS = timeNS + everyNS;
+            }
+        }
+    }
+
+    private synchronized void add(long timeNS, long index) {
+        long offset = count * SAMPLE_SIZE;
+        MappedByteBuffer chunk = acquireChunk(offset);
+        int pos = (int) (offset & CHUNK_LOW_MASK);
+        chunk.putLong(pos + 8, index);
+        // the time is written last as it marks the sample as written.
+        chunk.putLong(pos, timeNS);
+        lastTimeNS = timeNS;
+        count++;
+    }
+
+    /**
+     * @return the index of the last excerpt sampled at or before this time, or -1 if there isn't one.
+     */
+    synchronized long indexFor(long timeNS) {
+        long lo = 0, hi = count() - 1;
+        if (hi < 0 || timeAt(0) > timeNS)
+            return -1;
+        // timeAt(lo) <= timeNS
+        while (lo < hi) {
+            long mid = (lo + hi + 1) >>> 1;
+            if (timeAt(mid) <= timeNS)
+                lo = mid;
+            else
+                hi = mid - 1;
+        }
+        long offset = lo * SAMPLE_SIZE;
+        return acquireChunk(offset).getLong((int) (offset & CHUNK_LOW_MASK) + 8);
+    }
+
+    private long timeAt(long sample) {
+        long offset = sample * SAMPLE_SIZE;
+        return acquireChunk(offset).getLong((int) (offset & CHUNK_LOW_MASK));
+    }
+
+    /**
+     * @return the number of samples written, found by a binary search for the first zero time.
+     */
+    private long count() {
+        long hi;
+        try {
+            hi = channel.size() / SAMPLE_SIZE;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        long lo = 0;
+        // samples below lo are written, samples at or above hi are not.
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (timeAt(mid) != 0)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    @NotNull
+    private MappedByteBuffer acquireChunk(long offset) {
+        int chunkId = (int) (offset >>> CHUNK_BIT_SIZE);
+        while (chunks.size() <= chunkId)
+            chunks.add(null);
+        MappedByteBuffer chunk = chunks.get(chunkId);
+        if (chunk == null) {
+            try {
+                chunk = channel.map(FileChannel.MapMode.READ_WRITE, (long) chunkId << CHUNK_BIT_SIZE, 1 << CHUNK_BIT_SIZE);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            chunk.order(byteOrder);
+            chunks.set(chunkId, chunk);
+        }
+        return chunk;
+    }
+
+    synchronized void close() {
+        try {
+            for (MappedByteBuffer chunk : chunks) {
+                if (chunk != null) {
+                    chunk.force();
+                    ((DirectBuffer) chunk).cleaner().clean();
+                }
+            }
+            chunks.clear();
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
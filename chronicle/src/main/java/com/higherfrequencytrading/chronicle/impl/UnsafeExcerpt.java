@@ -32,7 +32,7 @@ public class UnsafeExcerpt extends AbstractExcerpt {
      */
     @NotNull
     @SuppressWarnings("ALL")
-    private static final Unsafe UNSAFE;
+    static final Unsafe UNSAFE;
     private static final int BYTES_OFFSET;
 
     // RandomDataInput
@@ -56,11 +56,12 @@ public class UnsafeExcerpt extends AbstractExcerpt {
         this.index = index;
         this.startPosition = startPosition;
 
-        buffer = chronicle.acquireDataBuffer(startPosition);
+        holdBuffer(chronicle.acquireDataBuffer(startPosition));
 
         long address = ((DirectBuffer) buffer).address();
         start = position = address + chronicle.positionInBuffer(startPosition);
-        limit = address + chronicle.positionInBuffer(endPosition - 1) + 1;
+        // the excerpt can run past the end of the segment into the overlap.
+        limit = start + (endPosition - startPosition);
 
         assert limit > start && position < limit && endPosition > startPosition;
     }
@@ -155,6 +156,8 @@ public class UnsafeExcerpt extends AbstractExcerpt {
 
     @Override
     public void write(int b) {
+        if (position + 1 > limit)
+            overflow(1);
         UNSAFE.putByte(position++, (byte) b);
     }
 
@@ -165,18 +168,41 @@ public class UnsafeExcerpt extends AbstractExcerpt {
 
     @Override
     public void write(int offset, @NotNull byte[] b) {
+        if (position + b.length > limit)
+            overflow(b.length);
         UNSAFE.copyMemory(b, BYTES_OFFSET, null, position, b.length);
         position += b.length;
     }
 
     @Override
     public void write(byte[] b, int off, int len) {
+        if (position + len > limit)
+            overflow(len);
         UNSAFE.copyMemory(b, BYTES_OFFSET + off, null, position, len);
         position += len;
     }
 
+    @Override
+    protected int writeAscii(@NotNull CharSequence str, int from, int to) {
+        if (position + (to - from) > limit)
+            overflow(to - from);
+        // a char can't be copied to a byte with copyMemory, but this avoids a bounds check per byte.
+        long pos = position;
+        int i = from;
+        for (; i < to; i++) {
+            int c = str.charAt(i);
+            if (c < 0x0001 || c > 0x007F)
+                break;
+            UNSAFE.putByte(pos++, (byte) c);
+        }
+        position = pos;
+        return i;
+    }
+
     @Override
     public void writeShort(int v) {
+        if (position + 2 > limit)
+            overflow(2);
         UNSAFE.putShort(position, (short) v);
         position += 2;
     }
@@ -188,6 +214,8 @@ public class UnsafeExcerpt extends AbstractExcerpt {
 
     @Override
     public void writeChar(int v) {
+        if (position + 2 > limit)
+            overflow(2);
         UNSAFE.putChar(position, (char) v);
         position += 2;
     }
@@ -199,6 +227,8 @@ public class UnsafeExcerpt extends AbstractExcerpt {
 
     @Override
     public void writeInt(int v) {
+        if (position + 4 > limit)
+            overflow(4);
         UNSAFE.putInt(position, v);
         position += 4;
     }
@@ -210,6 +240,8 @@ public class UnsafeExcerpt extends AbstractExcerpt {
 
     @Override
     public void writeLong(long v) {
+        if (position + 8 > limit)
+            overflow(8);
         UNSAFE.putLong(position, v);
         position += 8;
     }
@@ -221,6 +253,8 @@ public class UnsafeExcerpt extends AbstractExcerpt {
 
     @Override
     public void writeFloat(float v) {
+        if (position + 4 > limit)
+            overflow(4);
         UNSAFE.putFloat(position, v);
         position += 4;
     }
@@ -232,6 +266,8 @@ public class UnsafeExcerpt extends AbstractExcerpt {
 
     @Override
     public void writeDouble(double v) {
+        if (position + 8 > limit)
+            overflow(8);
         UNSAFE.putDouble(position, v);
         position += 8;
     }
@@ -31,17 +31,27 @@ import java.nio.ByteOrder;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author peter.lawrey
  */
 public class WrappedExcerpt implements Excerpt {
-    private final Excerpt excerpt;
+    private Excerpt excerpt;
 
     public WrappedExcerpt(Excerpt excerpt) {
         this.excerpt = excerpt;
     }
 
+    /**
+     * Change the underlying excerpt, e.g. when moving to another file.
+     *
+     * @param excerpt to delegate to from now on.
+     */
+    protected void wrap(Excerpt excerpt) {
+        this.excerpt = excerpt;
+    }
+
     @NotNull
     public Chronicle chronicle() {
         return excerpt.chronicle();
@@ -56,6 +66,12 @@ public class WrappedExcerpt implements Excerpt {
         return excerpt.nextIndex();
     }
 
+    @Override
+    public boolean nextIndex(long timeout, @NotNull TimeUnit unit) {
+        // use this.nextIndex() as a subclass may override it.
+        return AbstractExcerpt.nextIndex(this, timeout, unit);
+    }
+
     public boolean index(long index) throws IndexOutOfBoundsException {
         return excerpt.index(index);
     }
@@ -64,10 +80,26 @@ public class WrappedExcerpt implements Excerpt {
         excerpt.startExcerpt(capacity);
     }
 
+    public void startExcerpt() {
+        excerpt.startExcerpt();
+    }
+
     public void finish() {
         excerpt.finish();
     }
 
+    public void startBatch() {
+        excerpt.startBatch();
+    }
+
+    public void commitBatch() {
+        excerpt.commitBatch();
+    }
+
+    public boolean seekToTime(long timeNS) {
+        return excerpt.seekToTime(timeNS);
+    }
+
     public long index() {
         return excerpt.index();
     }
@@ -635,6 +667,11 @@ public class WrappedExcerpt implements Excerpt {
         return excerpt.readObject();
     }
 
+    @Override
+    public <T> T readObject(Class<T> tClass) throws IllegalStateException {
+        return excerpt.readObject(tClass);
+    }
+
     @Override
     public int read() {
         return excerpt.read();
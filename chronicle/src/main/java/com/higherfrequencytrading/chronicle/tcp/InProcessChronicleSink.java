@@ -19,6 +19,7 @@ package com.higherfrequencytrading.chronicle.tcp;
 import com.higherfrequencytrading.chronicle.Chronicle;
 import com.higherfrequencytrading.chronicle.EnumeratedMarshaller;
 import com.higherfrequencytrading.chronicle.Excerpt;
+import com.higherfrequencytrading.chronicle.WaitStrategy;
 import com.higherfrequencytrading.chronicle.impl.WrappedExcerpt;
 import com.higherfrequencytrading.chronicle.tools.IOTools;
 import org.jetbrains.annotations.NotNull;
@@ -69,6 +70,17 @@ public class InProcessChronicleSink implements Chronicle {
         chronicle.multiThreaded(multiThreaded);
     }
 
+    @Override
+    public void waitStrategy(@NotNull WaitStrategy waitStrategy) {
+        chronicle.waitStrategy(waitStrategy);
+    }
+
+    @NotNull
+    @Override
+    public WaitStrategy waitStrategy() {
+        return chronicle.waitStrategy();
+    }
+
     @NotNull
     @Override
     public String name() {
@@ -143,37 +155,19 @@ public class InProcessChronicleSink implements Chronicle {
             }
 
 //            System.out.println("size=" + size + "  rb " + readBuffer);
-            if (size > 128 << 20 || size < 0)
+            // the chronicle checks whether an excerpt this size fits in its data segments.
+            if (size < 0)
                 throw new StreamCorruptedException("size was " + size);
 
-            excerpt.startExcerpt((int) size);
-            // perform a progressive copy of data.
-            long remaining = size;
-            int limit = readBuffer.limit();
-
-            int size2 = (int) Math.min(readBuffer.remaining(), remaining);
-            remaining -= size2;
-            readBuffer.limit(readBuffer.position() + size2);
-            excerpt.write(readBuffer);
-            // reset the limit;
-            readBuffer.limit(limit);
-
-            // needs more than one read.
-            while (remaining > 0) {
-//                System.out.println("++ read remaining "+remaining +" rb "+readBuffer);
-                readBuffer.clear();
-                int size3 = (int) Math.min(readBuffer.capacity(), remaining);
-                readBuffer.limit(size3);
-//                    System.out.println("... reading");
-                if (sc.read(readBuffer) < 0)
-                    throw new EOFException();
-                readBuffer.flip();
-//                    System.out.println("r " + ChronicleTools.asString(bb));
-                remaining -= readBuffer.remaining();
-                excerpt.write(readBuffer);
+            // land this excerpt and any others already read as one batch.
+            excerpt.startBatch();
+            try {
+                readExcerpt(sc, size);
+                while ((size = bufferedExcerptSize()) >= 0)
+                    readExcerpt(sc, size);
+            } finally {
+                excerpt.commitBatch();
             }
-
-            excerpt.finish();
         } catch (IOException e) {
             if (logger.isLoggable(Level.FINE))
                 logger.log(Level.FINE, "Lost connection to " + address + " retrying", e);
@@ -187,6 +181,50 @@ public class InProcessChronicleSink implements Chronicle {
         return true;
     }
 
+    /**
+     * @return the size of the next excerpt if all of it has been read already, or -1.
+     */
+    private long bufferedExcerptSize() {
+        if (readBuffer.remaining() < 4)
+            return -1;
+        int size = readBuffer.getInt(readBuffer.position());
+        if (size < 0 || readBuffer.remaining() - 4 < size)
+            return -1;
+        readBuffer.getInt();
+        return size;
+    }
+
+    private void readExcerpt(@NotNull SocketChannel sc, long size) throws IOException {
+        excerpt.startExcerpt((int) size);
+        // perform a progressive copy of data.
+        long remaining = size;
+        int limit = readBuffer.limit();
+
+        int size2 = (int) Math.min(readBuffer.remaining(), remaining);
+        remaining -= size2;
+        readBuffer.limit(readBuffer.position() + size2);
+        excerpt.write(readBuffer);
+        // reset the limit;
+        readBuffer.limit(limit);
+
+        // needs more than one read.
+        while (remaining > 0) {
+//            System.out.println("++ read remaining "+remaining +" rb "+readBuffer);
+            readBuffer.clear();
+            int size3 = (int) Math.min(readBuffer.capacity(), remaining);
+            readBuffer.limit(size3);
+//            System.out.println("... reading");
+            if (sc.read(readBuffer) < 0)
+                throw new EOFException();
+            readBuffer.flip();
+//            System.out.println("r " + ChronicleTools.asString(bb));
+            remaining -= readBuffer.remaining();
+            excerpt.write(readBuffer);
+        }
+
+        excerpt.finish();
+    }
+
     @Nullable
     private SocketChannel createConnection() {
         while (!closed) {
@@ -19,6 +19,7 @@ package com.higherfrequencytrading.chronicle.tcp;
 import com.higherfrequencytrading.chronicle.Chronicle;
 import com.higherfrequencytrading.chronicle.EnumeratedMarshaller;
 import com.higherfrequencytrading.chronicle.Excerpt;
+import com.higherfrequencytrading.chronicle.WaitStrategy;
 import com.higherfrequencytrading.chronicle.impl.WrappedExcerpt;
 import com.higherfrequencytrading.chronicle.tools.IOTools;
 import org.jetbrains.annotations.NotNull;
@@ -83,6 +84,17 @@ public class InProcessChronicleSource implements Chronicle {
         chronicle.multiThreaded(multiThreaded);
     }
 
+    @Override
+    public void waitStrategy(@NotNull WaitStrategy waitStrategy) {
+        chronicle.waitStrategy(waitStrategy);
+    }
+
+    @NotNull
+    @Override
+    public WaitStrategy waitStrategy() {
+        return chronicle.waitStrategy();
+    }
+
     private void pauseReset() {
         lastUnpausedNS = System.nanoTime();
     }
@@ -22,6 +22,7 @@ import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
 import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Display records in a Chronicle in a text form.
@@ -31,7 +32,7 @@ import java.nio.ByteOrder;
 public enum ChronicleReader {
     ;
 
-    public static void main(@NotNull String... args) throws IOException, InterruptedException {
+    public static void main(@NotNull String... args) throws IOException {
         if (args.length < 1) {
             System.err.println("Usage: java " + ChronicleReader.class.getName() + " {chronicle-base-path} [from-index]");
             System.exit(-1);
@@ -43,11 +44,15 @@ public enum ChronicleReader {
         long index = args.length > 1 ? Long.parseLong(args[1]) : 0L;
         IndexedChronicle ic = new IndexedChronicle(basePath, dataBitsHintSize, byteOrder);
         Excerpt excerpt = ic.createExcerpt();
+        excerpt.index(Math.min(index, ic.size()) - 1);
         //noinspection InfiniteLoopStatement
         while (true) {
-            while (!excerpt.index(index))
-                Thread.sleep(50);
-            System.out.print(index + ": ");
+            while (!excerpt.nextIndex(1, TimeUnit.SECONDS)) {
+                // waiting for the next record.
+            }
+            if (excerpt.index() < index)
+                continue;
+            System.out.print(excerpt.index() + ": ");
             int nullCount = 0;
             while (excerpt.remaining() > 0) {
                 char ch = (char) excerpt.readUnsignedByte();
@@ -68,7 +73,6 @@ public enum ChronicleReader {
             if (nullCount > 0)
                 System.out.print(" " + nullCount + "*\\0");
             System.out.println();
-            index++;
         }
     }
 }
@@ -41,7 +41,8 @@ public enum ChronicleTools {
      * @param basePath of the chronicle
      */
     public static void deleteOnExit(String basePath) {
-        for (String name : new String[]{basePath + ".data", basePath + ".index"}) {
+        for (String name : new String[]{basePath + ".data", basePath + ".index", basePath + ".header",
+                basePath + ".time", basePath + ".keys", basePath + ".ring"}) {
             File file = new File(name);
             //noinspection ResultOfMethodCallIgnored
             file.delete();
@@ -49,6 +50,39 @@ public enum ChronicleTools {
         }
     }
 
+    /**
+     * Delete a directory of chronicles, e.g. for a CycledIndexedChronicle, now and on exit, for testing
+     *
+     * @param dirPath of the chronicles
+     */
+    public static void deleteDirOnExit(String dirPath) {
+        File dir = new File(dirPath);
+        File[] files = dir.listFiles();
+        if (files != null)
+            for (File file : files) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+                file.deleteOnExit();
+            }
+        //noinspection ResultOfMethodCallIgnored
+        dir.delete();
+        dir.deleteOnExit();
+    }
+
+    /**
+     * The name of a class generated for another, in the same package.  Nested classes are flattened with '_' so the
+     * generated class is a top level one.
+     *
+     * @param binaryName of the class, as returned by Class.getName()
+     * @param suffix     of the generated class, e.g. Marshaller
+     * @return the fully qualified name of the generated class.
+     */
+    @NotNull
+    public static String generatedClassName(@NotNull String binaryName, @NotNull String suffix) {
+        int lastDot = binaryName.lastIndexOf('.');
+        return binaryName.substring(0, lastDot + 1) + binaryName.substring(lastDot + 1).replace('$', '_') + suffix;
+    }
+
     /**
      * Take a text copy of the contents of the Excerpt without changing it's position. Can be called in the debugger.
      *
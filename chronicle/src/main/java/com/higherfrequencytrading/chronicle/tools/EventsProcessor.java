@@ -0,0 +1,334 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.higherfrequencytrading.chronicle.tools;
+
+import com.higherfrequencytrading.chronicle.GenerateEvents;
+import com.higherfrequencytrading.chronicle.GenerateMarshaller;
+import org.jetbrains.annotations.NotNull;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates a writer and a dispatching reader for each interface annotated with @GenerateEvents.  It is registered as
+ * an annotation processor so javac runs it for any module with chronicle on its class path.
+ *
+ * @author peter.lawrey
+ */
+@SupportedAnnotationTypes("com.higherfrequencytrading.chronicle.GenerateEvents")
+public class EventsProcessor extends AbstractProcessor {
+    private static final String EXCERPT_MARSHALLABLE = "com.higherfrequencytrading.chronicle.ExcerptMarshallable";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, @NotNull RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(GenerateEvents.class)) {
+            if (element.getKind() != ElementKind.INTERFACE) {
+                error(element, "@GenerateEvents can only be used on an interface");
+                continue;
+            }
+            TypeElement type = (TypeElement) element;
+            if (!type.getTypeParameters().isEmpty()) {
+                error(type, "@GenerateEvents doesn't support generic interfaces");
+                continue;
+            }
+            Map<String, ExecutableElement> methods = new LinkedHashMap<String, ExecutableElement>();
+            if (!collectMethods(type, methods))
+                continue;
+            List<ExecutableElement> methodList = new ArrayList<ExecutableElement>(methods.values());
+            try {
+                generateWriter(type, methodList);
+                generateReader(type, methodList);
+            } catch (IOException e) {
+                error(element, "Unable to generate a writer and reader " + e);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The methods of super interfaces come first, and the position of each method is its id.
+     */
+    private boolean collectMethods(@NotNull TypeElement type, @NotNull Map<String, ExecutableElement> methods) {
+        boolean ok = true;
+        for (TypeMirror superInterface : type.getInterfaces())
+            ok &= collectMethods((TypeElement) ((DeclaredType) superInterface).asElement(), methods);
+        for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            if (method.getModifiers().contains(Modifier.STATIC))
+                continue;
+            if (method.getReturnType().getKind() != TypeKind.VOID || !method.getTypeParameters().isEmpty()) {
+                error(method, "@GenerateEvents needs methods which return void and aren't generic");
+                ok = false;
+                continue;
+            }
+            StringBuilder signature = new StringBuilder(method.getSimpleName());
+            for (VariableElement parameter : method.getParameters())
+                signature.append(',').append(processingEnv.getTypeUtils().erasure(parameter.asType()));
+            if (!methods.containsKey(signature.toString()))
+                methods.put(signature.toString(), method);
+        }
+        return ok;
+    }
+
+    private void generateWriter(@NotNull TypeElement type, @NotNull List<ExecutableElement> methods) throws IOException {
+        String typeName = type.getQualifiedName().toString();
+        String className = ChronicleTools.generatedClassName(
+                processingEnv.getElementUtils().getBinaryName(type).toString(), "Writer");
+        int lastDot = className.lastIndexOf('.');
+        int capacity = type.getAnnotation(GenerateEvents.class).capacity();
+        Map<String, String> marshallers = new LinkedHashMap<String, String>();
+        StringBuilder body = new StringBuilder();
+        for (int id = 0; id < methods.size(); id++) {
+            ExecutableElement method = methods.get(id);
+            List<? extends VariableElement> parameters = method.getParameters();
+            body.append("\n    public void ").append(method.getSimpleName()).append('(');
+            for (int i = 0; i < parameters.size(); i++)
+                body.append(i > 0 ? ", " : "").append(parameters.get(i).asType()).append(" a").append(i);
+            body.append(") {\n");
+            // these can't be written as null, so check before an excerpt is started.
+            for (int i = 0; i < parameters.size(); i++) {
+                TypeMirror parameterType = parameters.get(i).asType();
+                if (isMarshallable(parameterType) || isGenerated(parameterType))
+                    body.append("        if (a").append(i).append(" == null)\n            throw new NullPointerException(\"")
+                            .append(parameters.get(i).getSimpleName()).append(" cannot be null\");\n");
+            }
+            body.append(capacity > 0 ? "        excerpt.startExcerpt(CAPACITY);\n" : "        excerpt.startExcerpt();\n");
+            body.append("        excerpt.writeStopBit(").append(id).append(");\n");
+            for (int i = 0; i < parameters.size(); i++)
+                body.append("        ").append(write(parameters.get(i).asType(), "a" + i, marshallers)).append(";\n");
+            body.append("        excerpt.finish();\n    }\n");
+        }
+
+        PrintWriter out = new PrintWriter(processingEnv.getFiler().createSourceFile(className, type).openWriter());
+        try {
+            if (lastDot > 0)
+                out.println("package " + className.substring(0, lastDot) + ";\n");
+            out.println("import com.higherfrequencytrading.chronicle.Excerpt;\n");
+            out.println("/**\n * Generated by EventsProcessor from " + typeName + ", do not edit.\n */");
+            out.println("public class " + className.substring(lastDot + 1) + " implements " + typeName + " {");
+            if (capacity > 0)
+                out.println("    public static final int CAPACITY = " + capacity + ";\n");
+            out.println("    private final Excerpt excerpt;");
+            for (Map.Entry<String, String> entry : marshallers.entrySet())
+                out.println("    private final " + entry.getKey() + " " + entry.getValue() + " = new " + entry.getKey() + "();");
+            out.println();
+            out.println("    public " + className.substring(lastDot + 1) + "(Excerpt excerpt) {\n        this.excerpt = excerpt;\n    }");
+            out.print(body);
+            out.println("}");
+        } finally {
+            out.close();
+        }
+    }
+
+    private void generateReader(@NotNull TypeElement type, @NotNull List<ExecutableElement> methods) throws IOException {
+        String typeName = type.getQualifiedName().toString();
+        String className = ChronicleTools.generatedClassName(
+                processingEnv.getElementUtils().getBinaryName(type).toString(), "Reader");
+        int lastDot = className.lastIndexOf('.');
+        Map<String, String> marshallers = new LinkedHashMap<String, String>();
+        List<String> reused = new ArrayList<String>();
+        StringBuilder body = new StringBuilder();
+        for (int id = 0; id < methods.size(); id++) {
+            ExecutableElement method = methods.get(id);
+            List<? extends VariableElement> parameters = method.getParameters();
+            body.append("            case ").append(id).append(": {\n");
+            StringBuilder call = new StringBuilder();
+            for (int i = 0; i < parameters.size(); i++) {
+                TypeMirror parameterType = parameters.get(i).asType();
+                String arg = "a" + i;
+                if (isMarshallable(parameterType) || isGenerated(parameterType)) {
+                    // read into an object which is reused.
+                    arg = "reuse" + reused.size();
+                    reused.add("    private final " + parameterType + " " + arg + " = new " + parameterType + "();");
+                }
+                body.append("                ").append(read(parameterType, arg, marshallers)).append(";\n");
+                call.append(i > 0 ? ", " : "").append(arg);
+            }
+            body.append("                events.").append(method.getSimpleName()).append('(').append(call).append(");\n");
+            body.append("                break;\n            }\n");
+        }
+
+        PrintWriter out = new PrintWriter(processingEnv.getFiler().createSourceFile(className, type).openWriter());
+        try {
+            if (lastDot > 0)
+                out.println("package " + className.substring(0, lastDot) + ";\n");
+            out.println("import com.higherfrequencytrading.chronicle.Excerpt;\n");
+            out.println("/**\n * Generated by EventsProcessor from " + typeName + ", do not edit.");
+            if (!reused.isEmpty())
+                out.println(" * <p/>\n * Objects read with a marshaller are reused for every excerpt, so a listener must not keep them.");
+            out.println(" */");
+            out.println("public class " + className.substring(lastDot + 1) + " {");
+            out.println("    private final Excerpt excerpt;");
+            out.println("    private final " + typeName + " events;");
+            for (Map.Entry<String, String> entry : marshallers.entrySet())
+                out.println("    private final " + entry.getKey() + " " + entry.getValue() + " = new " + entry.getKey() + "();");
+            for (String field : reused)
+                out.println(field);
+            out.println();
+            out.println("    public " + className.substring(lastDot + 1) + "(Excerpt excerpt, " + typeName + " events) {");
+            out.println("        this.excerpt = excerpt;\n        this.events = events;\n    }\n");
+            out.println("    /**\n     * @return true if there was an excerpt to read.\n     */");
+            out.println("    public boolean readOne() {\n        if (!excerpt.nextIndex())\n            return false;");
+            out.println("        read();\n        return true;\n    }\n");
+            out.println("    /**\n     * Call the listener for the excerpt at the current index.\n     */");
+            out.println("    @SuppressWarnings(\"unchecked\")");
+            out.println("    public void read() {");
+            out.println("        int id = (int) excerpt.readStopBit();");
+            out.println("        switch (id) {");
+            out.print(body);
+            out.println("            default:");
+            out.println("                throw new IllegalStateException(\"Unknown message id \" + id + \" at index \" + excerpt.index());");
+            out.println("        }\n    }\n}");
+        } finally {
+            out.close();
+        }
+    }
+
+    @NotNull
+    private String write(@NotNull TypeMirror type, String arg, @NotNull Map<String, String> marshallers) {
+        switch (type.getKind()) {
+            case BOOLEAN:
+                return "excerpt.writeBoolean(" + arg + ")";
+            case BYTE:
+                return "excerpt.writeByte(" + arg + ")";
+            case SHORT:
+                return "excerpt.writeCompactShort(" + arg + ")";
+            case CHAR:
+            case INT:
+            case LONG:
+                return "excerpt.writeStopBit(" + arg + ")";
+            case FLOAT:
+                return "excerpt.writeFloat(" + arg + ")";
+            case DOUBLE:
+                return "excerpt.writeCompactDouble(" + arg + ")";
+        }
+        if (isString(type))
+            return "excerpt.writeEnum(" + arg + ")";
+        if (isEnum(type))
+            // a null is written as an empty name, as VanillaEnumMarshaller does.
+            return "if (" + arg + " == null) excerpt.writeUTF(\"\"); else excerpt.writeEnum(" + arg + ")";
+        if (isMarshallable(type))
+            return arg + ".writeMarshallable(excerpt)";
+        if (isGenerated(type))
+            return marshaller(type, marshallers) + ".write(excerpt, " + arg + ")";
+        return "excerpt.writeObject(" + arg + ")";
+    }
+
+    @NotNull
+    private String read(@NotNull TypeMirror type, String arg, @NotNull Map<String, String> marshallers) {
+        String declare = type + " " + arg + " = ";
+        switch (type.getKind()) {
+            case BOOLEAN:
+                return declare + "excerpt.readBoolean()";
+            case BYTE:
+                return declare + "excerpt.readByte()";
+            case SHORT:
+                return declare + "excerpt.readCompactShort()";
+            case CHAR:
+            case INT:
+                return declare + "(" + type + ") excerpt.readStopBit()";
+            case LONG:
+                return declare + "excerpt.readStopBit()";
+            case FLOAT:
+                return declare + "excerpt.readFloat()";
+            case DOUBLE:
+                return declare + "excerpt.readCompactDouble()";
+        }
+        if (isString(type) || isEnum(type))
+            return declare + "excerpt.readEnum(" + processingEnv.getTypeUtils().erasure(type) + ".class)";
+        if (isMarshallable(type))
+            return arg + ".readMarshallable(excerpt)";
+        if (isGenerated(type))
+            return marshaller(type, marshallers) + ".readInto(excerpt, " + arg + ")";
+        return declare + "(" + type + ") excerpt.readObject()";
+    }
+
+    /**
+     * @return the field holding the generated marshaller for this type, adding it if needed.
+     */
+    @NotNull
+    private String marshaller(@NotNull TypeMirror type, @NotNull Map<String, String> marshallers) {
+        TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+        String className = ChronicleTools.generatedClassName(
+                processingEnv.getElementUtils().getBinaryName(element).toString(), "Marshaller");
+        String field = marshallers.get(className);
+        if (field == null)
+            marshallers.put(className, field = "marshaller" + marshallers.size());
+        return field;
+    }
+
+    private static boolean isString(@NotNull TypeMirror type) {
+        return type.toString().equals("java.lang.String");
+    }
+
+    private static boolean isEnum(@NotNull TypeMirror type) {
+        return type.getKind() == TypeKind.DECLARED && ((DeclaredType) type).asElement().getKind() == ElementKind.ENUM;
+    }
+
+    private boolean isMarshallable(@NotNull TypeMirror type) {
+        TypeElement marshallable = processingEnv.getElementUtils().getTypeElement(EXCERPT_MARSHALLABLE);
+        return type.getKind() == TypeKind.DECLARED && marshallable != null
+                && processingEnv.getTypeUtils().isAssignable(type, marshallable.asType()) && isReusable(type);
+    }
+
+    private static boolean isGenerated(@NotNull TypeMirror type) {
+        return type.getKind() == TypeKind.DECLARED
+                && ((DeclaredType) type).asElement().getAnnotation(GenerateMarshaller.class) != null;
+    }
+
+    /**
+     * @return whether the reader can create one instance up front, otherwise it is read with readObject().
+     */
+    private static boolean isReusable(@NotNull TypeMirror type) {
+        TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+        if (element.getKind() != ElementKind.CLASS || element.getModifiers().contains(Modifier.ABSTRACT)
+                || !element.getTypeParameters().isEmpty())
+            return false;
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(element.getEnclosedElements()))
+            if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE))
+                return true;
+        return false;
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
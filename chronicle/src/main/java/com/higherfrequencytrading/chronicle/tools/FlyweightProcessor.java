@@ -0,0 +1,280 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.higherfrequencytrading.chronicle.tools;
+
+import com.higherfrequencytrading.chronicle.GenerateFlyweight;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates a flyweight for each interface annotated with @GenerateFlyweight.  It is registered as an annotation
+ * processor so javac runs it for any module with chronicle on its class path.
+ *
+ * @author peter.lawrey
+ */
+@SupportedAnnotationTypes("com.higherfrequencytrading.chronicle.GenerateFlyweight")
+public class FlyweightProcessor extends AbstractProcessor {
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, @NotNull RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(GenerateFlyweight.class)) {
+            if (element.getKind() != ElementKind.INTERFACE) {
+                error(element, "@GenerateFlyweight can only be used on an interface");
+                continue;
+            }
+            try {
+                generate((TypeElement) element);
+            } catch (IOException e) {
+                error(element, "Unable to generate a flyweight " + e);
+            }
+        }
+        return true;
+    }
+
+    private void generate(@NotNull TypeElement type) throws IOException {
+        if (!type.getTypeParameters().isEmpty()) {
+            error(type, "@GenerateFlyweight doesn't support generic interfaces");
+            return;
+        }
+        Map<String, Property> properties = new LinkedHashMap<String, Property>();
+        if (!collectProperties(type, properties))
+            return;
+
+        String typeName = type.getQualifiedName().toString();
+        String className = ChronicleTools.generatedClassName(
+                processingEnv.getElementUtils().getBinaryName(type).toString(), "Flyweight");
+        int lastDot = className.lastIndexOf('.');
+        String simpleName = className.substring(lastDot + 1);
+        PrintWriter out = new PrintWriter(processingEnv.getFiler().createSourceFile(className, type).openWriter());
+        try {
+            if (lastDot > 0)
+                out.println("package " + className.substring(0, lastDot) + ";\n");
+            out.println("import com.higherfrequencytrading.chronicle.Excerpt;\n");
+            out.println("/**\n * Generated by FlyweightProcessor from " + typeName + ", do not edit.\n */");
+            out.println("public class " + simpleName + " implements " + typeName + " {");
+            // largest first so every property is aligned to its size, provided the flyweight is bound at an offset
+            // aligned to the largest.
+            int offset = 0, align = 1;
+            for (int size = 8; size >= 1; size >>= 1) {
+                for (Property property : properties.values()) {
+                    if (property.size() != size)
+                        continue;
+                    out.println("    public static final int " + property.offsetName() + " = " + offset + ";");
+                    offset += size;
+                    align = Math.max(align, size);
+                }
+            }
+            out.println("    public static final int SIZE = " + ((offset + align - 1) & -align) + ";\n");
+            out.println("    private Excerpt excerpt;");
+            out.println("    private int offset;\n");
+
+            out.println("    public " + simpleName + " bind(Excerpt excerpt) {\n        return bind(excerpt, 0);\n    }\n");
+            out.println("    /**\n     * View the excerpt from this offset without copying it.\n     */");
+            out.println("    public " + simpleName + " bind(Excerpt excerpt, int offset) {");
+            out.println("        this.excerpt = excerpt;\n        this.offset = offset;\n        return this;\n    }\n");
+            out.println("    /**\n     * Start an excerpt of SIZE bytes, all of which will be written when it is finished, and bind to it.\n     */");
+            out.println("    public " + simpleName + " startExcerpt(Excerpt excerpt) {");
+            out.println("        excerpt.startExcerpt(SIZE);\n        excerpt.position(SIZE);\n        return bind(excerpt, 0);\n    }\n");
+            out.println("    public Excerpt excerpt() {\n        return excerpt;\n    }\n");
+            out.println("    public int offset() {\n        return offset;\n    }");
+
+            for (Property property : properties.values()) {
+                String at = "offset + " + property.offsetName();
+                if (property.getter != null) {
+                    out.println("\n    public " + property.type + " " + property.getter + "() {");
+                    out.println("        return excerpt." + property.read(at) + ";\n    }");
+                }
+                if (property.setter != null) {
+                    out.println("\n    public void " + property.setter + "(" + property.type + " v) {");
+                    out.println("        excerpt." + property.write(at) + ";\n    }");
+                }
+            }
+            out.println("}");
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * The properties of super interfaces come first.
+     */
+    private boolean collectProperties(@NotNull TypeElement type, @NotNull Map<String, Property> properties) {
+        boolean ok = true;
+        for (TypeMirror superInterface : type.getInterfaces())
+            ok &= collectProperties((TypeElement) ((DeclaredType) superInterface).asElement(), properties);
+        for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            if (method.getModifiers().contains(Modifier.STATIC))
+                continue;
+            String name = method.getSimpleName().toString();
+            TypeMirror propertyType;
+            String propertyName;
+            if (method.getParameters().isEmpty() && method.getReturnType().getKind() != TypeKind.VOID) {
+                propertyType = method.getReturnType();
+                propertyName = propertyName(name, propertyType.getKind() == TypeKind.BOOLEAN ? "is" : "get");
+                if (propertyName == null)
+                    propertyName = propertyName(name, "get");
+            } else if (method.getParameters().size() == 1 && method.getReturnType().getKind() == TypeKind.VOID) {
+                propertyType = method.getParameters().get(0).asType();
+                propertyName = propertyName(name, "set");
+            } else {
+                error(method, "@GenerateFlyweight only supports getters and setters");
+                ok = false;
+                continue;
+            }
+            if (propertyName == null || !propertyType.getKind().isPrimitive()) {
+                error(method, "@GenerateFlyweight only supports getters and setters of primitives");
+                ok = false;
+                continue;
+            }
+            Property property = properties.get(propertyName);
+            if (property == null)
+                properties.put(propertyName, property = new Property(propertyName, propertyType));
+            else if (!processingEnv.getTypeUtils().isSameType(property.type, propertyType)) {
+                error(method, "@GenerateFlyweight property " + propertyName + " is also a " + property.type);
+                ok = false;
+                continue;
+            }
+            if (method.getParameters().isEmpty())
+                property.getter = name;
+            else
+                property.setter = name;
+        }
+        return ok;
+    }
+
+    @Nullable
+    private static String propertyName(@NotNull String methodName, @NotNull String prefix) {
+        if (methodName.length() <= prefix.length() || !methodName.startsWith(prefix)
+                || !Character.isUpperCase(methodName.charAt(prefix.length())))
+            return null;
+        return methodName.substring(prefix.length());
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    /**
+     * A primitive at a fixed offset.
+     */
+    static class Property {
+        private final String name;
+        private final TypeMirror type;
+        @Nullable
+        String getter;
+        @Nullable
+        String setter;
+
+        Property(String name, TypeMirror type) {
+            this.name = name;
+            this.type = type;
+        }
+
+        String offsetName() {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < name.length(); i++) {
+                char ch = name.charAt(i);
+                if (i > 0 && Character.isUpperCase(ch) && Character.isLowerCase(name.charAt(i - 1)))
+                    sb.append('_');
+                sb.append(Character.toUpperCase(ch));
+            }
+            return sb.append("_OFFSET").toString();
+        }
+
+        int size() {
+            switch (type.getKind()) {
+                case BOOLEAN:
+                case BYTE:
+                    return 1;
+                case SHORT:
+                case CHAR:
+                    return 2;
+                case INT:
+                case FLOAT:
+                    return 4;
+                default:
+                    return 8;
+            }
+        }
+
+        String read(String at) {
+            switch (type.getKind()) {
+                case BOOLEAN:
+                    return "readBoolean(" + at + ")";
+                case BYTE:
+                    return "readByte(" + at + ")";
+                case SHORT:
+                    return "readShort(" + at + ")";
+                case CHAR:
+                    return "readChar(" + at + ")";
+                case INT:
+                    return "readInt(" + at + ")";
+                case FLOAT:
+                    return "readFloat(" + at + ")";
+                case LONG:
+                    return "readLong(" + at + ")";
+                default:
+                    return "readDouble(" + at + ")";
+            }
+        }
+
+        String write(String at) {
+            switch (type.getKind()) {
+                case BOOLEAN:
+                    return "writeBoolean(" + at + ", v)";
+                case BYTE:
+                    return "write(" + at + ", v)";
+                case SHORT:
+                    return "writeShort(" + at + ", v)";
+                case CHAR:
+                    return "writeChar(" + at + ", v)";
+                case INT:
+                    return "writeInt(" + at + ", v)";
+                case FLOAT:
+                    return "writeFloat(" + at + ", v)";
+                case LONG:
+                    return "writeLong(" + at + ", v)";
+                default:
+                    return "writeDouble(" + at + ", v)";
+            }
+        }
+    }
+}
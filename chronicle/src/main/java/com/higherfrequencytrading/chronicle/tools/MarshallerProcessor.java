@@ -0,0 +1,276 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.higherfrequencytrading.chronicle.tools;
+
+import com.higherfrequencytrading.chronicle.GenerateMarshaller;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Generates an EnumeratedMarshaller for each class annotated with @GenerateMarshaller.  It is registered as an
+ * annotation processor so javac runs it for any module with chronicle on its class path.
+ *
+ * @author peter.lawrey
+ */
+@SupportedAnnotationTypes("com.higherfrequencytrading.chronicle.GenerateMarshaller")
+public class MarshallerProcessor extends AbstractProcessor {
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, @NotNull RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(GenerateMarshaller.class)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                error(element, "@GenerateMarshaller can only be used on a class");
+                continue;
+            }
+            try {
+                generate((TypeElement) element);
+            } catch (IOException e) {
+                error(element, "Unable to generate a marshaller " + e);
+            }
+        }
+        return true;
+    }
+
+    private void generate(@NotNull TypeElement type) throws IOException {
+        if (!check(type))
+            return;
+        List<Field> fields = new ArrayList<Field>();
+        if (!collectFields(type, fields))
+            return;
+
+        String typeName = type.getQualifiedName().toString();
+        String className = ChronicleTools.generatedClassName(
+                processingEnv.getElementUtils().getBinaryName(type).toString(), "Marshaller");
+        int lastDot = className.lastIndexOf('.');
+        PrintWriter out = new PrintWriter(processingEnv.getFiler().createSourceFile(className, type).openWriter());
+        try {
+            if (lastDot > 0)
+                out.println("package " + className.substring(0, lastDot) + ";\n");
+            out.println("import com.higherfrequencytrading.chronicle.EnumeratedMarshaller;");
+            out.println("import com.higherfrequencytrading.chronicle.Excerpt;");
+            out.println("import com.higherfrequencytrading.chronicle.StopCharTester;\n");
+            out.println("/**\n * Generated by MarshallerProcessor from " + typeName + ", do not edit.\n */");
+            out.println("public class " + className.substring(lastDot + 1) + " implements EnumeratedMarshaller<" + typeName + "> {");
+            out.println("    public Class<" + typeName + "> classMarshaled() {\n        return " + typeName + ".class;\n    }\n");
+
+            out.println("    public void write(Excerpt out, " + typeName + " e) {");
+            for (Field field : fields)
+                out.println("        " + field.write() + ";");
+            out.println("    }\n");
+
+            out.println("    public " + typeName + " read(Excerpt in) {");
+            out.println("        " + typeName + " e = new " + typeName + "();");
+            out.println("        readInto(in, e);");
+            out.println("        return e;\n    }\n");
+
+            out.println("    /**\n     * Read into an existing object, so only fields which are objects are created.\n     */");
+            out.println("    @SuppressWarnings(\"unchecked\")");
+            out.println("    public void readInto(Excerpt in, " + typeName + " e) {");
+            for (Field field : fields)
+                out.println("        " + field.read() + ";");
+            out.println("    }\n");
+
+            out.println("    public " + typeName + " parse(Excerpt in, StopCharTester tester) {\n        return read(in);\n    }");
+            out.println("}");
+        } finally {
+            out.close();
+        }
+    }
+
+    private boolean check(@NotNull TypeElement type) {
+        Set<Modifier> modifiers = type.getModifiers();
+        if (modifiers.contains(Modifier.ABSTRACT) || modifiers.contains(Modifier.PRIVATE)) {
+            error(type, "@GenerateMarshaller needs a class which isn't abstract or private");
+            return false;
+        }
+        if (type.getNestingKind().isNested() && !modifiers.contains(Modifier.STATIC)) {
+            error(type, "@GenerateMarshaller needs a nested class to be static");
+            return false;
+        }
+        if (!type.getTypeParameters().isEmpty()) {
+            error(type, "@GenerateMarshaller doesn't support generic classes");
+            return false;
+        }
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements()))
+            if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE))
+                return true;
+        error(type, "@GenerateMarshaller needs a constructor without arguments");
+        return false;
+    }
+
+    /**
+     * The fields of super classes come first.
+     */
+    private boolean collectFields(@NotNull TypeElement type, @NotNull List<Field> fields) {
+        TypeMirror superclass = type.getSuperclass();
+        if (superclass.getKind() == TypeKind.DECLARED) {
+            TypeElement superType = (TypeElement) ((DeclaredType) superclass).asElement();
+            if (!superType.getQualifiedName().contentEquals("java.lang.Object") && !collectFields(superType, fields))
+                return false;
+        }
+        boolean ok = true;
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            Set<Modifier> modifiers = field.getModifiers();
+            if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT))
+                continue;
+            if (modifiers.contains(Modifier.FINAL)) {
+                error(field, "@GenerateMarshaller cannot set a final field");
+                ok = false;
+                continue;
+            }
+            String name = field.getSimpleName().toString();
+            String getter = null, setter = null;
+            if (modifiers.contains(Modifier.PRIVATE)) {
+                String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+                getter = findMethod(type, 0, "get" + capitalized, "is" + capitalized);
+                setter = findMethod(type, 1, "set" + capitalized);
+                if (getter == null || setter == null) {
+                    error(field, "@GenerateMarshaller needs a private field to have a getter and setter");
+                    ok = false;
+                    continue;
+                }
+            }
+            fields.add(new Field(field.asType(), name, getter, setter));
+        }
+        return ok;
+    }
+
+    @Nullable
+    private static String findMethod(@NotNull TypeElement type, int parameters, @NotNull String... names) {
+        for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            if (method.getParameters().size() != parameters || method.getModifiers().contains(Modifier.PRIVATE))
+                continue;
+            for (String name : names)
+                if (method.getSimpleName().contentEquals(name))
+                    return name;
+        }
+        return null;
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    /**
+     * How a field is accessed and encoded.
+     */
+    class Field {
+        private final TypeMirror type;
+        private final String name;
+        @Nullable
+        private final String getter;
+        @Nullable
+        private final String setter;
+
+        Field(TypeMirror type, String name, @Nullable String getter, @Nullable String setter) {
+            this.type = type;
+            this.name = name;
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        String get() {
+            return getter == null ? "e." + name : "e." + getter + "()";
+        }
+
+        String set(String value) {
+            return setter == null ? "e." + name + " = " + value : "e." + setter + "(" + value + ")";
+        }
+
+        String write() {
+            switch (type.getKind()) {
+                case BOOLEAN:
+                    return "out.writeBoolean(" + get() + ")";
+                case BYTE:
+                    return "out.writeByte(" + get() + ")";
+                case SHORT:
+                    return "out.writeCompactShort(" + get() + ")";
+                case CHAR:
+                case INT:
+                case LONG:
+                    return "out.writeStopBit(" + get() + ")";
+                case FLOAT:
+                    return "out.writeFloat(" + get() + ")";
+                case DOUBLE:
+                    return "out.writeCompactDouble(" + get() + ")";
+            }
+            if (isString())
+                return "out.writeEnum(" + get() + ")";
+            if (isEnum())
+                // a null is written as an empty name, as VanillaEnumMarshaller does.
+                return "if (" + get() + " == null) out.writeUTF(\"\"); else out.writeEnum(" + get() + ")";
+            return "out.writeObject(" + get() + ")";
+        }
+
+        String read() {
+            switch (type.getKind()) {
+                case BOOLEAN:
+                    return set("in.readBoolean()");
+                case BYTE:
+                    return set("in.readByte()");
+                case SHORT:
+                    return set("in.readCompactShort()");
+                case CHAR:
+                case INT:
+                    return set("(" + type + ") in.readStopBit()");
+                case LONG:
+                    return set("in.readStopBit()");
+                case FLOAT:
+                    return set("in.readFloat()");
+                case DOUBLE:
+                    return set("in.readCompactDouble()");
+            }
+            String erasure = processingEnv.getTypeUtils().erasure(type).toString();
+            if (isString() || isEnum())
+                return set("in.readEnum(" + erasure + ".class)");
+            return set("(" + type + ") in.readObject()");
+        }
+
+        private boolean isString() {
+            return type.toString().equals("java.lang.String");
+        }
+
+        private boolean isEnum() {
+            return type.getKind() == TypeKind.DECLARED && ((DeclaredType) type).asElement().getKind() == ElementKind.ENUM;
+        }
+    }
+}
@@ -3,8 +3,8 @@ package com.higherfrequencytrading.chronicle.examples;
 import com.higherfrequencytrading.chronicle.Chronicle;
 import com.higherfrequencytrading.chronicle.Excerpt;
 import com.higherfrequencytrading.chronicle.impl.IndexedChronicle;
+import com.higherfrequencytrading.chronicle.impl.KeyIndex;
 import com.higherfrequencytrading.chronicle.tools.ChronicleTools;
-import gnu.trove.map.hash.TObjectLongHashMap;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
@@ -24,43 +24,44 @@ public class ExampleKeyedExcerptMain {
     private final Chronicle chronicle;
     @NotNull
     private final Excerpt excerpt;
-    private final TObjectLongHashMap<String> keyToExcerpt = new TObjectLongHashMap<String>() {
-        @Override
-        public long getNoEntryValue() {
-            return -1;
-        }
-    };
+    @NotNull
+    private final KeyIndex keyIndex;
 
     public ExampleKeyedExcerptMain(String basePath) throws IOException {
         chronicle = new IndexedChronicle(basePath);
         excerpt = chronicle.createExcerpt();
+        keyIndex = new KeyIndex(basePath);
     }
 
     public void load() {
+        // only the excerpts written since the key index was last updated need to be read.
+        excerpt.index(keyIndex.indexedTo() - 1);
         while (excerpt.nextIndex()) {
             String key = excerpt.readUTF();
-            keyToExcerpt.put(key, excerpt.index());
+            keyIndex.put(KeyIndex.hashOf(key), excerpt.index());
         }
     }
 
     public void putMapFor(String key, Map<String, String> map) {
-        excerpt.startExcerpt(4096); // a guess
+        excerpt.startExcerpt();
         excerpt.writeUTF(key);
         excerpt.writeMap(map);
         excerpt.finish();
+        keyIndex.put(KeyIndex.hashOf(key), excerpt.index());
     }
 
     public Map<String, String> getMapFor(String key) {
 
-        long value = keyToExcerpt.get(key);
+        long value = keyIndex.get(KeyIndex.hashOf(key));
         if (value < 0) return Collections.emptyMap();
         excerpt.index(value);
-        // skip the key
-        excerpt.skip(excerpt.readStopBit());
+        // another key with the same hash could have replaced it.
+        if (!key.equals(excerpt.readUTF())) return Collections.emptyMap();
         return excerpt.readMap(String.class, String.class);
     }
 
     public void close() {
+        keyIndex.close();
         chronicle.close();
     }
 
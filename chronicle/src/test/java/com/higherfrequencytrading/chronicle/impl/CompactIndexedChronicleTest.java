@@ -0,0 +1,143 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.higherfrequencytrading.chronicle.impl;
+
+import com.higherfrequencytrading.chronicle.Excerpt;
+import com.higherfrequencytrading.chronicle.tools.ChronicleTools;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.*;
+
+/**
+ * @author peter.lawrey
+ */
+public class CompactIndexedChronicleTest {
+    @Test
+    public void smallExcerpts() throws IOException {
+        for (boolean shortDeltas : new boolean[]{false, true})
+            for (boolean useUnsafe : new boolean[]{false, true})
+                doSmallExcerpts(shortDeltas, useUnsafe);
+    }
+
+    private static void doSmallExcerpts(boolean shortDeltas, boolean useUnsafe) throws IOException {
+        String basePath = IndexedChronicleTest.TMP + File.separator + "compact-" + shortDeltas + "-" + useUnsafe + ".cict";
+        ChronicleTools.deleteOnExit(basePath);
+        IndexedChronicle tsc = ChronicleBuilder.newCompactIndexedChronicleBuilder(basePath)
+                .shortDeltas(shortDeltas).dataBitSizeHint(16).dataOverlap(4096).useUnsafe(useUnsafe).build();
+        Excerpt excerpt = tsc.createExcerpt();
+        int count = 20000;
+        for (int i = 0; i < count; i++) {
+            // the second half in batches so some block bases are held back.
+            if (i >= count / 2 && i % 100 == 0)
+                excerpt.startBatch();
+            excerpt.startExcerpt(64);
+            int longs = 4 + i % 4;
+            for (int j = 0; j < longs; j++)
+                excerpt.writeLong(i * 10L + j + 1);
+            excerpt.finish();
+            if (i >= count / 2 && i % 100 == 99)
+                excerpt.commitBatch();
+        }
+        assertEquals(count, tsc.size());
+        // 29 or 15 entries per 64 bytes, rounded up to a whole index segment.
+        long indexSize = new File(basePath + ".index").length();
+        assertTrue("indexSize=" + indexSize, indexSize <= count * (shortDeltas ? 3L : 5L) + 4096);
+        tsc.close();
+
+        // recover the size without the header.
+        assertTrue(new File(basePath + ".header").delete());
+        tsc = shortDeltas ? new ShortCompactIndexedChronicle(basePath, 16) : new CompactIndexedChronicle(basePath, 16);
+        tsc.useUnsafe(useUnsafe);
+        // the overlap was in the header too.
+        tsc.dataOverlap(4096);
+        assertEquals(count, tsc.size());
+        Excerpt reader = tsc.createExcerpt();
+        for (int i = count - 1; i >= 0; i -= 7) {
+            assertTrue(reader.index(i));
+            int longs = 4 + i % 4;
+            assertEquals(longs * 8, reader.remaining());
+            for (int j = 0; j < longs; j++)
+                assertEquals(i * 10L + j + 1, reader.readLong());
+            reader.finish();
+        }
+        assertFalse(reader.index(count));
+        tsc.close();
+    }
+
+    @Test
+    public void batchPublishesBasesThenFirstEntryLast() throws IOException {
+        String basePath = IndexedChronicleTest.TMP + File.separator + "compact-batch.cict";
+        ChronicleTools.deleteOnExit(basePath);
+        final List<Long> written = new ArrayList<Long>();
+        IndexedChronicle tsc = new CompactIndexedChronicle(basePath, 16) {
+            @Override
+            public void setIndexData(long indexId, long indexData) {
+                super.setIndexData(indexId, indexData);
+                written.add(indexId);
+            }
+        };
+        Excerpt excerpt = tsc.createExcerpt();
+        for (int i = 0; i < 43; i++) {
+            if (i == 3)
+                excerpt.startBatch();
+            excerpt.startExcerpt(16);
+            excerpt.writeLong(i + 1);
+            excerpt.finish();
+        }
+        written.clear();
+        excerpt.commitBatch();
+        assertEquals(43, tsc.size());
+        // 15 entries per block, so 15 and 30 are bases, and entry 4 ends the first excerpt of the batch.
+        assertEquals(Long.valueOf(15), written.get(0));
+        assertEquals(Long.valueOf(30), written.get(1));
+        assertEquals(Long.valueOf(43), written.get(2));
+        assertEquals(Long.valueOf(4), written.get(written.size() - 1));
+        Excerpt reader = tsc.createExcerpt();
+        for (int i = 0; i < 43; i++) {
+            assertTrue(reader.index(i));
+            assertEquals(i + 1, reader.readLong());
+            reader.finish();
+        }
+        tsc.close();
+    }
+
+    @Test
+    public void deltaTooLarge() throws IOException {
+        String basePath = IndexedChronicleTest.TMP + File.separator + "compact-too-large.cict";
+        ChronicleTools.deleteOnExit(basePath);
+        IndexedChronicle tsc = new ShortCompactIndexedChronicle(basePath, 16);
+        Excerpt excerpt = tsc.createExcerpt();
+        try {
+            for (int i = 0; i < 29; i++) {
+                excerpt.startExcerpt(4096);
+                excerpt.writeLong(i + 1);
+                excerpt.position(4096);
+                excerpt.finish();
+            }
+            fail();
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+        tsc.close();
+    }
+}
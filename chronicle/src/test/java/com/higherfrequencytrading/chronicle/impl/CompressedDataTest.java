@@ -0,0 +1,64 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.higherfrequencytrading.chronicle.impl;
+
+import com.higherfrequencytrading.chronicle.tools.ChronicleTools;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author peter.lawrey
+ */
+public class CompressedDataTest {
+    static final String TMP = System.getProperty("java.io.tmpdir");
+
+    @Test
+    public void evictedSegmentsAreFreedOnceReleased() throws IOException {
+        String basePath = TMP + File.separator + "deleteme.cdt";
+        ChronicleTools.deleteOnExit(basePath);
+        new File(basePath + ".cdata").deleteOnExit();
+        int segmentBits = 16, segments = 10;
+        RandomAccessFile raf = new RandomAccessFile(basePath + ".data", "rw");
+        for (int i = 0; i < (segments << segmentBits) / 8; i++)
+            raf.writeLong(i);
+        raf.close();
+        CompressedData.compress(basePath + ".data", segments << segmentBits, basePath + ".cdata");
+
+        CompressedData data = new CompressedData(basePath + ".cdata", ByteOrder.BIG_ENDIAN);
+        ByteBuffer held = data.acquire(0, segmentBits, 8);
+        for (int id = 1; id < segments; id++) {
+            ByteBuffer bb = data.acquire(id, segmentBits, 8);
+            assertEquals((long) id << segmentBits - 3, bb.getLong(0));
+            data.release(bb);
+        }
+        // the segment in use is kept, as well as those cached.
+        assertEquals(CompressedData.CACHED_SEGMENTS + 1, data.decompressed());
+        assertEquals(1, held.getLong(8));
+        assertEquals(1 << segmentBits - 3, held.getLong(1 << segmentBits));
+        data.release(held);
+        assertEquals(CompressedData.CACHED_SEGMENTS, data.decompressed());
+        data.close();
+        assertEquals(0, data.decompressed());
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.higherfrequencytrading.chronicle.impl;
+
+import com.higherfrequencytrading.chronicle.Excerpt;
+import com.higherfrequencytrading.chronicle.tools.ChronicleTools;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author peter.lawrey
+ */
+public class CycledIndexedChronicleTest {
+    static final String TMP = System.getProperty("java.io.tmpdir");
+
+    @Test
+    public void rollsBySize() throws IOException {
+        String basePath = TMP + File.separator + "cycled-by-size";
+        ChronicleTools.deleteDirOnExit(basePath);
+        CycledIndexedChronicle chronicle = ChronicleBuilder.newCycledIndexedChronicleBuilder(basePath)
+                .cycleSize(64 * 1024).dataBitSizeHint(16).build();
+        Excerpt excerpt = chronicle.createExcerpt();
+        int count = 10000;
+        for (int i = 0; i < count; i++) {
+            excerpt.startExcerpt(32);
+            excerpt.writeLong(i + 1);
+            excerpt.writeLong(~i);
+            excerpt.finish();
+        }
+        int cycles = chronicle.listCycles().length;
+        assertTrue("cycles=" + cycles, cycles > 1);
+        chronicle.close();
+
+        // only the last cycle is opened on restart and appending continues there.
+        chronicle = ChronicleBuilder.newCycledIndexedChronicleBuilder(basePath)
+                .cycleSize(64 * 1024).dataBitSizeHint(16).build();
+        long lastIndex = chronicle.size() - 1;
+        assertEquals(cycles - 1, CycledIndexedChronicle.cycleOf(lastIndex));
+        Excerpt appender = chronicle.createExcerpt();
+        appender.startExcerpt(16);
+        appender.writeLong(count + 1);
+        appender.writeLong(~count);
+        appender.finish();
+        assertEquals(lastIndex + 1, appender.index());
+
+        Excerpt reader = chronicle.createExcerpt();
+        reader.toStart();
+        long prevIndex = -1;
+        for (int i = 0; i <= count; i++) {
+            assertTrue(reader.nextIndex());
+            assertTrue(reader.index() > prevIndex);
+            prevIndex = reader.index();
+            assertEquals(i + 1, reader.readLong());
+            assertEquals(~i, reader.readLong());
+            reader.finish();
+        }
+        assertFalse(reader.nextIndex());
+
+        // random access across cycles.
+        Excerpt random = chronicle.createExcerpt();
+        assertTrue(random.index(CycledIndexedChronicle.indexFor(1, 0)));
+        long first = random.readLong();
+        assertTrue(random.index(CycledIndexedChronicle.indexFor(0, 0)));
+        assertEquals(1, random.readLong());
+        assertTrue(random.index(CycledIndexedChronicle.indexFor(1, 1)));
+        assertEquals(first + 1, random.readLong());
+        assertFalse(random.index(CycledIndexedChronicle.indexFor(cycles + 1, 0)));
+        chronicle.close();
+    }
+
+    @Test
+    public void indexBeforeStartOfCycle() throws IOException {
+        String basePath = TMP + File.separator + "cycled-before-start";
+        ChronicleTools.deleteDirOnExit(basePath);
+        CycledIndexedChronicle chronicle = ChronicleBuilder.newCycledIndexedChronicleBuilder(basePath)
+                .cycleSize(16 * 1024).dataBitSizeHint(16).build();
+        Excerpt excerpt = chronicle.createExcerpt();
+        for (int i = 0; i < 10000; i++) {
+            excerpt.startExcerpt(32);
+            excerpt.writeLong(i + 1);
+            excerpt.finish();
+        }
+        int[] cycles = chronicle.listCycles();
+        assertTrue("cycles=" + cycles.length, cycles.length > 2);
+        chronicle.retainCycles(2);
+        int first = cycles[cycles.length - 2];
+
+        Excerpt reader = chronicle.createExcerpt();
+        reader.toStart();
+        long beforeStart = reader.index();
+        assertEquals(CycledIndexedChronicle.indexFor(first, 0) - 1, beforeStart);
+        assertTrue(reader.nextIndex());
+        long firstValue = reader.readLong();
+        reader.finish();
+
+        // round trip from another excerpt positioned elsewhere.
+        Excerpt other = chronicle.createExcerpt();
+        assertTrue(other.index(CycledIndexedChronicle.indexFor(cycles[cycles.length - 1], 0)));
+        assertTrue(other.index(beforeStart));
+        assertEquals(beforeStart, other.index());
+        assertTrue(other.nextIndex());
+        assertEquals(CycledIndexedChronicle.indexFor(first, 0), other.index());
+        assertEquals(firstValue, other.readLong());
+        chronicle.close();
+    }
+
+    @Test
+    public void retention() throws IOException {
+        String basePath = TMP + File.separator + "cycled-retention";
+        ChronicleTools.deleteDirOnExit(basePath);
+        CycledIndexedChronicle chronicle = ChronicleBuilder.newCycledIndexedChronicleBuilder(basePath)
+                .cycleSize(16 * 1024).dataBitSizeHint(16).build();
+        Excerpt excerpt = chronicle.createExcerpt();
+        for (int i = 0; i < 10000; i++) {
+            excerpt.startExcerpt(32);
+            excerpt.writeLong(i + 1);
+            excerpt.finish();
+        }
+        int[] cycles = chronicle.listCycles();
+        assertTrue("cycles=" + cycles.length, cycles.length > 3);
+
+        assertEquals(cycles.length - 3, chronicle.retainCycles(3));
+        assertEquals(3, chronicle.listCycles().length);
+        Excerpt reader = chronicle.createExcerpt();
+        reader.toStart();
+        assertTrue(reader.nextIndex());
+        assertEquals(cycles[cycles.length - 3], CycledIndexedChronicle.cycleOf(reader.index()));
+
+        // a cycle being read isn't deleted, nor is the last one.
+        assertEquals(1, chronicle.retainBytes(0));
+        assertEquals(2, chronicle.listCycles().length);
+        reader.toEnd();
+        assertEquals(1, chronicle.retainBytes(0));
+        assertEquals(1, chronicle.listCycles().length);
+        assertEquals(cycles[cycles.length - 1], chronicle.listCycles()[0]);
+        chronicle.close();
+    }
+
+    @Test
+    public void compressSealedCycles() throws IOException {
+        for (boolean useUnsafe : new boolean[]{false, true}) {
+            String basePath = TMP + File.separator + "cycled-compressed-" + useUnsafe;
+            ChronicleTools.deleteDirOnExit(basePath);
+            // excerpts can span the 4 KB data segments.
+            CycledIndexedChronicle chronicle = ChronicleBuilder.newCycledIndexedChronicleBuilder(basePath)
+                    .cycleSize(256 * 1024).dataBitSizeHint(12).dataOverlap(1024).useUnsafe(useUnsafe).build();
+            Excerpt excerpt = chronicle.createExcerpt();
+            int count = 20000;
+            for (int i = 0; i < count; i++) {
+                excerpt.startExcerpt(72);
+                excerpt.writeLong(i + 1);
+                excerpt.writeEnum("EURUSD");
+                excerpt.writeDouble(1.3 + i % 100 / 1e4);
+                excerpt.writeLong(1000000);
+                excerpt.finish();
+            }
+            int[] cycles = chronicle.listCycles();
+            assertTrue("cycles=" + cycles.length, cycles.length > 2);
+            long before = chronicle.sizeInBytes();
+            for (int cycle : cycles)
+                assertEquals(cycle < cycles[cycles.length - 1], chronicle.compressCycle(cycle));
+            assertFalse(new File(basePath, String.format("%06d.data", cycles[0])).exists());
+            long after = chronicle.sizeInBytes();
+            assertTrue("before=" + before + ", after=" + after, after < before / 2);
+
+            Excerpt reader = chronicle.createExcerpt();
+            reader.toStart();
+            for (int i = 0; i < count; i++) {
+                assertTrue(reader.nextIndex());
+                assertEquals(i + 1, reader.readLong());
+                assertEquals("EURUSD", reader.readEnum(String.class));
+                assertEquals(1.3 + i % 100 / 1e4, reader.readDouble(), 0.0);
+                assertEquals(1000000, reader.readLong());
+                reader.finish();
+            }
+            assertFalse(reader.nextIndex());
+            chronicle.close();
+        }
+    }
+
+    @Test
+    public void cycleNames() {
+        long time = 1370000000000L; // 2013/05/31 11:33:20 GMT
+        int hour = CycleLength.HOURLY.cycleFor(time);
+        assertEquals("20130531-11", CycleLength.HOURLY.newDateFormat().format(CycleLength.HOURLY.startOf(hour)));
+        int day = CycleLength.DAILY.cycleFor(time);
+        assertEquals("20130531", CycleLength.DAILY.newDateFormat().format(CycleLength.DAILY.startOf(day)));
+    }
+}
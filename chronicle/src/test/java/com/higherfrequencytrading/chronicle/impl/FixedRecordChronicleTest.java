@@ -0,0 +1,107 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.higherfrequencytrading.chronicle.impl;
+
+import com.higherfrequencytrading.chronicle.Excerpt;
+import com.higherfrequencytrading.chronicle.tools.ChronicleTools;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static junit.framework.Assert.*;
+
+/**
+ * @author peter.lawrey
+ */
+public class FixedRecordChronicleTest {
+    @Test
+    public void randomAccess() throws IOException {
+        for (boolean useUnsafe : new boolean[]{false, true}) {
+            String basePath = IndexedChronicleTest.TMP + File.separator + "fixed-record-" + useUnsafe;
+            ChronicleTools.deleteOnExit(basePath);
+            // 100 byte records in 4 KB segments, so some records span the end of a segment.
+            FixedRecordChronicle chronicle = new FixedRecordChronicle(basePath, 100, 12);
+            chronicle.useUnsafe(useUnsafe);
+            Excerpt writer = chronicle.createExcerpt();
+            int count = 10000;
+            for (int i = 0; i < count; i++) {
+                writer.startExcerpt(100);
+                writer.writeLong(i + 1);
+                for (int j = 0; j < i % 12; j++)
+                    writer.writeLong(i);
+                writer.finish();
+                assertEquals(i, writer.index());
+            }
+            assertEquals(count, chronicle.size());
+            assertFalse(new File(basePath + ".index").exists());
+
+            Excerpt reader = chronicle.createExcerpt();
+            for (int i = count - 1; i >= 0; i -= 7) {
+                assertTrue(reader.index(i));
+                assertEquals(8 + 8 * (i % 12), reader.remaining());
+                assertEquals(i + 1, reader.readLong());
+                for (int j = 0; j < i % 12; j++)
+                    assertEquals(i, reader.readLong());
+                reader.finish();
+            }
+            assertFalse(reader.index(count));
+            assertTrue(reader.index(-1));
+            assertEquals(count, reader.size());
+            chronicle.close();
+
+            // the size is found from the header words.
+            chronicle = new FixedRecordChronicle(basePath, 100, 12);
+            assertEquals(count, chronicle.size());
+            reader = chronicle.createExcerpt();
+            assertTrue(reader.index(count - 1));
+            assertEquals(count, reader.readLong());
+            reader.finish();
+            chronicle.close();
+        }
+    }
+
+    @Test
+    public void batchIsCommittedTogether() throws IOException {
+        String basePath = IndexedChronicleTest.TMP + File.separator + "fixed-record-batch";
+        ChronicleTools.deleteOnExit(basePath);
+        FixedRecordChronicle chronicle = new FixedRecordChronicle(basePath, 16, 12);
+        Excerpt writer = chronicle.createExcerpt();
+        Excerpt reader = chronicle.createExcerpt();
+        writer.startBatch();
+        for (int i = 0; i < 5; i++) {
+            writer.startExcerpt(16);
+            writer.writeLong(i + 1);
+            writer.finish();
+        }
+        assertFalse(reader.index(0));
+        writer.commitBatch();
+        for (int i = 0; i < 5; i++) {
+            assertTrue(reader.nextIndex());
+            assertEquals(i + 1, reader.readLong());
+            reader.finish();
+        }
+        assertFalse(reader.hasNextIndex());
+
+        try {
+            writer.startExcerpt(17);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        chronicle.close();
+    }
+}
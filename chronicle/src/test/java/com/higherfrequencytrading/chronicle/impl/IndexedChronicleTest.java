@@ -17,16 +17,22 @@
 package com.higherfrequencytrading.chronicle.impl;
 
 import com.higherfrequencytrading.chronicle.Excerpt;
+import com.higherfrequencytrading.chronicle.tools.ChronicleTools;
 import org.jetbrains.annotations.Nullable;
 import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
 
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static junit.framework.Assert.*;
 
@@ -113,6 +119,270 @@ public class IndexedChronicleTest {
         tsc.close(); // used to throw an exception.
     }
 
+    @Test
+    public void testBackgroundMapping() throws IOException {
+        String basePath = TMP + File.separator + "background-mapping.ict";
+        deleteOnExit(basePath);
+        // small segments so the mapper is used many times.
+        IndexedChronicle tsc = new IndexedChronicle(basePath, 12);
+        tsc.backgroundMapping(true);
+        Excerpt excerpt = tsc.createExcerpt();
+        int count = 20000;
+        for (int i = 0; i < count; i++) {
+            excerpt.startExcerpt(12);
+            excerpt.writeLong(i + 1);
+            excerpt.writeInt(i);
+            excerpt.finish();
+        }
+        tsc.close();
+
+        tsc = new IndexedChronicle(basePath, 12);
+        tsc.backgroundMapping(true);
+        assertEquals(count, tsc.size());
+        excerpt = tsc.createExcerpt();
+        for (int i = 0; i < count; i++) {
+            assertTrue(excerpt.nextIndex());
+            assertEquals(i + 1, excerpt.readLong());
+            assertEquals(i, excerpt.readInt());
+            excerpt.finish();
+        }
+        assertFalse(excerpt.nextIndex());
+        tsc.close();
+    }
+
+    @Test
+    public void testRecoverSize() throws IOException {
+        String basePath = TMP + File.separator + "recover-size.ict";
+        deleteOnExit(basePath);
+        IndexedChronicle tsc = new IndexedChronicle(basePath, 12);
+        Excerpt excerpt = tsc.createExcerpt();
+        int count = 1000;
+        for (int i = 0; i < count; i++) {
+            excerpt.startExcerpt(8);
+            excerpt.writeLong(i + 1);
+            excerpt.finish();
+        }
+        tsc.close();
+
+        // as if the process died before the header was updated.
+        for (long lastSize : new long[]{count, count - 1, 10, 0, -1, count * 2}) {
+            RandomAccessFile raf = new RandomAccessFile(basePath + ".header", "rw");
+            MappedByteBuffer header = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, IndexedChronicle.HEADER_SIZE);
+            header.order(ByteOrder.nativeOrder());
+            header.putLong(IndexedChronicle.HEADER_SIZE_OFFSET, lastSize);
+            raf.close();
+
+            tsc = new IndexedChronicle(basePath, 12);
+            assertEquals(count, tsc.size());
+            tsc.close();
+        }
+
+        // an older chronicle without a header.
+        assertTrue(new File(basePath + ".header").delete());
+        tsc = new IndexedChronicle(basePath, 12);
+        assertEquals(count, tsc.size());
+        excerpt = tsc.createExcerpt();
+        assertTrue(excerpt.index(count - 1));
+        assertEquals(count, excerpt.readLong());
+        tsc.close();
+    }
+
+    @Test
+    public void testMultiWriter() throws Exception {
+        for (boolean useUnsafe : new boolean[]{false, true}) {
+            String basePath = TMP + File.separator + "multi-writer.ict";
+            ChronicleTools.deleteOnExit(basePath);
+            // small data segments so excerpts are padded.
+            final IndexedChronicle tsc = ChronicleBuilder.newIndexedChronicleBuilder(basePath)
+                    .dataBitSizeHint(12).useUnsafe(useUnsafe).multiWriter(true).build();
+            final int writers = 4, count = 20000;
+            Thread[] threads = new Thread[writers];
+            for (int t = 0; t < writers; t++) {
+                final int id = t;
+                threads[t] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Excerpt excerpt = tsc.createExcerpt();
+                        for (int i = 0; i < count; i++) {
+                            excerpt.startExcerpt(8 + 4 + (i & 63));
+                            excerpt.writeLong(i + 1);
+                            excerpt.writeInt(id);
+                            excerpt.finish();
+                        }
+                    }
+                });
+                threads[t].start();
+            }
+            // read while writing, every excerpt is seen once in order for each writer.
+            int[] next = new int[writers];
+            Excerpt reader = tsc.createExcerpt();
+            for (int n = 0; n < writers * count; ) {
+                if (!reader.index(n))
+                    continue;
+                long i = reader.readLong();
+                int id = reader.readInt();
+                assertEquals(++next[id], i);
+                reader.finish();
+                n++;
+            }
+            for (Thread thread : threads)
+                thread.join();
+            assertEquals(writers * count, tsc.size());
+            assertFalse(reader.index(writers * count));
+            tsc.close();
+        }
+    }
+
+    @Test
+    public void testGroupCommit() throws Exception {
+        String basePath = TMP + File.separator + "group-commit.ict";
+        ChronicleTools.deleteOnExit(basePath);
+        IndexedChronicle tsc = ChronicleBuilder.newIndexedChronicleBuilder(basePath)
+                .dataBitSizeHint(12).groupCommit(10, TimeUnit.MILLISECONDS, 100).build();
+        assertEquals(-1, tsc.durableIndex());
+        Excerpt excerpt = tsc.createExcerpt();
+        int count = 1000;
+        for (int i = 0; i < count; i++) {
+            excerpt.startExcerpt(8);
+            excerpt.writeLong(i + 1);
+            excerpt.finish();
+        }
+        assertTrue(tsc.awaitDurable(count - 1, 10, TimeUnit.SECONDS));
+        assertEquals(count - 1, tsc.durableIndex());
+        // wait for one excerpt, which shouldn't wait for the interval.
+        excerpt.startExcerpt(8);
+        excerpt.writeLong(count + 1);
+        excerpt.finish();
+        assertTrue(tsc.awaitDurable(count, 10, TimeUnit.SECONDS));
+        tsc.close();
+    }
+
+    @Test
+    public void testBatch() throws IOException {
+        String basePath = TMP + File.separator + "batch.ict";
+        ChronicleTools.deleteOnExit(basePath);
+        IndexedChronicle tsc = new IndexedChronicle(basePath, 12);
+        Excerpt excerpt = tsc.createExcerpt();
+        Excerpt reader = tsc.createExcerpt();
+        int batches = 10, count = 100;
+        for (int b = 0; b < batches; b++) {
+            excerpt.startBatch();
+            for (int i = 0; i < count; i++) {
+                // open ended excerpts so some are moved to the next segment while held back.
+                excerpt.startExcerpt();
+                int longs = 1 + i % 16;
+                for (int j = 0; j < longs; j++)
+                    excerpt.writeLong(b * 1000L + i + 1);
+                excerpt.finish();
+                assertEquals(b * count + i, excerpt.index());
+            }
+            // nothing is visible until the batch is committed.
+            assertEquals(b * count, tsc.size());
+            assertFalse(reader.index(b * count));
+            assertFalse(reader.index(b * count + count / 2));
+            excerpt.commitBatch();
+            assertEquals((b + 1) * count, tsc.size());
+
+            for (int i = 0; i < count; i++) {
+                assertTrue(reader.index(b * count + i));
+                int longs = 1 + i % 16;
+                for (int j = 0; j < longs; j++)
+                    assertEquals(b * 1000L + i + 1, reader.readLong());
+                reader.finish();
+            }
+        }
+        tsc.close();
+
+        tsc = new IndexedChronicle(basePath, 12);
+        assertEquals(batches * count, tsc.size());
+        tsc.close();
+    }
+
+    @Test
+    public void testDataOverlap() throws IOException {
+        for (boolean useUnsafe : new boolean[]{false, true}) {
+            String basePath = TMP + File.separator + "data-overlap-" + useUnsafe + ".ict";
+            ChronicleTools.deleteOnExit(basePath);
+            // 4 KB segments with excerpts up to 20 KB.
+            IndexedChronicle tsc = ChronicleBuilder.newIndexedChronicleBuilder(basePath)
+                    .dataBitSizeHint(12).dataOverlap(64 * 1024).useUnsafe(useUnsafe).build();
+            Excerpt excerpt = tsc.createExcerpt();
+            int count = 500;
+            long total = 0;
+            for (int i = 0; i < count; i++) {
+                int longs = 1 + i * 7 % 2560;
+                excerpt.startExcerpt(longs * 8);
+                for (int j = 0; j < longs; j++)
+                    excerpt.writeLong(i * 10000L + j + 1);
+                excerpt.finish();
+                total += longs * 8;
+            }
+            // no padding at the segment boundaries.
+            assertEquals(total, tsc.getIndexData(count));
+            tsc.close();
+
+            // the overlap is kept in the header.
+            tsc = new IndexedChronicle(basePath, 12);
+            tsc.useUnsafe(useUnsafe);
+            assertEquals(64 * 1024, tsc.dataOverlap());
+            Excerpt reader = tsc.createExcerpt();
+            for (int i = 0; i < count; i++) {
+                assertTrue(reader.nextIndex());
+                int longs = 1 + i * 7 % 2560;
+                assertEquals(longs * 8, reader.remaining());
+                for (int j = 0; j < longs; j++)
+                    assertEquals(i * 10000L + j + 1, reader.readLong());
+                reader.finish();
+            }
+            assertFalse(reader.nextIndex());
+            tsc.close();
+        }
+    }
+
+    @Test
+    public void testOpenEndedExcerpts() throws IOException {
+        for (boolean useUnsafe : new boolean[]{false, true}) {
+            String basePath = TMP + File.separator + "open-ended-" + useUnsafe + ".ict";
+            ChronicleTools.deleteOnExit(basePath);
+            IndexedChronicle tsc = ChronicleBuilder.newIndexedChronicleBuilder(basePath)
+                    .dataBitSizeHint(12).useUnsafe(useUnsafe).build();
+            Excerpt excerpt = tsc.createExcerpt();
+            // lengths up to 1 KB in 4 KB segments so many excerpts are moved part way through.
+            int count = 1000;
+            for (int i = 0; i < count; i++) {
+                excerpt.startExcerpt();
+                int longs = 1 + i % 128;
+                for (int j = 0; j < longs; j++)
+                    excerpt.writeLong(i * 1000L + j + 1);
+                excerpt.finish();
+                assertEquals(longs * 8, excerpt.capacity());
+            }
+            assertEquals(count, tsc.size());
+
+            Excerpt reader = tsc.createExcerpt();
+            for (int i = 0; i < count; i++) {
+                assertTrue(reader.index(i));
+                int longs = 1 + i % 128;
+                // the last excerpt in a segment includes the padding left when the next one was moved.
+                assertTrue(reader.remaining() >= longs * 8);
+                for (int j = 0; j < longs; j++)
+                    assertEquals(i * 1000L + j + 1, reader.readLong());
+                reader.finish();
+            }
+
+            // a fixed capacity is still enforced.
+            excerpt.startExcerpt(8);
+            excerpt.writeLong(1);
+            try {
+                excerpt.writeLong(2);
+                fail();
+            } catch (IllegalStateException expected) {
+                // expected
+            }
+            tsc.close();
+        }
+    }
+
     @Test
     @Ignore
     public void testTimeTenMillion() throws IOException {
@@ -270,9 +540,400 @@ public class IndexedChronicleTest {
         assertSame(zero, zero2);
     }
 
+    @Test
+    public void testTimeIndex() throws IOException {
+        String basePath = TMP + File.separator + "time-index.ict";
+        ChronicleTools.deleteOnExit(basePath);
+        IndexedChronicle tsc = new IndexedChronicle(basePath, 12);
+        tsc.timeIndex(100, 0, TimeUnit.NANOSECONDS);
+        Excerpt excerpt = tsc.createExcerpt();
+        int count = 1000;
+        for (int i = 0; i < count; i++) {
+            excerpt.startExcerpt(8);
+            excerpt.writeLong(i + 1);
+            excerpt.finish();
+        }
+        // the samples are anchored to the wall clock to within a millisecond.
+        long now = (System.currentTimeMillis() + 1) * 1000000L;
+
+        Excerpt reader = tsc.createExcerpt();
+        // before the first sample is the start.
+        assertTrue(reader.seekToTime(0));
+        assertEquals(-1, reader.index());
+        assertTrue(reader.nextIndex());
+        assertEquals(1, reader.readLong());
+        reader.finish();
+
+        assertTrue(reader.seekToTime(now));
+        assertEquals(count - 100, reader.index());
+        assertEquals(count - 100 + 1, reader.readLong());
+        reader.finish();
+        tsc.close();
+
+        // the samples are persisted.
+        tsc = new IndexedChronicle(basePath, 12);
+        reader = tsc.createExcerpt();
+        assertTrue(reader.seekToTime(Long.MAX_VALUE));
+        assertEquals(count - 100, reader.index());
+        tsc.close();
+    }
+
+    @Test
+    public void testTimeIndexClockGoesBackwards() throws IOException {
+        String path = TMP + File.separator + "time-index-clock.time";
+        new File(path).delete();
+        new File(path).deleteOnExit();
+        final long[] clock = {100};
+        TimeIndex timeIndex = new TimeIndex(path, ByteOrder.nativeOrder()) {
+            @Override
+            long nowNS() {
+                return clock[0];
+            }
+        };
+        timeIndex.sampling(1, 0, 0);
+        for (long time : new long[]{100, 200, 50, 300}) {
+            clock[0] = time;
+            timeIndex.excerptFinished(timeIndex.indexFor(Long.MAX_VALUE) + 1);
+        }
+        // the sample at 50 is recorded at 200, so the samples stay in order.
+        assertEquals(0, timeIndex.indexFor(150));
+        assertEquals(2, timeIndex.indexFor(250));
+        timeIndex.close();
+
+        // the last time is recovered when reopened.
+        timeIndex = new TimeIndex(path, ByteOrder.nativeOrder()) {
+            @Override
+            long nowNS() {
+                return clock[0];
+            }
+        };
+        timeIndex.sampling(1, 0, 4);
+        clock[0] = 10;
+        timeIndex.excerptFinished(4);
+        assertEquals(4, timeIndex.indexFor(300));
+        timeIndex.close();
+    }
+
+    @Test
+    public void testRetention() throws IOException {
+        String basePath = TMP + File.separator + "retention.ict";
+        ChronicleTools.deleteOnExit(basePath);
+        IndexedChronicle tsc = new IndexedChronicle(basePath, 12);
+        Excerpt excerpt = tsc.createExcerpt();
+        int count = 10000;
+        for (int i = 0; i < count; i++) {
+            excerpt.startExcerpt(16);
+            excerpt.writeLong(i + 1);
+            excerpt.writeLong(i);
+            excerpt.finish();
+        }
+        Excerpt reader = tsc.createExcerpt();
+        assertTrue(reader.index(10));
+
+        assertEquals(count - 1000, tsc.retainExcerpts(1000));
+        // a dropped excerpt can't be read and the reader moves to the first still available.
+        assertFalse(reader.nextIndex());
+        assertTrue(reader.nextIndex());
+        assertEquals(count - 1000, reader.index());
+        assertEquals(count - 1000 + 1, reader.readLong());
+        reader.finish();
+        assertTrue(reader.toStart().nextIndex());
+        assertEquals(count - 1000, reader.index());
+
+        // as many excerpts as fit in the bytes, including any padding.
+        long start = tsc.retainBytes(100 * 16);
+        long end = tsc.getIndexData(count);
+        assertTrue(end - tsc.getIndexData(start) <= 100 * 16);
+        assertTrue(end - tsc.getIndexData(start - 1) > 100 * 16);
+        // it can't go backwards.
+        assertEquals(start, tsc.retainExcerpts(1000));
+        tsc.close();
+
+        tsc = new IndexedChronicle(basePath, 12);
+        assertEquals(start, tsc.startIndex());
+        reader = tsc.createExcerpt();
+        assertFalse(reader.index(0));
+        assertTrue(reader.nextIndex());
+        assertEquals(start + 1, reader.readLong());
+        tsc.close();
+    }
+
+    @Test
+    public void testMappingCache() throws IOException {
+        for (boolean useUnsafe : new boolean[]{false, true}) {
+            String basePath = TMP + File.separator + "mapping-cache-" + useUnsafe + ".ict";
+            ChronicleTools.deleteOnExit(basePath);
+            IndexedChronicle tsc = new IndexedChronicle(basePath, 12);
+            tsc.useUnsafe(useUnsafe);
+            tsc.mappingCache(3);
+            Excerpt excerpt = tsc.createExcerpt();
+            // 256 excerpts per 4 KB segment.
+            int count = 10000;
+            for (int i = 0; i < count; i++) {
+                excerpt.startExcerpt(16);
+                excerpt.writeLong(i + 1);
+                excerpt.writeLong(i);
+                excerpt.finish();
+            }
+            assertTrue(tsc.mappedDataSegments() <= 3);
+
+            // a reader on the first segment keeps it mapped while others are evicted.
+            Excerpt held = tsc.createExcerpt();
+            assertTrue(held.index(0));
+            Excerpt reader = tsc.createExcerpt();
+            Excerpt reader2 = tsc.createExcerpt();
+            for (int i = 0; i < count; i += 97) {
+                assertTrue(reader.index(i));
+                assertEquals(i + 1, reader.readLong());
+                assertTrue(reader2.index(count - 1 - i));
+                assertEquals(count - i, reader2.readLong());
+                assertTrue(tsc.mappedDataSegments() <= 4);
+            }
+            assertEquals(1, held.readLong());
+            held.finish();
+            reader.finish();
+            reader2.finish();
+            assertTrue(tsc.mappedDataSegments() <= 3);
+            tsc.close();
+        }
+    }
+
+    @Test
+    public void testSharedMappings() throws IOException {
+        String basePath = TMP + File.separator + "shared-mappings.ict";
+        ChronicleTools.deleteOnExit(basePath);
+        int before = MappedFileRegistry.mappings();
+        IndexedChronicle writer = new IndexedChronicle(basePath, 12);
+        writer.sharedMappings(true);
+        IndexedChronicle reader = new IndexedChronicle(basePath, 12);
+        reader.sharedMappings(true);
+
+        Excerpt w = writer.createExcerpt();
+        int count = 1000;
+        for (int i = 0; i < count; i++) {
+            w.startExcerpt(16);
+            w.writeLong(i + 1);
+            w.writeLong(i);
+            w.finish();
+        }
+        int afterWriter = MappedFileRegistry.mappings() - before;
+        assertTrue(afterWriter > 0);
+
+        Excerpt r = reader.createExcerpt();
+        for (int i = 0; i < count; i++) {
+            assertTrue(r.index(i));
+            assertEquals(i + 1, r.readLong());
+            assertEquals(i, r.readLong());
+            r.finish();
+        }
+        // the reader maps nothing the writer has not already mapped.
+        assertEquals(afterWriter, MappedFileRegistry.mappings() - before);
+
+        // closing the writer leaves the reader's view intact.
+        writer.close();
+        assertTrue(r.index(count - 1));
+        assertEquals(count, r.readLong());
+        r.finish();
+        reader.close();
+        assertEquals(before, MappedFileRegistry.mappings());
+    }
+
+    @Test
+    public void testZeroPayload() throws IOException {
+        String basePath = TMP + File.separator + "zero-payload.ict";
+        ChronicleTools.deleteOnExit(basePath);
+        IndexedChronicle tsc = new IndexedChronicle(basePath, 12);
+        Excerpt excerpt = tsc.createExcerpt();
+        for (int i = 0; i < 100; i++) {
+            excerpt.startExcerpt(16);
+            excerpt.writeLong(0);
+            excerpt.writeLong(i);
+            excerpt.finish();
+        }
+        Excerpt reader = tsc.createExcerpt();
+        for (int i = 0; i < 100; i++) {
+            assertTrue(reader.nextIndex());
+            assertEquals(0, reader.readLong());
+            assertEquals(i, reader.readLong());
+            reader.finish();
+        }
+        assertFalse(reader.nextIndex());
+        tsc.close();
+    }
+
+    @Test
+    public void testTornExcerptsDiscarded() throws IOException {
+        String basePath = TMP + File.separator + "torn-excerpts.ict";
+        ChronicleTools.deleteOnExit(basePath);
+        IndexedChronicle tsc = new IndexedChronicle(basePath, 12);
+        Excerpt excerpt = tsc.createExcerpt();
+        for (int i = 0; i < 10; i++) {
+            excerpt.startExcerpt(16);
+            excerpt.writeLong(i);
+            excerpt.writeLong(i);
+            excerpt.finish();
+        }
+        long end = tsc.getIndexData(10);
+        // as left by writers which reserved two excerpts and died before committing them.
+        tsc.setIndexData(11, (end + 16) | AbstractExcerpt.RESERVED);
+        tsc.setIndexData(12, (end + 32) | AbstractExcerpt.RESERVED);
+        tsc.close();
+
+        tsc = new IndexedChronicle(basePath, 12);
+        assertEquals(10, tsc.size());
+        assertEquals(0, tsc.getIndexData(11));
+        assertEquals(0, tsc.getIndexData(12));
+        excerpt = tsc.createExcerpt();
+        excerpt.startExcerpt(16);
+        excerpt.writeLong(10);
+        excerpt.writeLong(10);
+        excerpt.finish();
+        assertEquals(10, excerpt.index());
+        assertEquals(11, tsc.size());
+        tsc.close();
+    }
+
+    @Test
+    public void testFailedOpenReleasesOwnership() throws IOException {
+        String basePath = TMP + File.separator + "failed-open.ict";
+        ChronicleTools.deleteOnExit(basePath);
+        File cdata = new File(basePath + ".cdata");
+        cdata.deleteOnExit();
+        new File(basePath + ".data").delete();
+        // not a compressed chronicle, so opening fails after taking ownership of the files.
+        FileOutputStream fos = new FileOutputStream(cdata);
+        fos.write(new byte[32]);
+        fos.close();
+        try {
+            new IndexedChronicle(basePath, 12);
+            fail();
+        } catch (IOException expected) {
+            // expected
+        }
+        String ownerPath = new File(basePath + ".header").getCanonicalPath();
+        assertTrue(OwnerLocks.acquire(ownerPath));
+        OwnerLocks.shared(ownerPath);
+        OwnerLocks.release(ownerPath);
+
+        assertTrue(cdata.delete());
+        IndexedChronicle tsc = new IndexedChronicle(basePath, 12);
+        assertEquals(0, tsc.size());
+        tsc.close();
+    }
+
+    @Test
+    public void testReservedExcerptKeptWhileOpen() throws IOException {
+        String basePath = TMP + File.separator + "reserved-open.ict";
+        ChronicleTools.deleteOnExit(basePath);
+        IndexedChronicle writer = ChronicleBuilder.newIndexedChronicleBuilder(basePath)
+                .dataBitSizeHint(12).multiWriter(true).build();
+        Excerpt appender = writer.createExcerpt();
+        for (int i = 0; i < 3; i++) {
+            appender.startExcerpt(8);
+            appender.writeLong(i);
+            appender.finish();
+        }
+        appender.startExcerpt(8);
+        appender.writeLong(3);
+        long reserved = writer.getIndexData(4);
+        assertTrue((reserved & AbstractExcerpt.RESERVED) != 0);
+
+        // opened while the writer is part way through an excerpt, which it must not discard.
+        IndexedChronicle reader = new IndexedChronicle(basePath, 12);
+        assertEquals(3, reader.size());
+        assertEquals(reserved, reader.getIndexData(4));
+        Excerpt excerpt = reader.createExcerpt();
+        assertFalse(excerpt.index(3));
+
+        appender.finish();
+        assertEquals(4, writer.size());
+        assertTrue(excerpt.index(3));
+        assertEquals(3, excerpt.readLong());
+        excerpt.finish();
+        reader.close();
+        writer.close();
+    }
+
+    @Test
+    public void testUnsafeNonNativeOrder() throws IOException {
+        ByteOrder swapped = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        String basePath = TMP + File.separator + "unsafe-swapped.ict";
+        ChronicleTools.deleteOnExit(basePath);
+        IndexedChronicle tsc = new IndexedChronicle(basePath, 12, swapped);
+        tsc.useUnsafe(true);
+        Excerpt writer = tsc.createExcerpt();
+        assertTrue(writer instanceof SwappedUnsafeExcerpt);
+        for (int i = 0; i < 100; i++) {
+            writer.startExcerpt(64);
+            writer.writeShort(i);
+            writer.writeChar('A' + i);
+            writer.writeInt(i * 1001);
+            writer.writeLong(i * 1000001L);
+            writer.writeFloat(i / 3.0f);
+            writer.writeDouble(i / 7.0);
+            writer.writeInt(4, -i);
+            writer.finish();
+        }
+
+        // the bytes are the same as those a ByteBuffer in this order would write.
+        tsc.useUnsafe(false);
+        Excerpt reader = tsc.createExcerpt();
+        assertTrue(reader instanceof ByteBufferExcerpt);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(reader.index(i));
+            assertEquals(i, reader.readShort());
+            assertEquals('A' + i, reader.readChar());
+            assertEquals(-i, reader.readInt());
+            assertEquals(i * 1000001L, reader.readLong());
+            assertEquals(i / 3.0f, reader.readFloat());
+            assertEquals(i / 7.0, reader.readDouble());
+            assertEquals(-i, reader.readInt(4));
+            reader.finish();
+        }
+        tsc.close();
+    }
+
+    @Test
+    public void testDataByteOrderRecorded() throws IOException {
+        ByteOrder swapped = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        String basePath = TMP + File.separator + "data-order.ict";
+        ChronicleTools.deleteOnExit(basePath);
+        IndexedChronicle tsc = new IndexedChronicle(basePath, 12, swapped);
+        assertEquals(swapped, tsc.dataByteOrder());
+        tsc.close();
+        tsc = new IndexedChronicle(basePath, 12, swapped);
+        assertEquals(swapped, tsc.dataByteOrder());
+        tsc.close();
+
+        // as written before the data byte order was recorded in the header.
+        RandomAccessFile raf = new RandomAccessFile(basePath + ".header", "rw");
+        raf.seek(IndexedChronicle.HEADER_DATA_ORDER_OFFSET);
+        raf.writeInt(0);
+        raf.close();
+        tsc = new IndexedChronicle(basePath, 12, swapped);
+        assertEquals(ByteOrder.nativeOrder(), tsc.dataByteOrder());
+        tsc.useUnsafe(true);
+        Excerpt excerpt = tsc.createExcerpt();
+        assertTrue(excerpt instanceof UnsafeExcerpt && !(excerpt instanceof SwappedUnsafeExcerpt));
+        excerpt.startExcerpt(8);
+        excerpt.writeLong(0x0102030405060708L);
+        excerpt.finish();
+        tsc.close();
+
+        tsc = new IndexedChronicle(basePath, 12, swapped);
+        assertEquals(ByteOrder.nativeOrder(), tsc.dataByteOrder());
+        excerpt = tsc.createExcerpt();
+        assertTrue(excerpt.index(0));
+        assertEquals(0x0102030405060708L, excerpt.readLong());
+        excerpt.finish();
+        tsc.close();
+    }
+
     private static void deleteOnExit(String basePath) {
         new File(basePath + ".data").deleteOnExit();
         new File(basePath + ".index").deleteOnExit();
+        new File(basePath + ".header").deleteOnExit();
+        new File(basePath + ".time").deleteOnExit();
     }
 
     @Test
@@ -309,6 +970,176 @@ public class IndexedChronicleTest {
 //        Thread.sleep(10000);
     }
 
+    static class Trade implements Serializable {
+        long id;
+        transient int cached = 1;
+    }
+
+    static class Fill extends Trade {
+        String symbol;
+        String account;
+        Side side;
+        boolean aggressive;
+        char flag;
+        short venue;
+        int quantity;
+        float fee;
+        double price;
+        Trade parent;
+        List<String> tags;
+    }
+
+    enum Side {BUY, SELL}
+
+    @Test
+    public void testReflectiveSerialization() throws IOException {
+        String testPath = TMP + File.separator + "chronicle-reflective";
+        deleteOnExit(testPath);
+        IndexedChronicle tsc = new IndexedChronicle(testPath);
+        tsc.useUnsafe(true);
+
+        Fill fill = new Fill();
+        fill.id = 123456789L;
+        fill.cached = 2;
+        fill.symbol = "EURUSD";
+        fill.side = Side.SELL;
+        fill.aggressive = true;
+        fill.flag = 'X';
+        fill.venue = 7;
+        fill.quantity = 1000000;
+        fill.fee = 0.5f;
+        fill.price = 1.3015;
+        fill.parent = new Trade();
+        fill.parent.id = 42;
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(baos);
+        oos.writeObject(fill);
+        oos.close();
+
+        Excerpt excerpt = tsc.createExcerpt();
+        for (int i = 0; i < 3; i++) {
+            excerpt.startExcerpt(1024);
+            excerpt.writeObject(fill);
+            excerpt.finish();
+        }
+        // an ArrayList has its own serialization methods, so it is still serialized.
+        fill.tags = new ArrayList<String>(Arrays.asList("a", "b"));
+        excerpt.startExcerpt(1024);
+        excerpt.writeObject(fill);
+        excerpt.finish();
+
+        assertTrue(excerpt.index(0));
+        assertTrue(excerpt.remaining() < baos.size() / 3);
+
+        Excerpt reader = tsc.createExcerpt();
+        for (int i = 0; i < 4; i++) {
+            assertTrue(reader.index(i));
+            Fill fill2 = (Fill) reader.readObject();
+            assertEquals(123456789L, fill2.id);
+            assertEquals(0, fill2.cached);
+            assertEquals("EURUSD", fill2.symbol);
+            assertEquals(null, fill2.account);
+            assertEquals(Side.SELL, fill2.side);
+            assertTrue(fill2.aggressive);
+            assertEquals('X', fill2.flag);
+            assertEquals(7, fill2.venue);
+            assertEquals(1000000, fill2.quantity);
+            assertEquals(0.5f, fill2.fee);
+            assertEquals(1.3015, fill2.price);
+            assertEquals(42, fill2.parent.id);
+            assertEquals(i < 3 ? null : Arrays.asList("a", "b"), fill2.tags);
+            reader.finish();
+        }
+        tsc.close();
+    }
+
+    static class Order implements Serializable {
+        Trade first, second;
+    }
+
+    @Test
+    public void testReflectiveCycleAndSharedReference() throws IOException {
+        String testPath = TMP + File.separator + "chronicle-reflective-graph";
+        deleteOnExit(testPath);
+        IndexedChronicle tsc = new IndexedChronicle(testPath);
+        tsc.useUnsafe(true);
+
+        Fill cycle = new Fill();
+        cycle.id = 1;
+        cycle.parent = cycle;
+        Order shared = new Order();
+        shared.first = shared.second = new Trade();
+        shared.first.id = 2;
+        Order tree = new Order();
+        tree.first = new Trade();
+        tree.second = new Trade();
+
+        Excerpt excerpt = tsc.createExcerpt();
+        for (Object o : new Object[]{cycle, shared, tree}) {
+            excerpt.startExcerpt(1024);
+            excerpt.writeObject(o);
+            excerpt.finish();
+        }
+        // only a tree is written field by field.
+        for (int i = 0; i < 3; i++) {
+            assertTrue(excerpt.index(i));
+            assertEquals(i < 2 ? 'S' : 'R', excerpt.readByte());
+        }
+
+        Excerpt reader = tsc.createExcerpt();
+        assertTrue(reader.index(0));
+        Fill cycle2 = (Fill) reader.readObject();
+        assertEquals(1, cycle2.id);
+        assertTrue(cycle2.parent == cycle2);
+        assertTrue(reader.index(1));
+        Order shared2 = (Order) reader.readObject();
+        assertEquals(2, shared2.first.id);
+        assertTrue(shared2.first == shared2.second);
+        assertTrue(reader.index(2));
+        Order tree2 = (Order) reader.readObject();
+        assertTrue(tree2.first != tree2.second);
+        tsc.close();
+    }
+
+    static class Base {
+        Object lock = new Object();
+        int version;
+
+        Base() {
+            version = 1;
+        }
+    }
+
+    static class Derived extends Base implements Serializable {
+        long id;
+    }
+
+    @Test
+    public void testReflectiveNotSerializableBase() throws IOException {
+        String testPath = TMP + File.separator + "chronicle-reflective-base";
+        deleteOnExit(testPath);
+        IndexedChronicle tsc = new IndexedChronicle(testPath);
+        tsc.useUnsafe(true);
+        assertFalse(ReflectiveMarshaller.canMarshal(Derived.class));
+
+        Derived derived = new Derived();
+        derived.id = 7;
+        derived.version = 3;
+        Excerpt excerpt = tsc.createExcerpt();
+        excerpt.startExcerpt(1024);
+        excerpt.writeObject(derived);
+        excerpt.finish();
+
+        // as Java Serialization, the base's fields aren't written and its constructor is called.
+        assertTrue(excerpt.index(0));
+        Derived derived2 = (Derived) excerpt.readObject();
+        assertEquals(7, derived2.id);
+        assertEquals(1, derived2.version);
+        assertTrue(derived2.lock != null);
+        tsc.close();
+    }
+
     static void assertEquals(long a, long b) {
         if (a != b)
             Assert.assertEquals(a, b);
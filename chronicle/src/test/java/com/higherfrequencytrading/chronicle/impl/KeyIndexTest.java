@@ -0,0 +1,76 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.higherfrequencytrading.chronicle.impl;
+
+import com.higherfrequencytrading.chronicle.Excerpt;
+import com.higherfrequencytrading.chronicle.tools.ChronicleTools;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+
+import static junit.framework.Assert.*;
+
+/**
+ * @author peter.lawrey
+ */
+public class KeyIndexTest {
+    @Test
+    public void latestIndexSurvivesRestart() throws IOException {
+        String basePath = IndexedChronicleTest.TMP + File.separator + "key-index.ict";
+        ChronicleTools.deleteOnExit(basePath);
+        IndexedChronicle tsc = new IndexedChronicle(basePath, 16);
+        // start small so it has to grow.
+        KeyIndex keyIndex = new KeyIndex(basePath, 4, ByteOrder.nativeOrder());
+        Excerpt excerpt = tsc.createExcerpt();
+        int keys = 1000, count = 3000;
+        for (int i = 0; i < count; i++) {
+            excerpt.startExcerpt(16);
+            excerpt.writeLong(i % keys + 1);
+            excerpt.writeLong(i);
+            excerpt.finish();
+            keyIndex.put(i % keys, excerpt.index());
+        }
+        assertEquals(keys, keyIndex.size());
+        assertEquals(count, keyIndex.indexedTo());
+        assertEquals(-1, keyIndex.get(keys));
+        keyIndex.close();
+        tsc.close();
+
+        tsc = new IndexedChronicle(basePath, 16);
+        keyIndex = new KeyIndex(basePath);
+        assertEquals(keys, keyIndex.size());
+        assertEquals(count, keyIndex.indexedTo());
+        Excerpt reader = tsc.createExcerpt();
+        for (int k = 0; k < keys; k++) {
+            long index = keyIndex.get(k);
+            assertEquals(count - keys + k, index);
+            reader.index(index);
+            assertEquals(k + 1, reader.readLong());
+            reader.finish();
+        }
+        keyIndex.close();
+        tsc.close();
+    }
+
+    @Test
+    public void hashOf() {
+        assertEquals(KeyIndex.hashOf("hello"), KeyIndex.hashOf(new StringBuilder("hello")));
+        assertFalse(KeyIndex.hashOf("ab") == KeyIndex.hashOf("ba"));
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.higherfrequencytrading.chronicle.impl;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author peter.lawrey
+ */
+public class Lz4CodecTest {
+    private final int[] table = new int[1 << Lz4Codec.HASH_BITS];
+
+    @Test
+    public void roundTrip() {
+        Random rand = new Random(1);
+        byte[] repetitive = new byte[Lz4Codec.MAX_BLOCK_SIZE];
+        for (int i = 0; i < repetitive.length; i++)
+            repetitive[i] = (byte) (i % 64 < 48 ? i % 7 : rand.nextInt());
+        int clen = assertRoundTrip(repetitive, repetitive.length);
+        assertTrue("clen=" + clen, clen < repetitive.length / 2);
+
+        byte[] random = new byte[10000];
+        rand.nextBytes(random);
+        assertRoundTrip(random, random.length);
+
+        // short blocks are only literals.
+        for (int len = 0; len < 20; len++)
+            assertRoundTrip(repetitive, len);
+        // long runs need extra length bytes.
+        assertRoundTrip(new byte[5000], 5000);
+    }
+
+    private int assertRoundTrip(byte[] src, int len) {
+        byte[] compressed = new byte[Lz4Codec.maxCompressedLength(len)];
+        int clen = Lz4Codec.compress(src, 0, len, compressed, 0, table);
+        byte[] decompressed = new byte[len];
+        Lz4Codec.decompress(compressed, 0, clen, decompressed, 0, len);
+        assertArrayEquals(Arrays.copyOf(src, len), decompressed);
+        return clen;
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void corrupt() {
+        byte[] src = new byte[1000];
+        byte[] compressed = new byte[Lz4Codec.maxCompressedLength(src.length)];
+        int clen = Lz4Codec.compress(src, 0, src.length, compressed, 0, table);
+        Lz4Codec.decompress(compressed, 0, clen, new byte[999], 0, 999);
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.higherfrequencytrading.chronicle.impl;
+
+import com.higherfrequencytrading.chronicle.Excerpt;
+import com.higherfrequencytrading.chronicle.tools.ChronicleTools;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static junit.framework.Assert.*;
+
+/**
+ * @author peter.lawrey
+ */
+public class RingBufferChronicleTest {
+    @Test
+    public void wrapsAround() throws IOException {
+        for (boolean useUnsafe : new boolean[]{false, true}) {
+            String basePath = IndexedChronicleTest.TMP + File.separator + "ring-wrap-" + useUnsafe;
+            ChronicleTools.deleteOnExit(basePath);
+            // 4 KB of data and 64 index entries.
+            RingBufferChronicle ring = new RingBufferChronicle(basePath, 12, 6);
+            ring.useUnsafe(useUnsafe);
+            long sizeInBytes = ring.sizeInBytes();
+            Excerpt writer = ring.createExcerpt();
+            Excerpt reader = ring.createExcerpt();
+            // 100 bytes doesn't divide 4 KB so excerpts are padded at the end of each lap.
+            for (int i = 0; i < 1000; i++) {
+                writer.startExcerpt(100);
+                writer.writeLong(i + 1);
+                writer.position(92);
+                writer.writeLong(-i);
+                writer.finish();
+
+                assertTrue(reader.nextIndex());
+                assertEquals(i, reader.index());
+                assertEquals(i + 1, reader.readLong());
+                reader.position(92);
+                assertEquals(-i, reader.readLong());
+                reader.finish();
+                assertFalse(ring.lapped(i));
+            }
+            assertEquals(1000, ring.size());
+            assertEquals(sizeInBytes, ring.sizeInBytes());
+            // no more than fits in the data ring are kept.
+            assertTrue(ring.size() - ring.startIndex() <= ring.dataCapacity() / 100);
+            ring.close();
+        }
+    }
+
+    @Test
+    public void lappedConsumer() throws IOException {
+        String basePath = IndexedChronicleTest.TMP + File.separator + "ring-lapped";
+        ChronicleTools.deleteOnExit(basePath);
+        RingBufferChronicle ring = new RingBufferChronicle(basePath, 16, 6);
+        // a consumer with its own mapping of the ring, as another process would have.
+        RingBufferChronicle ring2 = new RingBufferChronicle(basePath, 0, 0);
+        assertEquals(ring.dataCapacity(), ring2.dataCapacity());
+        assertEquals(ring.indexCapacity(), ring2.indexCapacity());
+
+        Excerpt writer = ring.createExcerpt();
+        Excerpt reader = ring2.createExcerpt();
+        for (int i = 0; i < 10; i++) {
+            writer.startExcerpt(16);
+            writer.writeLong(i + 1);
+            writer.writeLong(i);
+            writer.finish();
+        }
+        for (int i = 0; i < 10; i++) {
+            assertTrue(reader.nextIndex());
+            assertEquals(i + 1, reader.readLong());
+            reader.finish();
+        }
+        assertFalse(reader.nextIndex());
+
+        // the index ring fills before the data ring.
+        for (int i = 10; i < 1000; i++) {
+            writer.startExcerpt(16);
+            writer.writeLong(i + 1);
+            writer.writeLong(i);
+            writer.finish();
+        }
+        assertEquals(1000, ring2.size());
+        long startIndex = ring2.startIndex();
+        assertEquals(1000 - ring.indexCapacity(), startIndex);
+        assertTrue(ring2.lapped(10));
+
+        // lapped, so the reader is moved to the oldest excerpt available.
+        assertFalse(reader.nextIndex());
+        assertEquals(startIndex - 1, reader.index());
+        for (long i = startIndex; i < 1000; i++) {
+            assertTrue(reader.nextIndex());
+            assertEquals(i, reader.index());
+            assertEquals(i + 1, reader.readLong());
+            reader.finish();
+        }
+        assertFalse(reader.nextIndex());
+        ring2.close();
+
+        // the ring can be reopened and appended to.
+        ring.close();
+        ring = new RingBufferChronicle(basePath, 0, 0);
+        assertEquals(1000, ring.size());
+        writer = ring.createExcerpt();
+        writer.startExcerpt(16);
+        writer.writeLong(1001);
+        writer.writeLong(1000);
+        writer.finish();
+        assertEquals(1000, writer.index());
+        assertTrue(ring.createExcerpt().index(1000));
+        ring.close();
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.higherfrequencytrading.chronicle.impl;
+
+import com.higherfrequencytrading.chronicle.Excerpt;
+import com.higherfrequencytrading.chronicle.WaitStrategy;
+import com.higherfrequencytrading.chronicle.tools.ChronicleTools;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author peter.lawrey
+ */
+public class WaitStrategyTest {
+    static final String TMP = System.getProperty("java.io.tmpdir");
+
+    @Test
+    public void timesOut() throws IOException {
+        for (WaitStrategy waitStrategy : new WaitStrategy[]{new BusySpinWaitStrategy(), new SpinYieldWaitStrategy(), new SpinParkWaitStrategy()}) {
+            String basePath = TMP + File.separator + "wait-strategy-timeout";
+            ChronicleTools.deleteOnExit(basePath);
+            IndexedChronicle ic = new IndexedChronicle(basePath, 12);
+            ic.waitStrategy(waitStrategy);
+            Excerpt excerpt = ic.createExcerpt();
+            long start = System.nanoTime();
+            assertFalse(excerpt.nextIndex(20, TimeUnit.MILLISECONDS));
+            long time = System.nanoTime() - start;
+            assertTrue("time=" + time, time >= 20 * 1000 * 1000);
+            ic.close();
+        }
+    }
+
+    @Test
+    public void writerWakesParkedReader() throws IOException, InterruptedException {
+        String basePath = TMP + File.separator + "wait-strategy-wake";
+        ChronicleTools.deleteOnExit(basePath);
+        final IndexedChronicle ic = new IndexedChronicle(basePath, 12);
+        // park straight away and for so long only a signal would wake the reader in time.
+        ic.waitStrategy(new SpinParkWaitStrategy(0, 0, 10 * 1000 * 1000 * 1000L, 10 * 1000 * 1000 * 1000L));
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+                Excerpt excerpt = ic.createExcerpt();
+                excerpt.startExcerpt(8);
+                excerpt.writeLong(System.nanoTime());
+                excerpt.finish();
+            }
+        });
+        writer.start();
+        Excerpt excerpt = ic.createExcerpt();
+        assertTrue(excerpt.nextIndex(30, TimeUnit.SECONDS));
+        long delay = System.nanoTime() - excerpt.readLong();
+        assertTrue("delay=" + delay, delay < 1000 * 1000 * 1000L);
+        writer.join();
+        ic.close();
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.higherfrequencytrading.chronicle.tools;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+
+import static com.higherfrequencytrading.chronicle.tools.MarshallerProcessorTest.TMP;
+import static com.higherfrequencytrading.chronicle.tools.MarshallerProcessorTest.compile;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author peter.lawrey
+ */
+public class EventsProcessorTest {
+    static final String COMMAND = "package gen;\n" +
+            "import com.higherfrequencytrading.chronicle.Excerpt;\n" +
+            "import com.higherfrequencytrading.chronicle.ExcerptMarshallable;\n" +
+            "public class Command implements ExcerptMarshallable {\n" +
+            "    public int qty;\n" +
+            "    public void readMarshallable(Excerpt in) { qty = in.readInt(); }\n" +
+            "    public void writeMarshallable(Excerpt out) { out.writeInt(qty); }\n" +
+            "}\n";
+
+    static final String LEG = "package gen;\n" +
+            "import com.higherfrequencytrading.chronicle.GenerateMarshaller;\n" +
+            "@GenerateMarshaller\n" +
+            "public class Leg {\n" +
+            "    public String symbol;\n" +
+            "}\n";
+
+    static final String TRADE_EVENTS = "package gen;\n" +
+            "import com.higherfrequencytrading.chronicle.GenerateEvents;\n" +
+            "import java.util.List;\n" +
+            "public interface TradeEvents extends Heartbeat {\n" +
+            "    enum Side {BUY, SELL}\n" +
+            "    void order(String account, Side side, double price, Command command);\n" +
+            "    void legs(Leg leg, List<String> tags);\n" +
+            "    void primitives(boolean b, byte by, short s, char c, int i, float f);\n" +
+            "}\n";
+
+    static final String HEARTBEAT = "package gen;\n" +
+            "import com.higherfrequencytrading.chronicle.GenerateEvents;\n" +
+            "@GenerateEvents(capacity = 128)\n" +
+            "public interface Heartbeat {\n" +
+            "    void heartbeat(long time);\n" +
+            "}\n";
+
+    static final String ROUND_TRIP = "package gen;\n" +
+            "import com.higherfrequencytrading.chronicle.Excerpt;\n" +
+            "import com.higherfrequencytrading.chronicle.GenerateEvents;\n" +
+            "import com.higherfrequencytrading.chronicle.impl.IndexedChronicle;\n" +
+            "import java.util.Arrays;\n" +
+            "import java.util.List;\n" +
+            "@GenerateEvents\n" +
+            "public interface RoundTrip extends TradeEvents {\n" +
+            "    public static class Test implements java.util.concurrent.Callable<String>, RoundTrip {\n" +
+            "        public static String basePath;\n" +
+            "        final StringBuilder sb = new StringBuilder();\n" +
+            "        Command lastCommand;\n" +
+            "        public void heartbeat(long time) { sb.append(\"heartbeat \").append(time).append('\\n'); }\n" +
+            "        public void order(String account, Side side, double price, Command command) {\n" +
+            "            sb.append(\"order \").append(account).append(' ').append(side).append(' ').append(price).append(' ')\n" +
+            "                    .append(command.qty).append(command == lastCommand ? \" reused\" : \"\").append('\\n');\n" +
+            "            lastCommand = command;\n" +
+            "        }\n" +
+            "        public void legs(Leg leg, List<String> tags) { sb.append(\"legs \").append(leg.symbol).append(' ').append(tags).append('\\n'); }\n" +
+            "        public void primitives(boolean b, byte by, short s, char c, int i, float f) {\n" +
+            "            sb.append(\"primitives \").append(b).append(' ').append(by).append(' ').append(s).append(' ').append(c)\n" +
+            "                    .append(' ').append(i).append(' ').append(f).append('\\n');\n" +
+            "        }\n" +
+            "        public String call() throws Exception {\n" +
+            "            IndexedChronicle ic = new IndexedChronicle(basePath, 12);\n" +
+            "            Excerpt appender = ic.createExcerpt();\n" +
+            "            RoundTrip writer = new RoundTripWriter(appender);\n" +
+            "            writer.heartbeat(12345);\n" +
+            "            Command command = new Command();\n" +
+            "            command.qty = 100;\n" +
+            "            writer.order(\"acct\", Side.SELL, 1.25, command);\n" +
+            "            command.qty = 200;\n" +
+            "            writer.order(null, null, -2.5, command);\n" +
+            "            Leg leg = new Leg();\n" +
+            "            leg.symbol = \"EURUSD\";\n" +
+            "            writer.legs(leg, Arrays.asList(\"a\", \"b\"));\n" +
+            "            try {\n" +
+            "                writer.legs(null, null);\n" +
+            "            } catch (NullPointerException e) {\n" +
+            "                sb.append(e.getMessage()).append('\\n');\n" +
+            "            }\n" +
+            "            writer.primitives(true, (byte) -1, (short) 300, 'X', -100000, 0.5f);\n" +
+            "            new HeartbeatWriter(appender).heartbeat(999);\n" +
+            "            RoundTripReader reader = new RoundTripReader(ic.createExcerpt(), this);\n" +
+            "            while (reader.readOne()) ;\n" +
+            "            ic.close();\n" +
+            "            return RoundTripWriter.CAPACITY + \" \" + HeartbeatWriter.CAPACITY + \"\\n\" + sb;\n" +
+            "        }\n" +
+            "    }\n" +
+            "}\n";
+
+    @Test
+    public void generatesWriterAndReader() throws Exception {
+        String basePath = TMP + File.separator + "generated-events";
+        ChronicleTools.deleteOnExit(basePath);
+        ClassLoader loader = compile("generated-events",
+                EventsProcessor.class.getName() + "," + MarshallerProcessor.class.getName(),
+                COMMAND, LEG, TRADE_EVENTS, HEARTBEAT, ROUND_TRIP);
+        Class<?> testClass = loader.loadClass("gen.RoundTrip$Test");
+        testClass.getField("basePath").set(null, basePath);
+        @SuppressWarnings("unchecked")
+        Callable<String> roundTrip = (Callable<String>) testClass.newInstance();
+        // the ids of the super interfaces' methods come first.
+        // a null which can't be written is rejected before an excerpt is started.
+        assertEquals("256 128\n" +
+                "leg cannot be null\n" +
+                "heartbeat 12345\n" +
+                "order acct SELL 1.25 100\n" +
+                "order null null -2.5 200 reused\n" +
+                "legs EURUSD [a, b]\n" +
+                "primitives true -1 300 X -100000 0.5\n" +
+                "heartbeat 999\n", roundTrip.call());
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.higherfrequencytrading.chronicle.tools;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+
+import static com.higherfrequencytrading.chronicle.tools.MarshallerProcessorTest.TMP;
+import static com.higherfrequencytrading.chronicle.tools.MarshallerProcessorTest.compile;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author peter.lawrey
+ */
+public class FlyweightProcessorTest {
+    static final String HEADER = "package gen;\n" +
+            "public interface Header {\n" +
+            "    long getTimestamp();\n" +
+            "    void setTimestamp(long timestamp);\n" +
+            "}\n";
+
+    static final String QUOTE = "package gen;\n" +
+            "import com.higherfrequencytrading.chronicle.GenerateFlyweight;\n" +
+            "@GenerateFlyweight\n" +
+            "public interface Quote extends Header {\n" +
+            "    long getId();\n" +
+            "    void setId(long id);\n" +
+            "    double getPrice();\n" +
+            "    void setPrice(double price);\n" +
+            "    int getQty();\n" +
+            "    void setQty(int qty);\n" +
+            "    boolean isBuy();\n" +
+            "    void setBuy(boolean buy);\n" +
+            "    char getType();\n" +
+            "    void setType(char type);\n" +
+            "    short getVenue();\n" +
+            "    void setVenue(short venue);\n" +
+            "    byte getFlags();\n" +
+            "    void setFlags(byte flags);\n" +
+            "    float getRatio();\n" +
+            "    void setRatio(float ratio);\n" +
+            "}\n";
+
+    static final String ROUND_TRIP = "package gen;\n" +
+            "import com.higherfrequencytrading.chronicle.Excerpt;\n" +
+            "import com.higherfrequencytrading.chronicle.impl.IndexedChronicle;\n" +
+            "public class RoundTrip implements java.util.concurrent.Callable<String> {\n" +
+            "    public static String basePath;\n" +
+            "    public String call() throws Exception {\n" +
+            "        IndexedChronicle ic = new IndexedChronicle(basePath, 12);\n" +
+            "        Excerpt excerpt = ic.createExcerpt();\n" +
+            "        QuoteFlyweight quote = new QuoteFlyweight();\n" +
+            "        for (int i = 0; i < 3; i++) {\n" +
+            "            quote.startExcerpt(excerpt);\n" +
+            "            quote.setTimestamp(1000 + i); quote.setId(-i); quote.setPrice(1.25 * i); quote.setQty(100 * i);\n" +
+            "            quote.setBuy(i == 1); quote.setType('L'); quote.setVenue((short) -3); quote.setFlags((byte) i);\n" +
+            "            quote.setRatio(0.5f);\n" +
+            "            excerpt.finish();\n" +
+            "        }\n" +
+            "        StringBuilder sb = new StringBuilder();\n" +
+            "        Excerpt reader = ic.createExcerpt();\n" +
+            "        Quote view = quote;\n" +
+            "        for (int i = 0; i < 3; i++) {\n" +
+            "            reader.index(i);\n" +
+            "            quote.bind(reader);\n" +
+            "            sb.append(reader.remaining()).append(':').append(view.getTimestamp()).append(',').append(view.getId())\n" +
+            "                    .append(',').append(view.getPrice()).append(',').append(view.getQty()).append(',').append(view.isBuy())\n" +
+            "                    .append(',').append(view.getType()).append(',').append(view.getVenue()).append(',').append(view.getFlags())\n" +
+            "                    .append(',').append(view.getRatio()).append(' ');\n" +
+            "            reader.finish();\n" +
+            "        }\n" +
+            "        ic.close();\n" +
+            "        return QuoteFlyweight.SIZE + \" \" + QuoteFlyweight.QTY_OFFSET + \" \" + sb;\n" +
+            "    }\n" +
+            "}\n";
+
+    @Test
+    public void generatesFlyweight() throws Exception {
+        String basePath = TMP + File.separator + "generated-flyweight";
+        ChronicleTools.deleteOnExit(basePath);
+        ClassLoader loader = compile("generated-flyweight", FlyweightProcessor.class.getName(), HEADER, QUOTE, ROUND_TRIP);
+        loader.loadClass("gen.RoundTrip").getField("basePath").set(null, basePath);
+        @SuppressWarnings("unchecked")
+        Callable<String> roundTrip = (Callable<String>) loader.loadClass("gen.RoundTrip").newInstance();
+        // the longs and double, then the int and float, the char and short and finally the boolean and byte.
+        assertEquals("40 24 " +
+                "40:1000,0,0.0,0,false,L,-3,0,0.5 " +
+                "40:1001,-1,1.25,100,true,L,-3,1,0.5 " +
+                "40:1002,-2,2.5,200,false,L,-3,2,0.5 ", roundTrip.call());
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.higherfrequencytrading.chronicle.tools;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author peter.lawrey
+ */
+public class MarshallerProcessorTest {
+    static final String TMP = System.getProperty("java.io.tmpdir");
+    private static final Pattern CLASS_NAME = Pattern.compile("public (?:class|interface) (\\w+)");
+    static final String ORDER = "package gen;\n" +
+            "import com.higherfrequencytrading.chronicle.GenerateMarshaller;\n" +
+            "import java.util.List;\n" +
+            "@GenerateMarshaller\n" +
+            "public class Order {\n" +
+            "    public enum Side {BUY, SELL}\n" +
+            "    @GenerateMarshaller\n" +
+            "    public static class Leg {\n" +
+            "        int qty;\n" +
+            "        public String toString() { return \"Leg\" + qty; }\n" +
+            "    }\n" +
+            "    static int instances;\n" +
+            "    private long id;\n" +
+            "    int qty;\n" +
+            "    short venue;\n" +
+            "    byte flags;\n" +
+            "    char type;\n" +
+            "    boolean active;\n" +
+            "    float ratio;\n" +
+            "    double price;\n" +
+            "    String symbol;\n" +
+            "    Side side;\n" +
+            "    Side noSide;\n" +
+            "    Leg leg;\n" +
+            "    List<String> tags;\n" +
+            "    transient int notWritten;\n" +
+            "    public long getId() { return id; }\n" +
+            "    public void setId(long id) { this.id = id; }\n" +
+            "    public String toString() {\n" +
+            "        return id + \",\" + qty + \",\" + venue + \",\" + flags + \",\" + type + \",\" + active + \",\" + ratio + \",\" + price\n" +
+            "                + \",\" + symbol + \",\" + side + \",\" + noSide + \",\" + leg + \",\" + tags + \",\" + notWritten;\n" +
+            "    }\n" +
+            "}\n";
+
+    static final String ROUND_TRIP = "package gen;\n" +
+            "import com.higherfrequencytrading.chronicle.Excerpt;\n" +
+            "import com.higherfrequencytrading.chronicle.impl.IndexedChronicle;\n" +
+            "import java.util.Arrays;\n" +
+            "public class RoundTrip implements java.util.concurrent.Callable<String> {\n" +
+            "    public static String basePath;\n" +
+            "    public String call() throws Exception {\n" +
+            "        Order o = new Order();\n" +
+            "        o.setId(-1234567890123L); o.qty = 100; o.venue = -3; o.flags = 7; o.type = 'L'; o.active = true;\n" +
+            "        o.ratio = 0.5f; o.price = 101.25; o.symbol = \"EURUSD\"; o.side = Order.Side.SELL;\n" +
+            "        o.leg = new Order.Leg(); o.leg.qty = 40; o.tags = Arrays.asList(\"a\", \"b\");\n" +
+            "        IndexedChronicle ic = new IndexedChronicle(basePath, 12);\n" +
+            "        Excerpt excerpt = ic.createExcerpt();\n" +
+            "        excerpt.startExcerpt(512);\n" +
+            "        excerpt.writeObject(o);\n" +
+            "        excerpt.finish();\n" +
+            "        OrderMarshaller marshaller = new OrderMarshaller();\n" +
+            "        excerpt.startExcerpt(512);\n" +
+            "        marshaller.write(excerpt, o);\n" +
+            "        excerpt.finish();\n" +
+            "        o.notWritten = 1;\n" +
+            "        excerpt.index(0);\n" +
+            "        Order o2 = (Order) excerpt.readObject();\n" +
+            "        excerpt.finish();\n" +
+            "        excerpt.index(1);\n" +
+            "        Order o3 = new Order();\n" +
+            "        marshaller.readInto(excerpt, o3);\n" +
+            "        excerpt.finish();\n" +
+            "        ic.close();\n" +
+            "        return o2 + \"|\" + o3;\n" +
+            "    }\n" +
+            "}\n";
+
+    @Test
+    public void generatesMarshaller() throws Exception {
+        String basePath = TMP + File.separator + "generated-marshaller";
+        ChronicleTools.deleteOnExit(basePath);
+        ClassLoader loader = compile("generated-marshaller", MarshallerProcessor.class.getName(), ORDER, ROUND_TRIP);
+        loader.loadClass("gen.RoundTrip").getField("basePath").set(null, basePath);
+        @SuppressWarnings("unchecked")
+        Callable<String> roundTrip = (Callable<String>) loader.loadClass("gen.RoundTrip").newInstance();
+        String expected = "-1234567890123,100,-3,7,L,true,0.5,101.25,EURUSD,SELL,null,Leg40,[a, b],0";
+        // classes written by writeObject() are loaded with the context class loader.
+        Thread.currentThread().setContextClassLoader(loader);
+        try {
+            assertEquals(expected + "|" + expected, roundTrip.call());
+        } finally {
+            Thread.currentThread().setContextClassLoader(MarshallerProcessorTest.class.getClassLoader());
+        }
+    }
+
+    /**
+     * Compile sources with an annotation processor and the current class path.
+     *
+     * @return a class loader for the classes compiled.
+     */
+    @NotNull
+    static ClassLoader compile(String name, String processor, @NotNull String... sources) throws IOException {
+        File dir = new File(TMP, name);
+        File srcDir = new File(dir, "src");
+        File outDir = new File(dir, "classes");
+        //noinspection ResultOfMethodCallIgnored
+        outDir.mkdirs();
+        List<String> args = new ArrayList<String>();
+        args.add("-classpath");
+        args.add(System.getProperty("java.class.path"));
+        args.add("-processor");
+        args.add(processor);
+        args.add("-d");
+        args.add(outDir.getPath());
+        args.add("-s");
+        args.add(outDir.getPath());
+        for (String source : sources) {
+            Matcher matcher = CLASS_NAME.matcher(source);
+            if (!matcher.find())
+                throw new IllegalArgumentException("No public class in " + source);
+            String className = matcher.group(1);
+            File file = new File(srcDir, "gen" + File.separator + className + ".java");
+            //noinspection ResultOfMethodCallIgnored
+            file.getParentFile().mkdirs();
+            FileWriter fw = new FileWriter(file);
+            fw.write(source);
+            fw.close();
+            args.add(file.getPath());
+        }
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertEquals("compiled", 0, compiler.run(null, null, null, args.toArray(new String[args.size()])));
+        return new URLClassLoader(new URL[]{outDir.toURI().toURL()}, MarshallerProcessorTest.class.getClassLoader());
+    }
+}
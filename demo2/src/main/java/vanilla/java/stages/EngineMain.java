@@ -44,7 +44,9 @@ public class EngineMain {
         ChronicleTools.deleteOnExit(basePath2);
         ChronicleTools.deleteOnExit(basePath3);
 
-        Chronicle chronicle2w = new IndexedChronicle(basePath2);
+        // the writer and reader of the same chronicle share one set of mappings.
+        IndexedChronicle chronicle2w = new IndexedChronicle(basePath2);
+        chronicle2w.sharedMappings(true);
         EventsWriter writer2 = new EventsWriter(chronicle2w);
 
         Chronicle chronicle1 = new IndexedChronicle(basePath1);
@@ -70,7 +72,8 @@ public class EngineMain {
         source3.busyWaitTimeNS(2 * 1000 * 1000);
         EventsWriter writer3 = new EventsWriter(source3);
 
-        Chronicle chronicle2r = new IndexedChronicle(basePath2);
+        IndexedChronicle chronicle2r = new IndexedChronicle(basePath2);
+        chronicle2r.sharedMappings(true);
         final EventsReader reader2 = new EventsReader(chronicle2r.createExcerpt(),
                 new BrokerEvents(writer3), TimingStage.EngineRead, TimingStage.SinkWrite);
 
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.higherfrequencytrading.chronicle.impl;
+
+import com.higherfrequencytrading.chronicle.Excerpt;
+
+import java.io.IOException;
+
+import static com.higherfrequencytrading.chronicle.impl.GlobalSettings.BASE_DIR;
+import static com.higherfrequencytrading.chronicle.impl.GlobalSettings.USE_UNSAFE;
+import static com.higherfrequencytrading.chronicle.impl.GlobalSettings.deleteOnExit;
+
+/**
+ * Compares the throughput of small messages finished one at a time with the same messages committed in batches.
+ *
+ * @author peter.lawrey
+ */
+public class BatchAppendMain {
+    static final int MESSAGES = Integer.getInteger("test.messages", 50 * 1000 * 1000);
+    static final int REPEATS = 5;
+
+    public static void main(String... args) throws IOException {
+        for (int r = 0; r < REPEATS; r++)
+            for (int batchSize : new int[]{1, 16, 256}) {
+                String basePath = BASE_DIR + "batch-" + batchSize;
+                deleteOnExit(basePath);
+                IndexedChronicle ic = new IndexedChronicle(basePath);
+                ic.useUnsafe(USE_UNSAFE);
+                Excerpt excerpt = ic.createExcerpt();
+                long start = System.nanoTime();
+                for (int i = 0; i < MESSAGES; i += batchSize) {
+                    if (batchSize > 1)
+                        excerpt.startBatch();
+                    for (int j = 0; j < batchSize; j++) {
+                        excerpt.startExcerpt(16);
+                        excerpt.writeLong(i + j + 1);
+                        excerpt.writeLong(j);
+                        excerpt.finish();
+                    }
+                    if (batchSize > 1)
+                        excerpt.commitBatch();
+                }
+                long time = System.nanoTime() - start;
+                System.out.printf("Batches of %,d: %,d messages/sec%n", batchSize, MESSAGES * 1000000000L / time);
+                ic.close();
+            }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.higherfrequencytrading.chronicle.impl;
+
+import com.higherfrequencytrading.chronicle.Excerpt;
+import com.higherfrequencytrading.chronicle.tools.ChronicleTools;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+
+import static com.higherfrequencytrading.chronicle.impl.GlobalSettings.BASE_DIR;
+
+/**
+ * Compares writing and reading the same fields with a ByteBuffer in the non native order, Unsafe swapping the bytes of
+ * each field and Unsafe in the native order.
+ *
+ * @author peter.lawrey
+ */
+public class ByteOrderExcerptMain {
+    static final int MESSAGES = Integer.getInteger("test.messages", 20 * 1000 * 1000);
+    static final int REPEATS = 5;
+
+    public static void main(String... args) throws IOException {
+        ByteOrder swapped = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        for (int r = 0; r < REPEATS; r++) {
+            test("ByteBuffer " + swapped, swapped, false);
+            test("Unsafe " + swapped, swapped, true);
+            test("Unsafe " + ByteOrder.nativeOrder(), ByteOrder.nativeOrder(), true);
+        }
+    }
+
+    private static void test(String name, ByteOrder byteOrder, boolean useUnsafe) throws IOException {
+        String basePath = BASE_DIR + "byte-order";
+        // start afresh as the previous run may have used another byte order.
+        ChronicleTools.deleteOnExit(basePath);
+        IndexedChronicle ic = new IndexedChronicle(basePath, IndexedChronicle.DEFAULT_DATA_BITS_SIZE, byteOrder);
+        ic.useUnsafe(useUnsafe);
+        Excerpt excerpt = ic.createExcerpt();
+        long start = System.nanoTime();
+        for (int i = 0; i < MESSAGES; i++) {
+            excerpt.startExcerpt(32);
+            excerpt.writeLong(i);
+            excerpt.writeInt(i);
+            excerpt.writeShort(i);
+            excerpt.writeChar('X');
+            excerpt.writeDouble(i);
+            excerpt.writeFloat(i);
+            excerpt.finish();
+        }
+        long mid = System.nanoTime();
+        long total = 0;
+        for (int i = 0; i < MESSAGES; i++) {
+            excerpt.index(i);
+            total += excerpt.readLong();
+            total += excerpt.readInt();
+            total += excerpt.readShort();
+            total += excerpt.readChar();
+            total += (long) excerpt.readDouble();
+            total += (long) excerpt.readFloat();
+            excerpt.finish();
+        }
+        long end = System.nanoTime();
+        if (total == 0)
+            throw new AssertionError();
+        System.out.printf("%s: write %.1f ns, read %.1f ns per message%n", name, (double) (mid - start) / MESSAGES, (double) (end - mid) / MESSAGES);
+        ic.close();
+    }
+}
@@ -32,5 +32,7 @@ public enum GlobalSettings {
     public static void deleteOnExit(String basePath) {
         new File(basePath + ".data").deleteOnExit();
         new File(basePath + ".index").deleteOnExit();
+        new File(basePath + ".header").deleteOnExit();
+        new File(basePath + ".time").deleteOnExit();
     }
 }
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.higherfrequencytrading.chronicle.impl;
+
+import com.higherfrequencytrading.chronicle.Excerpt;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static com.higherfrequencytrading.chronicle.impl.GlobalSettings.BASE_DIR;
+import static com.higherfrequencytrading.chronicle.impl.GlobalSettings.deleteOnExit;
+
+/**
+ * Compares the durable throughput and latency of synchronousMode, which forces every excerpt, with groupCommit.  The
+ * latency is from starting an excerpt until it is known to be on disk.  Use -Dtest.dir= to test a real disk rather
+ * than tmpfs.
+ *
+ * @author peter.lawrey
+ */
+public class GroupCommitMain {
+    static final int MESSAGES = Integer.getInteger("test.messages", 2000);
+    static final int WRITERS = Integer.getInteger("test.writers", 4);
+    static final int SIZE = 128;
+
+    public static void main(String... args) throws IOException, InterruptedException {
+        String basePath = BASE_DIR + "sync";
+        deleteOnExit(basePath);
+        IndexedChronicle sync = new IndexedChronicle(basePath, IndexedChronicle.DEFAULT_DATA_BITS_SIZE, ByteOrder.nativeOrder(), false, true);
+        sync.useUnsafe(true);
+        long start = System.nanoTime();
+        long[] times = write(sync, MESSAGES, false);
+        report("synchronousMode", System.nanoTime() - start, times);
+        sync.close();
+
+        basePath = BASE_DIR + "group";
+        deleteOnExit(basePath);
+        IndexedChronicle group = ChronicleBuilder.newIndexedChronicleBuilder(basePath)
+                .useUnsafe(true).groupCommit(1, TimeUnit.MILLISECONDS, 1000).build();
+        start = System.nanoTime();
+        times = write(group, MESSAGES, true);
+        report("groupCommit, 1 writer waiting", System.nanoTime() - start, times);
+        start = System.nanoTime();
+        Excerpt excerpt = group.createExcerpt();
+        int messages = MESSAGES * 100;
+        for (int i = 0; i < messages; i++)
+            writeMessage(excerpt);
+        group.awaitDurable(group.size() - 1, 1, TimeUnit.MINUTES);
+        long time = System.nanoTime() - start;
+        System.out.printf("groupCommit, 1 writer not waiting: %,d durable messages/sec%n", messages * 1000000000L / time);
+        group.close();
+
+        basePath = BASE_DIR + "group-writers";
+        deleteOnExit(basePath);
+        final IndexedChronicle writers = ChronicleBuilder.newIndexedChronicleBuilder(basePath)
+                .useUnsafe(true).multiWriter(true).groupCommit(1, TimeUnit.MILLISECONDS, 1000).build();
+        final long[][] writerTimes = new long[WRITERS][];
+        Thread[] threads = new Thread[WRITERS];
+        start = System.nanoTime();
+        for (int t = 0; t < WRITERS; t++) {
+            final int id = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        writerTimes[id] = write(writers, MESSAGES, true);
+                    } catch (InterruptedException e) {
+                        throw new AssertionError(e);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        time = System.nanoTime() - start;
+        times = new long[0];
+        for (long[] ts : writerTimes) {
+            int length = times.length;
+            times = Arrays.copyOf(times, length + ts.length);
+            System.arraycopy(ts, 0, times, length, ts.length);
+        }
+        report("groupCommit, " + WRITERS + " writers waiting", time, times);
+        writers.close();
+    }
+
+    static long[] write(IndexedChronicle chronicle, int messages, boolean await) throws InterruptedException {
+        Excerpt excerpt = chronicle.createExcerpt();
+        long[] times = new long[messages];
+        for (int i = 0; i < messages; i++) {
+            long start = System.nanoTime();
+            writeMessage(excerpt);
+            if (await && !chronicle.awaitDurable(excerpt.index(), 10, TimeUnit.SECONDS))
+                throw new AssertionError("Timed out");
+            times[i] = System.nanoTime() - start;
+        }
+        return times;
+    }
+
+    static void writeMessage(Excerpt excerpt) {
+        excerpt.startExcerpt(SIZE);
+        excerpt.writeLong(System.nanoTime());
+        excerpt.position(SIZE);
+        excerpt.finish();
+    }
+
+    static void report(String desc, long elapsedNS, long[] times) {
+        Arrays.sort(times);
+        System.out.printf("%s: %,d durable messages/sec, latency 50/99/99.9%%tile %,d/%,d/%,d us%n",
+                desc, times.length * 1000000000L / elapsedNS,
+                times[times.length / 2] / 1000, times[times.length * 99 / 100] / 1000, times[times.length * 999 / 1000] / 1000);
+    }
+}
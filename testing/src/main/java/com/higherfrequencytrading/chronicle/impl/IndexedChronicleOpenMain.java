@@ -0,0 +1,103 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.higherfrequencytrading.chronicle.impl;
+
+import com.higherfrequencytrading.chronicle.Excerpt;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static com.higherfrequencytrading.chronicle.impl.GlobalSettings.BASE_DIR;
+import static com.higherfrequencytrading.chronicle.impl.GlobalSettings.USE_UNSAFE;
+
+/**
+ * Times how long it takes to open a large chronicle when the header is up to date, when it is stale and when it is
+ * missing, i.e. an older chronicle.  The chronicle is built once and kept, unless -Dtest.keep=false, as writing a
+ * billion entries takes a while and needs 16 GB of disk.
+ * <p/>
+ * e.g. -Dtest.entries=1000000000 on a single core VM, took 32 seconds in all
+ * Open with header up to date took 1,108 us for 1,000,000,000 entries
+ * Open with header 1,000 behind took 918 us for 1,000,000,000 entries
+ * Open with header half way took 1,488 us for 1,000,000,000 entries
+ * Open with no header took 1,259 us for 1,000,000,000 entries
+ *
+ * @author peter.lawrey
+ */
+public class IndexedChronicleOpenMain {
+    static final long ENTRIES = Long.getLong("test.entries", 1000L * 1000 * 1000);
+    static final boolean KEEP = Boolean.parseBoolean(System.getProperty("test.keep", "true"));
+    static final int REPEATS = 5;
+
+    public static void main(String... args) throws IOException {
+        String basePath = BASE_DIR + "open";
+        if (!KEEP)
+            GlobalSettings.deleteOnExit(basePath);
+
+        IndexedChronicle ic = new IndexedChronicle(basePath);
+        ic.useUnsafe(USE_UNSAFE);
+        if (ic.size() < ENTRIES) {
+            long start = System.nanoTime();
+            Excerpt excerpt = ic.createExcerpt();
+            for (long i = ic.size(); i < ENTRIES; i++) {
+                excerpt.startExcerpt(8);
+                excerpt.writeLong(i + 1);
+                excerpt.finish();
+            }
+            long time = System.nanoTime() - start;
+            System.out.printf("Took %.1f seconds to write %,d entries%n", time / 1e9, ENTRIES);
+        }
+        long size = ic.size();
+        ic.close();
+
+        for (int i = 0; i < REPEATS; i++) {
+            timeOpen("header up to date", basePath, size, size);
+            timeOpen("header 1,000 behind", basePath, size - 1000, size);
+            timeOpen("header half way", basePath, size / 2, size);
+            new File(basePath + ".header").delete();
+            timeOpen("no header", basePath, -1, size);
+        }
+    }
+
+    private static void timeOpen(String desc, String basePath, long lastSize, long size) throws IOException {
+        if (lastSize >= 0)
+            writeHeader(basePath, lastSize);
+        long start = System.nanoTime();
+        IndexedChronicle ic = new IndexedChronicle(basePath);
+        long time = System.nanoTime() - start;
+        if (ic.size() != size)
+            throw new AssertionError("size was " + ic.size() + " expected " + size);
+        ic.close();
+        System.out.printf("Open with %s took %,d us for %,d entries%n", desc, time / 1000, size);
+    }
+
+    private static void writeHeader(String basePath, long lastSize) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(basePath + ".header", "rw");
+        try {
+            MappedByteBuffer header = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, IndexedChronicle.HEADER_SIZE);
+            header.order(ByteOrder.nativeOrder());
+            header.putInt(IndexedChronicle.HEADER_MAGIC_OFFSET, IndexedChronicle.HEADER_MAGIC);
+            header.putLong(IndexedChronicle.HEADER_SIZE_OFFSET, lastSize);
+            header.force();
+        } finally {
+            raf.close();
+        }
+    }
+}
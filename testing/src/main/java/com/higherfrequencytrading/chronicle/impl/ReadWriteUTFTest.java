@@ -24,6 +24,7 @@ import java.io.IOException;
 import static com.higherfrequencytrading.chronicle.impl.GlobalSettings.*;
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
 
 /**
  * @author peter.lawrey
@@ -90,4 +91,62 @@ public class ReadWriteUTFTest {
         excerpt.finish();
         assertEquals(e2, é);
     }
+
+    @Test
+    public void testLengthGrows() throws IOException {
+        final String basePath = BASE_DIR + "text";
+        deleteOnExit(basePath);
+
+        IndexedChronicle tsc = new IndexedChronicle(basePath);
+        tsc.useUnsafe(USE_UNSAFE);
+        tsc.clear();
+        Excerpt excerpt = tsc.createExcerpt();
+        // the ASCII prefix is written before the length is known to need two bytes.
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100; i++)
+            sb.append((char) ('a' + i % 26));
+        String[] texts = {sb + "\u00e9\u00e9\u20ac\u20ac\u20ac\u20ac\u20ac\u20ac\u20ac\u20ac\u20ac", sb + "\u00e9", sb + sb.toString() + "\u0000"};
+        for (String text : texts) {
+            excerpt.startExcerpt(2 + text.length() * 3);
+            excerpt.writeUTF(text);
+            excerpt.finish();
+        }
+
+        for (int i = 0; i < texts.length; i++) {
+            assertTrue(excerpt.index(i));
+            String text = excerpt.readUTF();
+            excerpt.finish();
+            assertEquals(texts[i], text);
+        }
+    }
+
+    @Test
+    public void testTooLongLeavesPosition() throws IOException {
+        final String basePath = BASE_DIR + "too-long";
+        deleteOnExit(basePath);
+
+        IndexedChronicle tsc = new IndexedChronicle(basePath);
+        tsc.useUnsafe(USE_UNSAFE);
+        tsc.clear();
+        Excerpt excerpt = tsc.createExcerpt();
+        excerpt.startExcerpt(16);
+        excerpt.writeByte(1);
+        // the length needs a byte as well, whether the text is ASCII or not.
+        for (String text : new String[]{"abcdefghijklmno", "abcdefghijklm\u00e9"}) {
+            try {
+                excerpt.writeUTF(text);
+                fail();
+            } catch (IllegalArgumentException expected) {
+                // expected
+            }
+            assertEquals(1, excerpt.position());
+        }
+        excerpt.writeUTF("abcdefghijklmn");
+        excerpt.finish();
+
+        assertTrue(excerpt.index(0));
+        assertEquals(1, excerpt.readByte());
+        assertEquals("abcdefghijklmn", excerpt.readUTF());
+        tsc.close();
+    }
 }
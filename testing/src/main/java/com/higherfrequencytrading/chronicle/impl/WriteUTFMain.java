@@ -0,0 +1,118 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.higherfrequencytrading.chronicle.impl;
+
+import com.higherfrequencytrading.chronicle.Excerpt;
+import com.higherfrequencytrading.chronicle.tools.ChronicleTools;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+
+import static com.higherfrequencytrading.chronicle.impl.GlobalSettings.BASE_DIR;
+
+/**
+ * Compares writeUTF() with the previous implementation, which measured the string before writing it a byte at a time,
+ * for ASCII symbols and for text which isn't all ASCII.
+ *
+ * @author peter.lawrey
+ */
+public class WriteUTFMain {
+    static final int MESSAGES = Integer.getInteger("test.messages", 10 * 1000 * 1000);
+    static final int REPEATS = 5;
+    static final String[] ASCII = {"EURUSD", "GBPUSD", "order-1234567890", "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789"};
+    static final String[] MIXED = {"Zürich", "price in €", "naïve café", "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789é"};
+
+    public static void main(String... args) throws IOException {
+        for (int r = 0; r < REPEATS; r++) {
+            for (boolean useUnsafe : new boolean[]{true, false}) {
+                String type = useUnsafe ? "Unsafe" : "ByteBuffer";
+                test(type + " ASCII previous", ASCII, useUnsafe, true);
+                test(type + " ASCII writeUTF", ASCII, useUnsafe, false);
+                test(type + " mixed previous", MIXED, useUnsafe, true);
+                test(type + " mixed writeUTF", MIXED, useUnsafe, false);
+            }
+        }
+    }
+
+    private static void test(String name, @NotNull String[] texts, boolean useUnsafe, boolean previous) throws IOException {
+        String basePath = BASE_DIR + "write-utf";
+        ChronicleTools.deleteOnExit(basePath);
+        IndexedChronicle ic = new IndexedChronicle(basePath);
+        ic.useUnsafe(useUnsafe);
+        Excerpt excerpt = ic.createExcerpt();
+        long start = System.nanoTime();
+        for (int i = 0; i < MESSAGES; i++) {
+            excerpt.startExcerpt(128);
+            String text = texts[i & 3];
+            if (previous)
+                previousWriteUTF(excerpt, text);
+            else
+                excerpt.writeUTF(text);
+            excerpt.finish();
+        }
+        long mid = System.nanoTime();
+        long total = 0;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < MESSAGES; i++) {
+            excerpt.index(i);
+            excerpt.readUTF(sb);
+            total += sb.length();
+            excerpt.finish();
+        }
+        long end = System.nanoTime();
+        if (total == 0)
+            throw new AssertionError();
+        System.out.printf("%s: write %.1f ns, read %.1f ns per message%n", name, (double) (mid - start) / MESSAGES, (double) (end - mid) / MESSAGES);
+        ic.close();
+    }
+
+    /**
+     * writeUTF() as it was, for comparison.
+     */
+    static void previousWriteUTF(@NotNull Excerpt excerpt, @NotNull CharSequence str) {
+        long strlen = str.length();
+        int utflen = 0;
+        int c;
+        for (int i = 0; i < strlen; i++) {
+            c = str.charAt(i);
+            if ((c >= 0x0001) && (c <= 0x007F)) {
+                utflen++;
+            } else if (c > 0x07FF) {
+                utflen += 3;
+            } else {
+                utflen += 2;
+            }
+        }
+        if (utflen > excerpt.remaining())
+            throw new IllegalArgumentException(
+                    "encoded string too long: " + utflen + " bytes, remaining=" + excerpt.remaining());
+        excerpt.writeStopBit(utflen);
+        for (int i = 0; i < strlen; i++) {
+            c = str.charAt(i);
+            if ((c >= 0x0001) && (c <= 0x007F)) {
+                excerpt.write(c);
+            } else if (c > 0x07FF) {
+                excerpt.write((byte) (0xE0 | ((c >> 12) & 0x0F)));
+                excerpt.write((byte) (0x80 | ((c >> 6) & 0x3F)));
+                excerpt.write((byte) (0x80 | (c & 0x3F)));
+            } else {
+                excerpt.write((byte) (0xC0 | ((c >> 6) & 0x1F)));
+                excerpt.write((byte) (0x80 | c & 0x3F));
+            }
+        }
+    }
+}